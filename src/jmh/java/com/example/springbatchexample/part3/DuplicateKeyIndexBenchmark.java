@@ -0,0 +1,90 @@
+package com.example.springbatchexample.part3;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// duplicateCheckProcessor의 중복 체크 비용
+// localRepo(ConcurrentHashMap<String, Person>)였던 이전 방식과 DuplicateKeyIndex 구현들을 비교한다.
+// bloom은 "있을 수도 있음"일 때의 DB 조회를 빼고 잰다.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DuplicateKeyIndexBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    private int items;
+
+    // 전체 item 중 서로 다른 이름의 비율(%)
+    @Param({"10", "100"})
+    private int distinctPercent;
+
+    private List<Person> persons;
+    private Path spillDirectory;
+
+    @Setup
+    public void setUp() throws IOException {
+        persons = PersonFixtures.persons(items, Math.max(1, items / 100 * distinctPercent));
+        spillDirectory = Files.createTempDirectory("dedup-bench-");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(spillDirectory);
+    }
+
+    @Benchmark
+    public void concurrentHashMap(Blackhole blackhole) {
+        Map<String, Person> localRepo = new ConcurrentHashMap<>();
+        for (Person person : persons) {
+            blackhole.consume(localRepo.putIfAbsent(person.getName(), person) == null);
+        }
+    }
+
+    @Benchmark
+    public void hashedKeyIndex(Blackhole blackhole) {
+        run(new HashedKeyIndex(items), blackhole);
+    }
+
+    @Benchmark
+    public void bloomFilterKeyIndex(Blackhole blackhole) {
+        run(new BloomFilterKeyIndex(items, 0.01, new SpillableKeyIndex(Math.max(1024, items / 8), spillDirectory, 8)), blackhole);
+    }
+
+    // 메모리에는 1/4만 두고 나머지는 디스크로 내보낸다.
+    @Benchmark
+    public void spillableKeyIndex(Blackhole blackhole) {
+        run(new SpillableKeyIndex(Math.max(16, items / 4), spillDirectory, 8), blackhole);
+    }
+
+    private void run(DuplicateKeyIndex index, Blackhole blackhole) {
+        try {
+            for (Person person : persons) {
+                blackhole.consume(index.add(DuplicateKeyIndex.hash(person.getName()), person.getName()));
+            }
+        } finally {
+            index.close();
+        }
+    }
+}
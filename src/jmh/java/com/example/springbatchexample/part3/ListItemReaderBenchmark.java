@@ -0,0 +1,67 @@
+package com.example.springbatchexample.part3;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.support.ListItemReader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 메모리의 리스트를 끝까지 읽는 비용
+// 이전 CustomItemReader는 ArrayList.remove(0)으로 꺼내서 크기가 커지면 O(n^2)이 된다.
+// ListItemReader는 LinkedList로 복사한 뒤 remove(0)으로 꺼낸다.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListItemReaderBenchmark {
+    @Param({"100", "10000", "100000"})
+    private int items;
+
+    private List<Person> persons;
+
+    @Setup
+    public void setUp() {
+        persons = PersonFixtures.persons(items, 10);
+    }
+
+    @Benchmark
+    public void arrayListRemoveFirst(Blackhole blackhole) throws Exception {
+        List<Person> list = new ArrayList<>(persons);
+        drain(() -> list.isEmpty() ? null : list.remove(0), blackhole);
+    }
+
+    @Benchmark
+    public void listItemReader(Blackhole blackhole) throws Exception {
+        drain(new ListItemReader<>(persons), blackhole);
+    }
+
+    @Benchmark
+    public void customItemReader(Blackhole blackhole) throws Exception {
+        CustomItemReader<Person> itemReader = new CustomItemReader<>(persons);
+        itemReader.open(new ExecutionContext());
+        drain(itemReader, blackhole);
+    }
+
+    private void drain(ItemReader<Person> itemReader, Blackhole blackhole) throws Exception {
+        Person person;
+        while ((person = itemReader.read()) != null) {
+            blackhole.consume(person);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.springbatchexample.part3;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.launch.support.SimpleJobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.support.JobRepositoryFactoryBean;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.database.BeanPropertyItemSqlParameterSourceProvider;
+import org.springframework.batch.item.database.JdbcBatchItemWriter;
+import org.springframework.batch.item.database.builder.JdbcBatchItemWriterBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// reader -> processor -> writer -> commit 까지 청크 전체를 embedded H2(메모리)에서 실행하는 비용
+// JobRepository 갱신 비용까지 포함되므로 chunk size에 따른 차이를 볼 수 있다.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersonChunkBenchmark {
+    @Param({"10000"})
+    private int items;
+
+    @Param({"10", "100", "1000"})
+    private int chunkSize;
+
+    @Param({"jdbcBatchItemWriter", "bulkInsertItemWriter"})
+    private String writer;
+
+    private EmbeddedDatabase dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private JobBuilderFactory jobBuilderFactory;
+    private StepBuilderFactory stepBuilderFactory;
+    private SimpleJobLauncher jobLauncher;
+    private List<Person> persons;
+    private long runId;
+
+    @Setup
+    public void setUp() throws Exception {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("classpath:org/springframework/batch/core/schema-h2.sql")
+                .build();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table person (id integer generated by default as identity primary key, "
+                + "name varchar(255), age varchar(255), address varchar(255))");
+        jdbcTemplate.execute("create sequence person_id_seq start with 1000000000 increment by 1000");
+
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        JobRepositoryFactoryBean jobRepositoryFactory = new JobRepositoryFactoryBean();
+        jobRepositoryFactory.setDataSource(dataSource);
+        jobRepositoryFactory.setTransactionManager(transactionManager);
+        jobRepositoryFactory.afterPropertiesSet();
+        JobRepository jobRepository = jobRepositoryFactory.getObject();
+
+        jobBuilderFactory = new JobBuilderFactory(jobRepository);
+        stepBuilderFactory = new StepBuilderFactory(jobRepository, transactionManager);
+        jobLauncher = new SimpleJobLauncher();
+        jobLauncher.setJobRepository(jobRepository);
+        jobLauncher.afterPropertiesSet();
+
+        persons = PersonFixtures.persons(items, 10);
+    }
+
+    @Setup(Level.Invocation)
+    public void truncate() {
+        jdbcTemplate.execute("truncate table person restart identity");
+        jdbcTemplate.execute("alter sequence person_id_seq restart with 1000000000");
+    }
+
+    @TearDown
+    public void tearDown() {
+        dataSource.shutdown();
+    }
+
+    @Benchmark
+    public JobExecution chunk() throws Exception {
+        Job job = jobBuilderFactory.get("personChunkBenchmark")
+                .start(stepBuilderFactory.get("personChunkStep")
+                        .<Person, Person>chunk(chunkSize)
+                        .reader(new CustomItemReader<>(persons))
+                        // id는 writer(IDENTITY, PersonIdAllocator)가 채우도록 새 객체로 넘긴다.
+                        .processor((ItemProcessor<Person, Person>) person -> new Person(person.getName(), person.getAge(), person.getAddress()))
+                        .writer(itemWriter())
+                        .build())
+                .build();
+
+        JobExecution jobExecution = jobLauncher.run(job, new JobParametersBuilder().addLong("run.id", ++runId).toJobParameters());
+        if (jobExecution.getStatus() != BatchStatus.COMPLETED) {
+            throw new IllegalStateException("Benchmark job failed : " + jobExecution.getAllFailureExceptions());
+        }
+        return jobExecution;
+    }
+
+    private ItemWriter<Person> itemWriter() {
+        switch (writer) {
+            case "jdbcBatchItemWriter":
+                JdbcBatchItemWriter<Person> itemWriter = new JdbcBatchItemWriterBuilder<Person>()
+                        .dataSource(dataSource)
+                        .itemSqlParameterSourceProvider(new BeanPropertyItemSqlParameterSourceProvider<>())
+                        .sql("insert into person(name, age, address) values(:name, :age, :address)")
+                        .build();
+                itemWriter.afterPropertiesSet();
+                return itemWriter;
+            case "bulkInsertItemWriter":
+                return new PersonBulkInsertItemWriter(dataSource, 100);
+            default:
+                throw new IllegalArgumentException("Unknown writer : " + writer);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.springbatchexample.part3;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.file.FlatFileItemReader;
+import org.springframework.batch.item.file.builder.FlatFileItemReaderBuilder;
+import org.springframework.core.io.FileSystemResource;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 파일 전체를 읽는 비용. FlatFileItemReader와 MappedPersonItemReader를 비교한다.
+// 같은 데이터를 PersonBinaryFormat으로 쓴 파일을 PersonBinaryItemReader로 읽는 비용도 잰다.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersonFileReaderBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    private int lines;
+
+    private FileSystemResource resource;
+    private FileSystemResource binaryResource;
+
+    @Setup
+    public void setUp() throws Exception {
+        List<Person> persons = PersonFixtures.persons(lines, 10);
+        resource = new FileSystemResource(PersonFixtures.writeCsv(persons));
+        binaryResource = new FileSystemResource(PersonFixtures.writeBinary(persons));
+    }
+
+    @Benchmark
+    public void flatFileItemReader(Blackhole blackhole) throws Exception {
+        FlatFileItemReader<Person> itemReader = new FlatFileItemReaderBuilder<Person>()
+                .name("flatFileItemReader")
+                .resource(resource)
+                .encoding("UTF-8")
+                .linesToSkip(1)
+                .delimited().names("id", "name", "age", "address")
+                .fieldSetMapper(fieldSet -> new Person(
+                        fieldSet.readInt("id"),
+                        fieldSet.readString("name"),
+                        fieldSet.readString("age"),
+                        fieldSet.readString("address")))
+                .saveState(false)
+                .build();
+        drain(itemReader, blackhole);
+    }
+
+    @Benchmark
+    public void mappedPersonItemReader(Blackhole blackhole) throws Exception {
+        MappedPersonItemReader itemReader = new MappedPersonItemReader();
+        itemReader.setName("mappedPersonItemReader");
+        itemReader.setResource(resource);
+        itemReader.setLinesToSkip(1);
+        itemReader.setSaveState(false);
+        drain(itemReader, blackhole);
+    }
+
+    @Benchmark
+    public void personBinaryItemReader(Blackhole blackhole) throws Exception {
+        PersonBinaryItemReader itemReader = new PersonBinaryItemReader();
+        itemReader.setName("personBinaryItemReader");
+        itemReader.setResource(binaryResource);
+        itemReader.setSaveState(false);
+        drain(itemReader, blackhole);
+    }
+
+    private void drain(ItemStreamReader<Person> itemReader, Blackhole blackhole) throws Exception {
+        itemReader.open(new ExecutionContext());
+        try {
+            Person person;
+            while ((person = itemReader.read()) != null) {
+                blackhole.consume(person);
+            }
+        } finally {
+            itemReader.close();
+        }
+    }
+}
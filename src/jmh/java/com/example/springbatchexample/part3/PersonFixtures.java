@@ -0,0 +1,58 @@
+package com.example.springbatchexample.part3;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// 벤치마크에서 사용하는 Person 데이터. 각 job의 getItems()와 같은 모양으로 만든다.
+final class PersonFixtures {
+    static final String HEADER = "id,이름,나이,거주지";
+
+    private PersonFixtures() {
+    }
+
+    // distinctNames 개의 이름이 반복된다.
+    static List<Person> persons(int count, int distinctNames) {
+        List<Person> persons = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            persons.add(new Person(i + 1, "멤버" + (i % distinctNames + 1), "test age", "test address"));
+        }
+        return persons;
+    }
+
+    static String line(Person person) {
+        return person.getId() + "," + person.getName() + "," + person.getAge() + "," + person.getAddress();
+    }
+
+    static Path writeCsv(List<Person> persons) throws IOException {
+        Path file = Files.createTempFile("person-bench-", ".csv");
+        file.toFile().deleteOnExit();
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.write('\n');
+            for (Person person : persons) {
+                writer.write(line(person));
+                writer.write('\n');
+            }
+        }
+        return file;
+    }
+
+    static Path writeBinary(List<Person> persons) throws Exception {
+        Path file = Files.createTempFile("person-bench-", ".bin");
+        file.toFile().deleteOnExit();
+        PersonBinaryItemWriter itemWriter = new PersonBinaryItemWriter();
+        itemWriter.setResource(new FileSystemResource(file));
+        itemWriter.open(new ExecutionContext());
+        itemWriter.write(persons);
+        itemWriter.close();
+        return file;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.springbatchexample.part3;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
+import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Person을 한 줄로 만드는 비용 (csvFileItemWriter, inputWriter의 lineAggregator)
+// BeanWrapperFieldExtractor는 item 마다 BeanWrapper를 만들어 reflection으로 값을 읽는다.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersonLineAggregatorBenchmark {
+    @Param({"100", "10000", "100000"})
+    private int items;
+
+    private List<Person> persons;
+    private DelimitedLineAggregator<Person> beanWrapperAggregator;
+    private DelimitedLineAggregator<Person> compiledAggregator;
+
+    @Setup
+    public void setUp() throws Exception {
+        persons = PersonFixtures.persons(items, 10);
+
+        BeanWrapperFieldExtractor<Person> fieldExtractor = new BeanWrapperFieldExtractor<>();
+        fieldExtractor.setNames(new String[] {"id", "name", "age", "address"});
+        fieldExtractor.afterPropertiesSet();
+        beanWrapperAggregator = new DelimitedLineAggregator<>();
+        beanWrapperAggregator.setDelimiter(",");
+        beanWrapperAggregator.setFieldExtractor(fieldExtractor);
+
+        compiledAggregator = new DelimitedLineAggregator<>();
+        compiledAggregator.setDelimiter(",");
+        compiledAggregator.setFieldExtractor(new CompiledFieldExtractor<>(Person.class, "id", "name", "age", "address"));
+    }
+
+    @Benchmark
+    public void beanWrapperFieldExtractor(Blackhole blackhole) {
+        for (Person person : persons) {
+            blackhole.consume(beanWrapperAggregator.aggregate(person));
+        }
+    }
+
+    @Benchmark
+    public void compiledFieldExtractor(Blackhole blackhole) {
+        for (Person person : persons) {
+            blackhole.consume(compiledAggregator.aggregate(person));
+        }
+    }
+
+    // getter를 직접 호출하는 경우의 기준 값
+    @Benchmark
+    public void directGetters(Blackhole blackhole) {
+        for (Person person : persons) {
+            blackhole.consume(PersonFixtures.line(person));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.springbatchexample.part3;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.batch.item.file.mapping.DefaultLineMapper;
+import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 한 줄을 Person으로 바꾸는 비용
+// DelimitedLineTokenizer + FieldSet 매핑(기존 csvItemReader)과 PersonRecordParser(MappedPersonItemReader)를 비교한다.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersonLineParsingBenchmark {
+    @Param({"100", "10000", "100000"})
+    private int lines;
+
+    private String[] text;
+    private ByteBuffer buffer;
+    private int[] lineEnds;
+
+    private DefaultLineMapper<Person> lineMapper;
+    private PersonRecordParser parser;
+
+    @Setup
+    public void setUp() {
+        List<Person> persons = PersonFixtures.persons(lines, 10);
+        text = new String[lines];
+        lineEnds = new int[lines];
+
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            text[i] = PersonFixtures.line(persons.get(i));
+            content.append(text[i]).append('\n');
+        }
+        byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+        buffer = ByteBuffer.allocateDirect(bytes.length).put(bytes);
+        buffer.flip();
+        for (int i = 0, line = 0; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                lineEnds[line++] = i;
+            }
+        }
+
+        DelimitedLineTokenizer tokenizer = new DelimitedLineTokenizer();
+        tokenizer.setNames("id", "name", "age", "address");
+        lineMapper = new DefaultLineMapper<>();
+        lineMapper.setLineTokenizer(tokenizer);
+        lineMapper.setFieldSetMapper(fieldSet -> new Person(
+                fieldSet.readInt("id"),
+                fieldSet.readString("name"),
+                fieldSet.readString("age"),
+                fieldSet.readString("address")));
+
+        parser = new PersonRecordParser();
+    }
+
+    @Benchmark
+    public void delimitedLineTokenizer(Blackhole blackhole) throws Exception {
+        for (int i = 0; i < lines; i++) {
+            blackhole.consume(lineMapper.mapLine(text[i], i + 1));
+        }
+    }
+
+    @Benchmark
+    public void personRecordParser(Blackhole blackhole) {
+        int from = 0;
+        for (int i = 0; i < lines; i++) {
+            blackhole.consume(parser.parse(buffer, from, lineEnds[i]));
+            from = lineEnds[i] + 1;
+        }
+    }
+}
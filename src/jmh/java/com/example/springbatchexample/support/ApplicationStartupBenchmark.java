@@ -0,0 +1,43 @@
+package com.example.springbatchexample.support;
+
+import com.example.springbatchexample.SpringbatchExampleApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+// helloJob 하나를 실행하는 애플리케이션의 시작부터 job 종료까지의 시간
+// 모든 job의 bean을 만드는 기본 방식과 batch.lazy-jobs.enabled=true를 비교한다.
+// 매번 새 JVM에서 한 번만 재야 하므로 warmup 없이 fork마다 한 번 실행한다.
+// H2 서버 없이 돌 수 있도록 메모리 DB를 쓰고 person.sql은 넣지 않는다.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(5)
+public class ApplicationStartupBenchmark {
+    @Param({"false", "true"})
+    private boolean lazyJobs;
+
+    @Benchmark
+    public int startup() {
+        ConfigurableApplicationContext context = SpringApplication.run(SpringbatchExampleApplication.class,
+                "--job.name=helloJob",
+                "--batch.lazy-jobs.enabled=" + lazyJobs,
+                "--spring.datasource.hikari.jdbc-url=jdbc:h2:mem:startup;DB_CLOSE_DELAY=-1",
+                "--spring.sql.init.mode=never",
+                "--spring.jpa.show-sql=false");
+        return SpringApplication.exit(context);
+    }
+}
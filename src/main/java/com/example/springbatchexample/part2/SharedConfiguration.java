@@ -1,5 +1,6 @@
 package com.example.springbatchexample.part2;
 
+import com.example.springbatchexample.support.StepHandoffStore;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.*;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
@@ -10,6 +11,10 @@ import org.springframework.batch.repeat.RepeatStatus;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
 @Configuration
 @Slf4j
 public class SharedConfiguration {
@@ -29,6 +34,7 @@ public class SharedConfiguration {
         return jobBuilderFactory.get("sharedJob")
                 // 새로운 job instance를 생성하도록 해준다.
                 .incrementer(new RunIdIncrementer())
+                .listener(stepHandoffStore())
                 .start(this.shareStep())
                 .next(this.shareStep2())
                 .build();
@@ -49,6 +55,13 @@ public class SharedConfiguration {
                     jobExecutionContext.putString("jobKey", "job execution context");
                     JobParameters jobParameters = jobExecution.getJobParameters();
 
+                    // 큰 값은 execution context 대신 handoff store로 넘긴다. (context에는 파일 이름만 저장된다.)
+                    ArrayList<Integer> numbers = new ArrayList<>();
+                    for (int i = 0; i < 100_000; i++) {
+                        numbers.add(i);
+                    }
+                    stepHandoffStore().put(jobExecution, "numbers", numbers);
+
                     log.info("jobName : {}, stepName : {}, parameter : {}" 
                             , jobInstance.getJobName()
                             , stepExecution.getStepName()
@@ -73,10 +86,15 @@ public class SharedConfiguration {
                             , jobExecutionContext.getString("jobKey", "emptyJobKey")
                             , stepExecutionContext.getString("stepKey", "emptyStepKey"));
 
+                    List<?> numbers = stepHandoffStore().get(jobExecution, "numbers", List.class);
+                    log.info("numbers.size : {}", (numbers != null) ? numbers.size() : 0);
+
                     return RepeatStatus.FINISHED;
                 }).build();
     }
 
-
-
+    @Bean
+    public StepHandoffStore stepHandoffStore() {
+        return new StepHandoffStore(Paths.get("output", "handoff"), 1024);
+    }
 }
\ No newline at end of file
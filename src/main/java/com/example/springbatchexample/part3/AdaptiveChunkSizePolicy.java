@@ -0,0 +1,237 @@
+package com.example.springbatchexample.part3;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.ItemProcessListener;
+import org.springframework.batch.core.ItemReadListener;
+import org.springframework.batch.core.ItemWriteListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.builder.SimpleStepBuilder;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.policy.SimpleCompletionPolicy;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// 청크 트랜잭션 하나가 걸린 시간(read + process + write + commit)을 재서 목표 시간에 맞도록 chunk size를 조절하는 정책
+// SimpleCompletionPolicy는 매 청크마다 chunkSize 필드를 다시 읽으므로 setChunkSize만으로 다음 청크부터 반영된다.
+// 선택한 chunk size는 step의 ExecutionContext에 남겨 두고, 재시작하면 그 값부터 다시 시작한다.
+// step 마다 새로 만들어야 한다. (측정 값과 chunk size를 step 실행 단위로 가진다)
+@Slf4j
+public class AdaptiveChunkSizePolicy extends SimpleCompletionPolicy
+        implements StepExecutionListener, ChunkListener, ItemReadListener<Object>, ItemProcessListener<Object, Object>, ItemWriteListener<Object> {
+    static final String CHUNK_SIZE = "adaptiveChunkSize.current";
+    static final String CHUNK_SIZE_HISTORY = "adaptiveChunkSize.history";
+
+    private static final int HISTORY_SIZE = 32;
+    // 한번 측정한 값에 흔들리지 않도록 item 당 처리 시간은 지수 이동 평균으로 본다.
+    private static final double SMOOTHING = 0.3;
+    // 목표 크기와 10% 이상 차이가 날 때만 바꾼다.
+    private static final double TOLERANCE = 0.1;
+
+    private final int minChunkSize;
+    private final int maxChunkSize;
+    private final long targetNanos;
+
+    // multi-threaded step에서는 스레드 별로 각자의 청크를 측정한다.
+    private final ThreadLocal<ChunkSample> samples = ThreadLocal.withInitial(ChunkSample::new);
+    private final Deque<Integer> history = new ArrayDeque<>();
+
+    private double nanosPerItem;
+    private ExecutionContext executionContext;
+
+    public AdaptiveChunkSizePolicy(int initialChunkSize, int minChunkSize, int maxChunkSize, long targetCommitMillis) {
+        super(Math.max(minChunkSize, Math.min(maxChunkSize, initialChunkSize)));
+        if (minChunkSize < 1 || minChunkSize > maxChunkSize) {
+            throw new IllegalArgumentException("Invalid chunk size bounds : " + minChunkSize + " ~ " + maxChunkSize);
+        }
+        if (targetCommitMillis <= 0) {
+            throw new IllegalArgumentException("targetCommitMillis must be positive : " + targetCommitMillis);
+        }
+        this.minChunkSize = minChunkSize;
+        this.maxChunkSize = maxChunkSize;
+        this.targetNanos = targetCommitMillis * 1_000_000L;
+    }
+
+    // targetCommitMillis가 없으면 기존처럼 고정 chunk size로 동작한다.
+    public static <I, O> SimpleStepBuilder<I, O> chunk(StepBuilder stepBuilder, int chunkSize,
+                                                       Long targetCommitMillis, Integer minChunkSize, Integer maxChunkSize) {
+        if (targetCommitMillis == null) {
+            return stepBuilder.chunk(chunkSize);
+        }
+
+        AdaptiveChunkSizePolicy policy = new AdaptiveChunkSizePolicy(chunkSize,
+                (minChunkSize != null) ? minChunkSize : 1,
+                (maxChunkSize != null) ? maxChunkSize : Math.max(chunkSize, 10_000),
+                targetCommitMillis);
+        return policy.apply(stepBuilder.chunk(policy));
+    }
+
+    // StepExecutionListener, ChunkListener로 등록하면 item listener는 SimpleStepBuilder가 같은 객체로 함께 등록한다.
+    public <I, O> SimpleStepBuilder<I, O> apply(SimpleStepBuilder<I, O> builder) {
+        builder.listener((StepExecutionListener) this);
+        builder.listener((ChunkListener) this);
+        return builder;
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        executionContext = stepExecution.getExecutionContext();
+        if (executionContext.containsKey(CHUNK_SIZE)) {
+            setChunkSize(executionContext.getInt(CHUNK_SIZE));
+            log.info("[{}] restored chunk size : {}", stepExecution.getStepName(), getChunkSize());
+        }
+        record(getChunkSize());
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        log.info("[{}] chunk size history : {}", stepExecution.getStepName(), executionContext.getString(CHUNK_SIZE_HISTORY));
+        return null;
+    }
+
+    // beforeChunk는 청크 트랜잭션 안에서 호출되므로 여기서 커밋 시간을 재기 위한 synchronization을 등록한다.
+    @Override
+    public void beforeChunk(ChunkContext context) {
+        ChunkSample sample = samples.get();
+        sample.reset();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(sample);
+        }
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+    }
+
+    @Override
+    public void beforeRead() {
+        samples.get().mark();
+    }
+
+    @Override
+    public void afterRead(Object item) {
+        ChunkSample sample = samples.get();
+        sample.readNanos += sample.elapsed();
+        sample.items++;
+    }
+
+    @Override
+    public void onReadError(Exception ex) {
+    }
+
+    @Override
+    public void beforeProcess(Object item) {
+        samples.get().mark();
+    }
+
+    @Override
+    public void afterProcess(Object item, Object result) {
+        ChunkSample sample = samples.get();
+        sample.processNanos += sample.elapsed();
+    }
+
+    @Override
+    public void onProcessError(Object item, Exception e) {
+    }
+
+    @Override
+    public void beforeWrite(List<?> items) {
+        samples.get().mark();
+    }
+
+    @Override
+    public void afterWrite(List<?> items) {
+        ChunkSample sample = samples.get();
+        sample.writeNanos += sample.elapsed();
+    }
+
+    @Override
+    public void onWriteError(Exception exception, List<?> items) {
+    }
+
+    private synchronized void adjust(ChunkSample sample, long commitNanos) {
+        if (sample.items == 0) {
+            return;
+        }
+
+        long chunkNanos = sample.readNanos + sample.processNanos + sample.writeNanos + commitNanos;
+        double itemNanos = (double) chunkNanos / sample.items;
+        nanosPerItem = (nanosPerItem == 0) ? itemNanos : SMOOTHING * itemNanos + (1 - SMOOTHING) * nanosPerItem;
+
+        int current = getChunkSize();
+        // 한번에 두배 이상 늘리거나 절반 이하로 줄이지 않는다.
+        long ideal = Math.round(targetNanos / nanosPerItem);
+        int next = (int) Math.max(minChunkSize, Math.min(maxChunkSize, Math.max(current / 2, Math.min(current * 2L, ideal))));
+
+        log.debug("chunk items : {}, read : {}us, process : {}us, write : {}us, commit : {}us",
+                sample.items, sample.readNanos / 1000, sample.processNanos / 1000, sample.writeNanos / 1000, commitNanos / 1000);
+
+        if (next != current && Math.abs(next - current) >= current * TOLERANCE) {
+            setChunkSize(next);
+            record(next);
+            log.info("chunk size {} -> {} (chunk : {}ms, target : {}ms)", current, next, chunkNanos / 1_000_000, targetNanos / 1_000_000);
+        }
+    }
+
+    // ExecutionContext는 다음 청크 커밋(또는 step 종료) 때 함께 저장된다.
+    private synchronized void record(int chunkSize) {
+        if (history.isEmpty() || history.peekLast() != chunkSize) {
+            history.addLast(chunkSize);
+            if (history.size() > HISTORY_SIZE) {
+                history.removeFirst();
+            }
+        }
+        if (executionContext != null) {
+            executionContext.putInt(CHUNK_SIZE, chunkSize);
+            executionContext.putString(CHUNK_SIZE_HISTORY, history.stream().map(String::valueOf).collect(Collectors.joining(",")));
+        }
+    }
+
+    private class ChunkSample implements TransactionSynchronization {
+        private long mark;
+        private long readNanos;
+        private long processNanos;
+        private long writeNanos;
+        private long commitStart;
+        private int items;
+
+        void reset() {
+            readNanos = 0;
+            processNanos = 0;
+            writeNanos = 0;
+            commitStart = 0;
+            items = 0;
+        }
+
+        void mark() {
+            mark = System.nanoTime();
+        }
+
+        long elapsed() {
+            return System.nanoTime() - mark;
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            commitStart = System.nanoTime();
+        }
+
+        @Override
+        public void afterCommit() {
+            adjust(this, System.nanoTime() - commitStart);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.springbatchexample.part3;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.step.item.Chunk;
+import org.springframework.batch.core.step.item.SimpleChunkProcessor;
+import org.springframework.batch.core.step.skip.SkipPolicy;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// JDBC writer의 청크 쓰기가 실패하면 청크를 반으로 나누어 다시 쓰는 chunk processor (BisectingStepBuilder가 만든다)
+// faultTolerant step은 쓰기가 실패하면 item을 하나씩 별도의 트랜잭션으로 다시 쓰지만(scan),
+// 이 processor는 청크 트랜잭션 안에서 savepoint로 실패한 절반만 되돌리고 성공한 절반은 한번에 쓴다.
+// 1000건 중 몇 건만 실패하면 1000번의 트랜잭션 대신 실패 건수 * log(1000) 번 정도의 batch로 끝난다.
+// 하나만 남은 item이 skipPolicy가 건너뛸 수 있는 예외로 실패하면 건너뛴다.
+//   건너뛴 건수는 StepContribution의 writeSkipCount로 남기고(writeCount에서는 빠진다), step에 등록된 SkipListener의
+//   onSkipInWrite를 item마다 호출한다. TaskletStep은 실패한 청크의 StepContribution도 반영하므로
+//   건수와 listener 호출은 청크 전체를 다 쓴 뒤에만 한다.
+// 건너뛸 수 없는 예외이거나 skip 한도를 넘으면 그대로 던져서 청크 전체가 롤백된다.
+// writer는 같은 DataSource에 JDBC로 쓰는 writer여야 한다.
+// JPA writer는 flush가 실패하면 Hibernate가 트랜잭션을 rollback-only로 만들고 영속성 컨텍스트도 쓸 수 없게 되므로 나눌 수 없다.
+@Slf4j
+public class BisectingChunkProcessor<I, O> extends SimpleChunkProcessor<I, O> {
+    private final DataSource dataSource;
+    private final SkipPolicy skipPolicy;
+
+    public BisectingChunkProcessor(ItemProcessor<? super I, ? extends O> itemProcessor, ItemWriter<? super O> itemWriter,
+                                   DataSource dataSource, SkipPolicy skipPolicy) {
+        super(itemProcessor, itemWriter);
+        this.dataSource = dataSource;
+        this.skipPolicy = skipPolicy;
+    }
+
+    @Override
+    protected void write(StepContribution contribution, Chunk<I> inputs, Chunk<O> outputs) throws Exception {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            super.write(contribution, inputs, outputs);
+            return;
+        }
+
+        List<O> items = outputs.getItems();
+        Map<O, Exception> skipped = new IdentityHashMap<>();
+        getListener().beforeWrite(items);
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            write(connection, items, contribution, skipped);
+        } catch (Exception e) {
+            doOnWriteError(e, items);
+            inputs.clear();
+            throw e;
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+
+        List<O> written = new ArrayList<>(items.size() - skipped.size());
+        for (O item : items) {
+            Exception failure = skipped.get(item);
+            if (failure == null) {
+                written.add(item);
+                continue;
+            }
+            contribution.incrementWriteSkipCount();
+            getListener().onSkipInWrite(item, failure);
+        }
+        doAfterWrite(written);
+        contribution.incrementWriteCount(written.size());
+    }
+
+    // items를 savepoint 안에서 쓰고, 실패하면 되돌린 뒤 반씩 나누어 다시 쓴다.
+    private void write(Connection connection, List<O> items, StepContribution contribution, Map<O, Exception> skipped) throws Exception {
+        Exception failure = tryWrite(connection, items);
+        if (failure == null) {
+            return;
+        }
+        if (!skipPolicy.shouldSkip(failure, 0)) {
+            throw failure;
+        }
+
+        if (items.size() == 1) {
+            // 한도를 넘으면 SkipLimitExceededException을 던진다.
+            if (!skipPolicy.shouldSkip(failure, contribution.getStepSkipCount() + skipped.size())) {
+                throw failure;
+            }
+            skipped.put(items.get(0), failure);
+            return;
+        }
+
+        int middle = items.size() / 2;
+        log.debug("bisecting {} items after {}", items.size(), failure.getClass().getSimpleName());
+        write(connection, items.subList(0, middle), contribution, skipped);
+        write(connection, items.subList(middle, items.size()), contribution, skipped);
+    }
+
+    private Exception tryWrite(Connection connection, List<O> items) throws SQLException {
+        Savepoint savepoint = connection.setSavepoint();
+        try {
+            writeItems(items);
+            connection.releaseSavepoint(savepoint);
+            return null;
+        } catch (Exception e) {
+            connection.rollback(savepoint);
+            return e;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.springbatchexample.part3;
+
+import org.springframework.batch.core.SkipListener;
+import org.springframework.batch.core.StepListener;
+import org.springframework.batch.core.annotation.OnSkipInProcess;
+import org.springframework.batch.core.annotation.OnSkipInRead;
+import org.springframework.batch.core.annotation.OnSkipInWrite;
+import org.springframework.batch.core.listener.StepListenerFactoryBean;
+import org.springframework.batch.core.step.builder.SimpleStepBuilder;
+import org.springframework.batch.core.step.item.ChunkOrientedTasklet;
+import org.springframework.batch.core.step.item.SimpleChunkProvider;
+import org.springframework.batch.core.step.skip.SkipPolicy;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.support.ReflectionUtils;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// 쓰기가 실패한 청크를 BisectingChunkProcessor로 나누어 쓰는 chunk step builder
+// chunk()가 만든 SimpleStepBuilder에서 시작하므로 job repository, transaction manager, listener를 그대로 이어받는다.
+//   new BisectingStepBuilder<Person, Person>(stepBuilderFactory.get("name").chunk(10)).dataSource(..).skipPolicy(..).reader(..).writer(..).build()
+// listener()로 등록한 SkipListener(@OnSkipInWrite 등이 붙은 객체 포함)는 건너뛴 item마다 호출된다.
+public class BisectingStepBuilder<I, O> extends SimpleStepBuilder<I, O> {
+    private DataSource dataSource;
+    private SkipPolicy skipPolicy;
+    private final Set<StepListener> skipListeners = new LinkedHashSet<>();
+
+    public BisectingStepBuilder(SimpleStepBuilder<I, O> parent) {
+        super(parent);
+    }
+
+    // writer가 쓰는 DataSource. 같은 connection에 savepoint를 잡는다.
+    public BisectingStepBuilder<I, O> dataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+        return this;
+    }
+
+    public BisectingStepBuilder<I, O> skipPolicy(SkipPolicy skipPolicy) {
+        this.skipPolicy = skipPolicy;
+        return this;
+    }
+
+    public BisectingStepBuilder<I, O> listener(SkipListener<? super I, ? super O> listener) {
+        skipListeners.add(listener);
+        return this;
+    }
+
+    @Override
+    public SimpleStepBuilder<I, O> listener(Object listener) {
+        super.listener(listener);
+        if (listener instanceof SkipListener) {
+            skipListeners.add((StepListener) listener);
+        } else if (!ReflectionUtils.findMethod(listener.getClass(), OnSkipInRead.class).isEmpty()
+                || !ReflectionUtils.findMethod(listener.getClass(), OnSkipInProcess.class).isEmpty()
+                || !ReflectionUtils.findMethod(listener.getClass(), OnSkipInWrite.class).isEmpty()) {
+            skipListeners.add(StepListenerFactoryBean.getListener(listener));
+        }
+        return this;
+    }
+
+    @Override
+    protected Tasklet createTasklet() {
+        Assert.state(getReader() != null, "ItemReader must be provided");
+        Assert.state(getWriter() != null, "ItemWriter must be provided");
+        Assert.state(dataSource != null, "DataSource must be provided");
+        Assert.state(skipPolicy != null, "SkipPolicy must be provided");
+
+        SimpleChunkProvider<I> chunkProvider = new SimpleChunkProvider<>(getReader(), createChunkOperations());
+        BisectingChunkProcessor<I, O> chunkProcessor = new BisectingChunkProcessor<>(getProcessor(), getWriter(), dataSource, skipPolicy);
+        chunkProvider.setListeners(new ArrayList<>(getItemListeners()));
+        List<StepListener> listeners = new ArrayList<>(getItemListeners());
+        for (StepListener skipListener : skipListeners) {
+            // ItemWriteListener이기도 한 listener가 두번 호출되지 않게 한다.
+            if (!listeners.contains(skipListener)) {
+                listeners.add(skipListener);
+            }
+        }
+        chunkProcessor.setListeners(listeners);
+
+        ChunkOrientedTasklet<I> tasklet = new ChunkOrientedTasklet<>(chunkProvider, chunkProcessor);
+        tasklet.setBuffering(!isReaderTransactionalQueue());
+        return tasklet;
+    }
+}
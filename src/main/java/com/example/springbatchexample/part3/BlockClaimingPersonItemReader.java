@@ -0,0 +1,523 @@
+package com.example.springbatchexample.part3;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.Resource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// multi-threaded step에서 여러 스레드가 락 없이 동시에 읽는 Person CSV reader
+// 파일을 blockSize 바이트의 블록으로 나누고, 스레드마다 AtomicLong으로 다음 블록을 차지해서 혼자 읽는다.
+// 블록에는 시작 위치가 그 블록 안에 있는 줄이 속한다. (LineRangePartitioner와 같은 규칙)
+// SynchronizedItemStreamReader처럼 모든 read()가 하나의 락을 기다리지 않고, 블록을 차지할 때만 CAS 한번을 한다.
+// 청크가 끝날 때 다 읽지 못한 블록은 내려놓고, 다음 청크를 실행하는 스레드(다른 스레드일 수 있다)가 이어 읽는다.
+// 재시작 : 블록마다 커밋된 item 수를 세어 두고, 모든 item이 커밋되지 않은 가장 앞 블록(watermark)부터 다시 읽는다.
+//   watermark 뒤에서 이미 끝난 블록은 건너뛰고, 일부만 커밋된 블록은 커밋된 수만큼 건너뛴다.
+//   update()는 청크를 읽은 스레드가 청크 트랜잭션 안에서 호출하므로 그 스레드가 읽은 item은 커밋된 것으로 저장하고,
+//   다른 스레드가 읽은 item은 그 스레드의 트랜잭션이 커밋된 뒤(afterCompletion)부터 반영한다.
+//   TaskletStep은 update()부터 afterCompletion까지 락을 잡고 있으므로, 그 락을 풀기 전에 커밋된 수를 올려서
+//   다음 update()가 항상 앞선 커밋을 보게 한다. (유실도 중복도 없음)
+public class BlockClaimingPersonItemReader extends ItemStreamSupport implements ItemStreamReader<Person> {
+    private static final String BLOCK_SIZE = "block.size";
+    private static final String WATERMARK = "watermark";
+    private static final String BLOCKS = "blocks";
+    private static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+    // 블록의 마지막 줄이 블록 끝을 넘어갈 수 있으므로 조금 더 map 한다.
+    private static final int OVERLAP = 64 * 1024;
+    private static final int DONE = -1;
+    private static final long WAIT_NANOS = 1_000_000;
+
+    private Resource resource;
+    private int linesToSkip;
+    private byte[][] comments = new byte[0][];
+    private int blockSize = DEFAULT_BLOCK_SIZE;
+    private StringDictionary dictionary;
+    private boolean saveState = true;
+
+    private StringDictionary stepDictionary;
+    private LocalResourceFile file;
+    private FileChannel channel;
+    private long fileSize;
+    private long dataStart;
+    private long blockCount;
+    private final AtomicLong nextBlock = new AtomicLong();
+    private final ConcurrentSkipListMap<Long, Block> inFlight = new ConcurrentSkipListMap<>();
+    private final ConcurrentLinkedQueue<BlockReader> parkedBlocks = new ConcurrentLinkedQueue<>();
+    // 차지했지만 아직 끝까지 읽지 않은 블록 수 (읽는 중 + 내려놓은 블록)
+    private final AtomicInteger openBlocks = new AtomicInteger();
+    private Map<Long, Integer> restartBlocks = new HashMap<>();
+    private volatile ThreadLocal<Cursor> cursors;
+
+    public BlockClaimingPersonItemReader() {
+        setName(ClassUtils.getShortName(BlockClaimingPersonItemReader.class));
+    }
+
+    public void setResource(Resource resource) {
+        this.resource = resource;
+    }
+
+    public void setLinesToSkip(int linesToSkip) {
+        this.linesToSkip = linesToSkip;
+    }
+
+    // 해당 prefix로 시작하는 줄은 건너뛴다. (footer 등)
+    public void setComments(String... comments) {
+        this.comments = new byte[comments.length][];
+        for (int i = 0; i < comments.length; i++) {
+            this.comments[i] = comments[i].getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    // 한 스레드가 한번에 차지하는 바이트 수. 재시작한 job에서도 같은 값이어야 한다.
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    public void setDictionary(StringDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    public void setSaveState(boolean saveState) {
+        this.saveState = saveState;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        Assert.notNull(resource, "Resource must be set");
+        stepDictionary = StringDictionary.resolve(dictionary);
+        try {
+            // jar 안의 resource처럼 파일이 아니면 임시 파일로 복사해서 map 한다.
+            file = LocalResourceFile.of(resource);
+            channel = FileChannel.open(file.path(), StandardOpenOption.READ);
+            fileSize = channel.size();
+            dataStart = skipHeader();
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to open " + resource, e);
+        }
+        blockCount = (fileSize - dataStart + blockSize - 1) / blockSize;
+        nextBlock.set(0);
+        inFlight.clear();
+        parkedBlocks.clear();
+        openBlocks.set(0);
+        restartBlocks = new HashMap<>();
+        cursors = new ThreadLocal<>();
+
+        if (saveState && executionContext.containsKey(getExecutionContextKey(WATERMARK))) {
+            int savedBlockSize = executionContext.getInt(getExecutionContextKey(BLOCK_SIZE));
+            if (savedBlockSize != blockSize) {
+                throw new ItemStreamException("Block size changed since the last execution : " + savedBlockSize + " -> " + blockSize);
+            }
+            nextBlock.set(executionContext.getLong(getExecutionContextKey(WATERMARK)));
+            restartBlocks = parseBlocks(executionContext.getString(getExecutionContextKey(BLOCKS), ""));
+        }
+    }
+
+    @Override
+    public Person read() throws Exception {
+        Cursor cursor = cursors.get();
+        if (cursor == null) {
+            cursor = new Cursor();
+            cursors.set(cursor);
+        }
+        registerCompletion(cursor);
+
+        while (true) {
+            if (cursor.current == null && !acquire(cursor)) {
+                return null;
+            }
+            BlockReader reader = cursor.current;
+            Block block = reader.block;
+            Person person = reader.next(cursor.parser);
+            if (person != null) {
+                block.read++;
+                if (!cursor.touched.contains(block)) {
+                    cursor.touched.add(block);
+                }
+                if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                    commit(cursor);
+                }
+                return person;
+            }
+
+            block.exhausted = true;
+            if (block.committed == block.read) {
+                inFlight.remove(block.index);
+            }
+            cursor.current = null;
+            openBlocks.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        if (!saveState || cursors == null) {
+            return;
+        }
+
+        // 이 스레드가 지금 커밋하는 트랜잭션에서 읽은 item은 커밋된 것으로 본다.
+        Cursor cursor = cursors.get();
+        List<Block> pending = (cursor != null) ? cursor.touched : Collections.emptyList();
+        long next = Math.min(nextBlock.get(), blockCount);
+        long watermark = next;
+        for (Block block : inFlight.values()) {
+            if (!block.isDone(block.countFor(pending)) && block.index < watermark) {
+                watermark = block.index;
+                break;
+            }
+        }
+
+        StringBuilder blocks = new StringBuilder();
+        for (long index = watermark; index < next; index++) {
+            Block block = inFlight.get(index);
+            // 차지했다가 목록에서 빠진 블록은 모두 커밋된 것이다.
+            int count = (block == null) ? DONE : block.countFor(pending);
+            if (block != null && block.isDone(count)) {
+                count = DONE;
+            }
+            appendBlock(blocks, index, count);
+        }
+        // 재시작한 뒤 아직 차지하지 않은 블록의 상태는 그대로 넘긴다.
+        for (Map.Entry<Long, Integer> entry : restartBlocks.entrySet()) {
+            if (entry.getKey() >= next) {
+                appendBlock(blocks, entry.getKey(), entry.getValue());
+            }
+        }
+
+        executionContext.putInt(getExecutionContextKey(BLOCK_SIZE), blockSize);
+        executionContext.putLong(getExecutionContextKey(WATERMARK), watermark);
+        executionContext.putString(getExecutionContextKey(BLOCKS), blocks.toString());
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        cursors = null;
+        inFlight.clear();
+        parkedBlocks.clear();
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+            if (file != null) {
+                file.close();
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to close " + resource, e);
+        } finally {
+            channel = null;
+            file = null;
+        }
+    }
+
+    // 다른 스레드가 청크를 끝내며 내려놓은 블록이 있으면 이어 읽고, 없으면 새 블록을 차지한다.
+    // 차지할 블록이 없어도 다른 스레드가 읽고 있는 블록이 남아 있으면 내려놓을 때까지 기다린다.
+    // null은 모든 블록을 다 읽었을 때만 리턴해야 한다. 하나의 스레드라도 null을 받으면 step이 더 이상 청크를 시작하지 않는다.
+    private boolean acquire(Cursor cursor) throws IOException {
+        while (true) {
+            BlockReader parked = parkedBlocks.poll();
+            if (parked != null) {
+                cursor.current = parked;
+                return true;
+            }
+            if (claim(cursor)) {
+                return true;
+            }
+            if (openBlocks.get() == 0 && parkedBlocks.isEmpty()) {
+                return false;
+            }
+            LockSupport.parkNanos(WAIT_NANOS);
+        }
+    }
+
+    // 다음 블록을 차지한다. 목록에 먼저 넣고 nextBlock을 넘기므로 nextBlock 앞의 블록은 항상 목록에 있거나 끝난 블록이다.
+    // 다른 스레드가 먼저 넣었으면 nextBlock 넘기는 것을 돕고 다시 시도한다.
+    private boolean claim(Cursor cursor) throws IOException {
+        while (true) {
+            long index = nextBlock.get();
+            if (index >= blockCount) {
+                return false;
+            }
+            Integer restarted = restartBlocks.get(index);
+            if (restarted != null && restarted == DONE) {
+                nextBlock.compareAndSet(index, index + 1);
+                continue;
+            }
+
+            Block block = new Block(index);
+            openBlocks.incrementAndGet();
+            if (inFlight.putIfAbsent(index, block) != null) {
+                openBlocks.decrementAndGet();
+                nextBlock.compareAndSet(index, index + 1);
+                continue;
+            }
+            nextBlock.compareAndSet(index, index + 1);
+
+            cursor.current = new BlockReader(block, (restarted != null) ? restarted : 0);
+            return true;
+        }
+    }
+
+    // 청크 트랜잭션이 커밋되면 이 스레드가 읽은 블록의 커밋된 수를 올린다.
+    // 끝까지 읽지 못한 블록은 내려놓아서 다음 청크를 실행하는 스레드가 이어 읽게 한다.
+    // 롤백되면 커밋된 수는 그대로 두므로 재시작하면 그 블록의 커밋된 item 다음부터 다시 읽는다. (fault tolerant step은 지원하지 않는다)
+    private void registerCompletion(Cursor cursor) {
+        if (cursor.registered || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            // TaskletStep이 락을 푸는 synchronization보다 먼저 실행한다.
+            @Override
+            public int getOrder() {
+                return Ordered.HIGHEST_PRECEDENCE;
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                cursor.registered = false;
+                if (status == STATUS_COMMITTED) {
+                    commit(cursor);
+                } else {
+                    // 롤백된 item은 다시 읽을 수 없으므로 읽던 블록을 내려놓지 않는다.
+                    // 다른 스레드가 이어 읽으면 롤백된 item까지 커밋된 것으로 세게 된다. 재시작하면 커밋된 item 다음부터 읽는다.
+                    if (cursor.current != null && cursor.touched.contains(cursor.current.block)) {
+                        cursor.current = null;
+                        openBlocks.decrementAndGet();
+                    }
+                    cursor.touched.clear();
+                }
+                if (cursor.current != null) {
+                    parkedBlocks.add(cursor.current);
+                    cursor.current = null;
+                }
+            }
+        });
+        cursor.registered = true;
+    }
+
+    private void commit(Cursor cursor) {
+        for (Block block : cursor.touched) {
+            block.committed = block.read;
+            if (block.exhausted) {
+                inFlight.remove(block.index);
+            }
+        }
+        cursor.touched.clear();
+    }
+
+    private long skipHeader() throws IOException {
+        if (linesToSkip == 0) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long position = 0;
+        int lines = 0;
+        while (position < fileSize) {
+            buffer.clear();
+            int count = channel.read(buffer, position);
+            for (int i = 0; i < count; i++) {
+                if (buffer.get(i) == '\n' && ++lines == linesToSkip) {
+                    return position + i + 1;
+                }
+            }
+            position += count;
+        }
+        return fileSize;
+    }
+
+    private static void appendBlock(StringBuilder blocks, long index, int count) {
+        if (count == 0) {
+            return;
+        }
+        if (blocks.length() > 0) {
+            blocks.append(',');
+        }
+        blocks.append(index).append(':').append(count);
+    }
+
+    private static Map<Long, Integer> parseBlocks(String value) {
+        Map<Long, Integer> blocks = new HashMap<>();
+        if (value.isEmpty()) {
+            return blocks;
+        }
+        for (String entry : value.split(",")) {
+            int separator = entry.indexOf(':');
+            blocks.put(Long.parseLong(entry.substring(0, separator)), Integer.parseInt(entry.substring(separator + 1)));
+        }
+        return blocks;
+    }
+
+    // 차지한 블록의 진행 상태. 블록은 한번에 한 스레드만 읽으며, committed는 읽은 스레드의 트랜잭션이 커밋된 뒤에 올린다.
+    private static final class Block {
+        private final long index;
+        private volatile int read;
+        private volatile int committed;
+        private volatile boolean exhausted;
+
+        private Block(long index) {
+            this.index = index;
+        }
+
+        // pending : update()를 호출한 스레드가 지금 트랜잭션에서 읽은 블록들
+        private int countFor(List<Block> pending) {
+            return pending.contains(this) ? read : committed;
+        }
+
+        private boolean isDone(int count) {
+            return exhausted && count == read;
+        }
+    }
+
+    // 스레드마다 하나씩 가지는 상태
+    private final class Cursor {
+        private final PersonRecordParser parser = new PersonRecordParser();
+        private final List<Block> touched = new ArrayList<>(2);
+        private boolean registered;
+        private BlockReader current;
+
+        private Cursor() {
+            parser.setDictionary(stepDictionary);
+        }
+    }
+
+    // 블록 하나를 읽는 위치. 지금 읽는 블록만 map 한다.
+    private final class BlockReader {
+        private final Block block;
+        private MappedByteBuffer region;
+        private long regionStart;
+        private long position;
+        private final long end;
+        private int from;
+        private int to;
+
+        // skip : 재시작 전에 이미 커밋된 item 수
+        private BlockReader(Block block, int skip) throws IOException {
+            this.block = block;
+            long start = dataStart + block.index * blockSize;
+            end = Math.min(start + blockSize, fileSize);
+
+            // 앞 블록에서 시작한 줄은 앞 블록의 것이므로 다음 줄부터 읽는다.
+            long mapStart = (block.index == 0) ? start : start - 1;
+            map(mapStart, (int) Math.min(end - mapStart + OVERLAP, Integer.MAX_VALUE));
+            position = start;
+            if (block.index > 0 && region.get(0) != '\n' && nextLine()) {
+                position = nextLineStart();
+            }
+
+            for (int i = 0; i < skip; i++) {
+                if (nextDataLine() < 0) {
+                    throw new ItemStreamException("Block " + block.index + " has fewer than " + skip + " records in " + resource.getDescription());
+                }
+            }
+            block.read = skip;
+            block.committed = skip;
+        }
+
+        private Person next(PersonRecordParser parser) throws IOException {
+            long lineStart = nextDataLine();
+            if (lineStart < 0) {
+                return null;
+            }
+            try {
+                return parser.parse(region, from, to);
+            } catch (Exception e) {
+                byte[] bytes = new byte[to - from];
+                region.get(from, bytes, 0, bytes.length);
+                String line = new String(bytes, StandardCharsets.UTF_8);
+                throw new FlatFileParseException("Parsing error at byte offset " + lineStart + " in resource=["
+                        + resource.getDescription() + "], input=[" + line + "]", e, line, 0);
+            }
+        }
+
+        // comment가 아닌 다음 줄로 이동하고 그 줄의 시작 위치를 리턴한다. 블록에 더 없으면 -1
+        private long nextDataLine() throws IOException {
+            while (position < end) {
+                long lineStart = position;
+                if (!nextLine()) {
+                    return -1;
+                }
+                position = nextLineStart();
+                if (!isComment()) {
+                    return lineStart;
+                }
+            }
+            return -1;
+        }
+
+        // position에서 시작하는 줄을 [from, to)에 잡는다. (줄바꿈 문자 제외)
+        private boolean nextLine() throws IOException {
+            if (position >= fileSize) {
+                return false;
+            }
+            while (true) {
+                int index = (int) (position - regionStart);
+                int limit = region.limit();
+                int i = index;
+                while (i < limit && region.get(i) != '\n') {
+                    i++;
+                }
+                if (i < limit || regionStart + limit >= fileSize) {
+                    from = index;
+                    to = i;
+                    if (to > from && region.get(to - 1) == '\r') {
+                        to--;
+                    }
+                    return true;
+                }
+                // 줄이 map 한 구간을 넘어가면 줄의 시작부터 더 크게 map 한다.
+                map(position, (int) Math.min((long) limit * 2, Integer.MAX_VALUE));
+            }
+        }
+
+        // nextLine()으로 잡은 줄의 다음 줄 시작 위치
+        private long nextLineStart() {
+            int i = to;
+            while (i < region.limit() && region.get(i) != '\n') {
+                i++;
+            }
+            return Math.min(regionStart + i + 1, fileSize);
+        }
+
+        private boolean isComment() {
+            for (byte[] bytes : comments) {
+                if (to - from < bytes.length) {
+                    continue;
+                }
+                boolean matched = true;
+                for (int i = 0; i < bytes.length && matched; i++) {
+                    matched = region.get(from + i) == bytes[i];
+                }
+                if (matched) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void map(long offset, int size) throws IOException {
+            region = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(size, fileSize - offset));
+            regionStart = offset;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.springbatchexample.part3;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Bloom filter로 처음 보는 key를 빠르게 걸러내고, "있을 수도 있음"인 경우에만 정확한 확인을 한다.
+// 정확한 확인은 이 job execution이 등록한 key만 들고 있는 SpillableKeyIndex로 한다.
+// person 테이블처럼 이전 실행의 데이터가 섞인 저장소를 보지 않으므로 hashed, spill 색인과 같은 결과를 낸다.
+// 처음 보는 key는 spill 색인의 run 파일을 찾아보지 않고 바로 추가한다.
+// 비트 배열 크기는 예상 건수와 오탐률로 정해지므로 메모리 사용량은 고정된다.
+// 정확한 확인도 이름이 아닌 64bit 해시를 비교하므로, 해시가 충돌한 다른 이름은 Bloom filter 오탐과 달리 중복으로 걸러진다.
+// remove()는 정확한 확인용 색인에서만 지운다. 비트는 지울 수 없지만 켜진 비트는 정확한 확인으로 넘어가므로 결과는 같다.
+public class BloomFilterKeyIndex implements DuplicateKeyIndex {
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final SpillableKeyIndex exact;
+
+    public BloomFilterKeyIndex(long expectedEntries, double falsePositiveRate, SpillableKeyIndex exact) {
+        long optimalBits = (long) Math.ceil(-expectedEntries * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, Math.min(Integer.MAX_VALUE - 8, (optimalBits + 63) / 64));
+
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = words * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedEntries * Math.log(2)));
+        this.exact = exact;
+    }
+
+    @Override
+    public synchronized boolean add(long hash, String key) {
+        if (mightContain(hash)) {
+            return exact.add(hash, key);
+        }
+
+        set(hash);
+        exact.append(hash);
+        return true;
+    }
+
+    @Override
+    public synchronized void restore(long hash) {
+        set(hash);
+        exact.restore(hash);
+    }
+
+    @Override
+    public synchronized boolean remove(long hash) {
+        return exact.remove(hash);
+    }
+
+    @Override
+    public void close() {
+        exact.close();
+    }
+
+    private boolean mightContain(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void set(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+
+            long current;
+            do {
+                current = bits.get(word);
+            } while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask));
+        }
+    }
+}
@@ -37,7 +37,7 @@ public class ChunkProcessConfiguration {
         return jobBuilderFactory.get("chunkProcessingJob")
                 .incrementer(new RunIdIncrementer())
                 .start(this.taskBaseStep())
-                .next(this.chunkBaseStep(null))
+                .next(this.chunkBaseStep(null, null, null, null))
                 .build();
     }
 
@@ -62,7 +62,7 @@ public class ChunkProcessConfiguration {
             log.info("Chunk Size : {}", Integer.toString(chunkSize));
 
             int fromIndex = stepExecution.getReadCount();
-            int toIndex = fromIndex + chunkSize;
+            int toIndex = Math.min(fromIndex + chunkSize, items.size());
 
             if(fromIndex >= items.size()) {
                 return RepeatStatus.FINISHED;
@@ -71,7 +71,10 @@ public class ChunkProcessConfiguration {
             List<String> subList = items.subList(fromIndex, toIndex);
             log.info("task item size : {}", subList.size());
 
-            stepExecution.setReadCount(toIndex);
+            // StepExecution의 read count를 직접 덮어쓰지 않고 StepContribution에 더한다. 청크가 커밋될 때 반영된다.
+            for (int i = fromIndex; i < toIndex; i++) {
+                contribution.incrementReadCount();
+            }
 
             // 반복적으로 수행하기 위해서 RepeatStatus.CONTINUABLE 리턴
             return RepeatStatus.CONTINUABLE;
@@ -96,10 +99,14 @@ public class ChunkProcessConfiguration {
     //@StepScope는 step 실행 시점에 생성/소멸 - Tasklet, Chunk 등에 선언
     //JobParameter를 사용하기 위해서는 @JobScope, @StepScope 반드시 선언되어 있어야 한다.
     @JobScope
-    public Step chunkBaseStep(@Value("#{jobParameters[chunkSize]}") String chunkSize){
-        return stepBuilderFactory.get("chunkBaseStep")
-                // 100개의 데이터를 10개씩 나누어서 실행해라
-                .<String, String>chunk((chunkSize != null) ? Integer.parseInt(chunkSize) : 10)
+    // targetCommitMillis를 주면 청크 트랜잭션 시간이 목표에 맞도록 chunk size를 min ~ max 사이에서 조절한다.
+    public Step chunkBaseStep(@Value("#{jobParameters[chunkSize]}") String chunkSize,
+                              @Value("#{jobParameters[targetCommitMillis]}") Long targetCommitMillis,
+                              @Value("#{jobParameters[minChunkSize]}") Integer minChunkSize,
+                              @Value("#{jobParameters[maxChunkSize]}") Integer maxChunkSize){
+        // 100개의 데이터를 10개씩 나누어서 실행해라
+        return AdaptiveChunkSizePolicy.<String, String>chunk(stepBuilderFactory.get("chunkBaseStep"),
+                        (chunkSize != null) ? Integer.parseInt(chunkSize) : 10, targetCommitMillis, minChunkSize, maxChunkSize)
                 .reader(itemReader())
                 .processor(itemProcessor())
                 .writer(itemWriter())
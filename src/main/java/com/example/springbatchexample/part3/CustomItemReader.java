@@ -1,26 +1,188 @@
 package com.example.springbatchexample.part3;
 
-import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
 import org.springframework.batch.item.NonTransientResourceException;
 import org.springframework.batch.item.ParseException;
 import org.springframework.batch.item.UnexpectedInputException;
+import org.springframework.core.Ordered;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.ClassUtils;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 //ListItemReader와 동일하다.
-public class CustomItemReader<T> implements ItemReader<T> {
+// 리스트에서 꺼내 지우지 않고 읽을 위치(cursor)만 옮기므로 한 건을 읽는 비용이 O(1)이다.
+// cursor는 원자적으로 증가시키므로 multi-threaded step에서도 같은 항목을 두번 읽지 않는다.
+// 재시작 : 읽은 위치(cursor)가 아니라 커밋된 위치를 저장한다.
+//   그 앞의 항목이 모두 커밋된 위치(read.index)와, 그 뒤에서 먼저 커밋된 항목(read.committed)을 저장하고
+//   재시작하면 read.index부터 읽으면서 read.committed에 있는 항목은 건너뛴다.
+//   다른 스레드가 읽고 아직 커밋하지 않은 항목은 저장하지 않으므로 multi-threaded step에서도 유실이 없다.
+//   update()를 호출한 스레드가 읽은 항목은 지금 커밋하는 트랜잭션에 들어가므로 커밋된 것으로 저장한다.
+public class CustomItemReader<T> extends ItemStreamSupport implements ItemStreamReader<T> {
+    private static final String READ_INDEX = "read.index";
+    private static final String COMMITTED = "read.committed";
+
     private final List<T> items;
+    private final AtomicInteger cursor = new AtomicInteger();
+    private boolean saveState = true;
+
+    // low 앞의 항목은 모두 커밋되었고, committed는 low 뒤에서 먼저 커밋된 항목이다. 둘 다 this로 동기화한다.
+    private int low;
+    private final TreeSet<Integer> committed = new TreeSet<>();
+    // 재시작 전에 이미 커밋된 항목. open() 뒤에는 바뀌지 않으므로 락 없이 읽는다.
+    private volatile Set<Integer> restored = Collections.emptySet();
+    private volatile ThreadLocal<Pending> pendings = ThreadLocal.withInitial(Pending::new);
 
     public CustomItemReader(List<T> items) {
-        this.items = items;
+        // 호출한 쪽의 리스트는 변경하지 않는다. LinkedList 처럼 get(i)이 O(n)인 경우에만 복사한다.
+        this.items = Collections.unmodifiableList(items instanceof RandomAccess ? items : new ArrayList<>(items));
+        setName(ClassUtils.getShortName(CustomItemReader.class));
+    }
+
+    // false이면 읽은 위치를 저장하지 않고, 재시작해도 처음부터 읽는다.
+    public void setSaveState(boolean saveState) {
+        this.saveState = saveState;
     }
 
     @Override
     public T read() throws Exception, UnexpectedInputException, ParseException, NonTransientResourceException {
-        if(!items.isEmpty()) {
-            return items.remove(0);
+        while (true) {
+            int index = cursor.getAndIncrement();
+            if (index >= items.size()) {
+                // 끝에 도달한 뒤에도 계속 호출되면 cursor가 넘치지 않도록 되돌려 둔다.
+                cursor.set(items.size());
+                // null을 리턴하면 chunk 반복의 끝이다.
+                return null;
+            }
+            if (!saveState) {
+                return items.get(index);
+            }
+            if (restored.contains(index)) {
+                continue;
+            }
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                Pending pending = pendings.get();
+                pending.add(index);
+                pending.register();
+            } else {
+                commit(index);
+            }
+            return items.get(index);
+        }
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        synchronized (this) {
+            low = 0;
+            committed.clear();
+            if (saveState) {
+                low = executionContext.getInt(getExecutionContextKey(READ_INDEX), 0);
+                for (String index : executionContext.getString(getExecutionContextKey(COMMITTED), "").split(",")) {
+                    if (!index.isEmpty()) {
+                        committed.add(Integer.parseInt(index));
+                    }
+                }
+            }
+            restored = new HashSet<>(committed);
+            cursor.set(low);
+        }
+        pendings = ThreadLocal.withInitial(Pending::new);
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        if (!saveState) {
+            return;
+        }
+        Pending pending = pendings.get();
+        // fault tolerant step이 롤백 뒤에 read() 없이 다시 쓰는 청크도 커밋되면 반영되도록 여기서도 등록한다.
+        pending.register();
+
+        int index;
+        TreeSet<Integer> ahead;
+        synchronized (this) {
+            index = low;
+            ahead = new TreeSet<>(committed);
+        }
+        for (int i = 0; i < pending.size; i++) {
+            ahead.add(pending.indexes[i]);
+        }
+        while (ahead.remove(index)) {
+            index++;
+        }
+        StringBuilder builder = new StringBuilder();
+        for (Integer committedIndex : ahead) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(committedIndex);
+        }
+        executionContext.putInt(getExecutionContextKey(READ_INDEX), Math.min(index, items.size()));
+        executionContext.putString(getExecutionContextKey(COMMITTED), builder.toString());
+    }
+
+    private synchronized void commit(int index) {
+        if (index != low) {
+            committed.add(index);
+            return;
+        }
+        low++;
+        while (committed.remove(low)) {
+            low++;
+        }
+    }
+
+    // 스레드가 지금 트랜잭션에서 읽은 위치들. 커밋되면 commit()으로 옮긴다.
+    // 롤백되면 그대로 두어서 fault tolerant step이 같은 항목을 다시 쓰고 커밋할 때 함께 반영한다.
+    private final class Pending implements TransactionSynchronization {
+        private int[] indexes = new int[16];
+        private int size;
+        private boolean registered;
+
+        private void add(int index) {
+            if (size == indexes.length) {
+                indexes = Arrays.copyOf(indexes, size * 2);
+            }
+            indexes[size++] = index;
+        }
+
+        private void register() {
+            if (registered || size == 0 || !TransactionSynchronizationManager.isSynchronizationActive()) {
+                return;
+            }
+            TransactionSynchronizationManager.registerSynchronization(this);
+            registered = true;
+        }
+
+        // TaskletStep이 락을 푸는 synchronization보다 먼저 실행해서 다음 update()가 이 커밋을 보게 한다.
+        @Override
+        public int getOrder() {
+            return Ordered.HIGHEST_PRECEDENCE;
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            registered = false;
+            if (status != STATUS_COMMITTED) {
+                return;
+            }
+            for (int i = 0; i < size; i++) {
+                commit(indexes[i]);
+            }
+            size = 0;
         }
-        // null을 리턴하면 chunk 반복의 끝이다.
-        return null;
     }
 }
@@ -0,0 +1,212 @@
+package com.example.springbatchexample.part3;
+
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// 이름 기준으로 이미 처리한 Person을 걸러내는 processor
+// 새로 등록된 key의 해시는 청크 커밋 시점마다 journal 파일에 덧붙이고,
+// journal의 커밋된 길이는 step의 ExecutionContext에 저장한다.
+// 재시작하면 커밋된 길이까지만 journal을 다시 읽어 색인을 복구하므로 중복이 다시 들어오지 않는다.
+// 청크 트랜잭션 안에서 처리한 key는 그 트랜잭션에 묶어 두고, 같은 트랜잭션의 update()에서 journal에 쓴다.
+// multi-threaded step에서 다른 스레드의 커밋되지 않은 청크 key가 journal에 섞이지 않게 한다.
+// 트랜잭션 밖에서 처리한 key는 다음 update()에서 함께 쓴다.
+public class DuplicateCheckProcessor extends ItemStreamSupport implements ItemProcessor<Person, Person>, StepExecutionListener {
+    private static final String JOURNAL_SIZE = "journal.size";
+    static final String JOURNAL_SUFFIX = ".journal";
+    static final String SEALED_SUFFIX = ".sealed";
+
+    private final DuplicateKeyIndexRegistry registry;
+    private final DuplicateKeyIndexRegistry.IndexFactory indexFactory;
+    private final boolean allowDuplicate;
+
+    private DuplicateKeyIndex index;
+    private Path journal;
+    private FileChannel channel;
+    private List<String> pending = new ArrayList<>();
+
+    public DuplicateCheckProcessor(DuplicateKeyIndexRegistry registry, DuplicateKeyIndexRegistry.IndexFactory indexFactory, boolean allowDuplicate) {
+        this.registry = registry;
+        this.indexFactory = indexFactory;
+        this.allowDuplicate = allowDuplicate;
+        setName(ClassUtils.getShortName(DuplicateCheckProcessor.class));
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        if (allowDuplicate) {
+            return;
+        }
+        index = registry.getIndex(stepExecution.getJobExecution(), indexFactory);
+        journal = registry.getDirectory(stepExecution.getJobExecution())
+                .resolve(stepExecution.getStepName().replace(':', '-') + JOURNAL_SUFFIX);
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        if (allowDuplicate) {
+            return;
+        }
+
+        long committed = executionContext.getLong(getExecutionContextKey(JOURNAL_SIZE), 0L);
+        try {
+            channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // 커밋되지 않은 청크에서 기록된 부분은 버린다.
+            if (channel.size() > committed) {
+                channel.truncate(committed);
+            }
+            replay(channel, committed, index);
+            channel.position(committed);
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to open duplicate check journal " + journal, e);
+        }
+    }
+
+    @Override
+    public Person process(Person person) {
+        if (allowDuplicate) {
+            return person;
+        }
+
+        if (!index.add(DuplicateKeyIndex.hash(person.getName()), person.getName())) {
+            return null;
+        }
+        List<String> chunkKeys = chunkKeys();
+        if (chunkKeys != null) {
+            chunkKeys.add(person.getName());
+        } else {
+            synchronized (this) {
+                pending.add(person.getName());
+            }
+        }
+        return person;
+    }
+
+    // 현재 청크 트랜잭션에 묶인 key 목록. 트랜잭션이 끝나면 풀린다.
+    @SuppressWarnings("unchecked")
+    private List<String> chunkKeys() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        List<String> keys = (List<String>) TransactionSynchronizationManager.getResource(this);
+        if (keys == null) {
+            keys = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, keys);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(DuplicateCheckProcessor.this);
+                }
+            });
+        }
+        return keys;
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        if (allowDuplicate || channel == null) {
+            return;
+        }
+
+        List<String> keys;
+        synchronized (this) {
+            keys = pending;
+            pending = new ArrayList<>();
+        }
+        List<String> chunkKeys = chunkKeys();
+        if (chunkKeys != null) {
+            keys.addAll(chunkKeys);
+            chunkKeys.clear();
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(keys.size() * Long.BYTES);
+            for (String key : keys) {
+                buffer.putLong(DuplicateKeyIndex.hash(key));
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to write duplicate check journal " + journal, e);
+        }
+
+        index.checkpoint(keys);
+        executionContext.putLong(getExecutionContextKey(JOURNAL_SIZE), journalSize());
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to close duplicate check journal " + journal, e);
+        } finally {
+            channel = null;
+        }
+    }
+
+    // 완료된 step의 journal은 다른 파티션이 재시작할 때 통째로 읽을 수 있도록 봉인한다.
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        if (!allowDuplicate && stepExecution.getStatus() == BatchStatus.COMPLETED && Files.exists(journal)) {
+            try {
+                String sealed = journal.getFileName().toString().replace(JOURNAL_SUFFIX, SEALED_SUFFIX);
+                Files.move(journal, journal.resolveSibling(sealed), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                throw new ItemStreamException("Unable to seal duplicate check journal " + journal, e);
+            }
+        }
+        return null;
+    }
+
+    private long journalSize() {
+        try {
+            return channel.position();
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to read duplicate check journal position " + journal, e);
+        }
+    }
+
+    static void replay(FileChannel channel, long length, DuplicateKeyIndex index) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long position = 0;
+        while (position < length) {
+            buffer.limit((int) Math.min(buffer.capacity(), buffer.position() + length - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+
+            buffer.flip();
+            while (buffer.remaining() >= Long.BYTES) {
+                index.restore(buffer.getLong());
+            }
+            buffer.compact();
+        }
+    }
+}
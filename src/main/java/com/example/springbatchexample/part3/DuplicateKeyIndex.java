@@ -0,0 +1,46 @@
+package com.example.springbatchexample.part3;
+
+import java.util.List;
+
+// 중복 체크에 사용하는 key 색인
+// Person 전체가 아닌 key(이름)의 64bit 해시만 보관해서 메모리 사용량을 고정한다.
+// key는 해시로만 비교하므로 확률적인 색인이다. 해시가 충돌한 서로 다른 이름은 중복으로 판정되어 뒤의 것이 걸러진다.
+// 한 건도 잘못 걸러지면 안 되는 경우에는 이름을 직접 비교하는 ExternalSortDedupTasklet을 사용한다.
+// 여러 worker step이 같은 색인을 공유할 수 있으므로 구현체는 thread-safe 해야 한다.
+public interface DuplicateKeyIndex {
+
+    // 처음 보는 key이면 등록하고 true, 이미 등록된 key이면 false
+    boolean add(long hash, String key);
+
+    // 재시작 시 journal에 기록되어 있던 key를 다시 채운다.
+    void restore(long hash);
+
+    // 커밋되지 않은 청크에서 add()한 key를 되돌린다. 지웠으면 true
+    boolean remove(long hash);
+
+    // 청크가 커밋되기 직전에 해당 청크에서 새로 등록된 key 목록과 함께 호출된다.
+    default void checkpoint(List<String> keys) {
+    }
+
+    default void close() {
+    }
+
+    // FNV-1a 64bit 해시에 murmur3 finalizer를 더해 비트를 고르게 섞는다.
+    // 서로 다른 이름 n개 중 한 쌍이라도 충돌할 확률은 약 n^2 / 2^65 이다. 1억 건이면 0.03%, 10억 건이면 3% 정도다.
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+
+        // 0은 빈 슬롯 표시로 사용하므로 피한다. Long.MIN_VALUE는 journal에 남은 값과 같도록 예전처럼 1로 바꾼다.
+        return (h == 0 || h == Long.MIN_VALUE) ? 1 : h;
+    }
+}
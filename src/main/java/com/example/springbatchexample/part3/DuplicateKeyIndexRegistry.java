@@ -0,0 +1,92 @@
+package com.example.springbatchexample.part3;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+// job execution 단위로 중복 체크 색인을 공유한다.
+// 파티션 step처럼 여러 worker가 동시에 돌아도 같은 색인을 바라보게 하고, job이 끝나면 정리한다.
+@Slf4j
+public class DuplicateKeyIndexRegistry implements JobExecutionListener {
+    private final Path baseDirectory;
+    private final Map<Long, DuplicateKeyIndex> indexes = new ConcurrentHashMap<>();
+
+    public DuplicateKeyIndexRegistry(Path baseDirectory) {
+        this.baseDirectory = baseDirectory;
+    }
+
+    // job instance 별 journal 디렉토리. 재시작한 execution도 같은 디렉토리를 사용한다.
+    public Path getDirectory(JobExecution jobExecution) {
+        try {
+            return Files.createDirectories(baseDirectory.resolve(jobExecution.getJobInstance().getJobName()
+                    + "-" + jobExecution.getJobInstance().getInstanceId()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public DuplicateKeyIndex getIndex(JobExecution jobExecution, IndexFactory indexFactory) {
+        return indexes.computeIfAbsent(jobExecution.getId(), id -> {
+            DuplicateKeyIndex index = indexFactory.create(getDirectory(jobExecution));
+            restoreSealed(getDirectory(jobExecution), index);
+            return index;
+        });
+    }
+
+    @Override
+    public void beforeJob(JobExecution jobExecution) {
+    }
+
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        DuplicateKeyIndex index = indexes.remove(jobExecution.getId());
+        if (index != null) {
+            index.close();
+        }
+
+        // 완료된 job은 재시작할 일이 없으므로 journal을 지운다.
+        if (jobExecution.getStatus() == BatchStatus.COMPLETED) {
+            Path directory = baseDirectory.resolve(jobExecution.getJobInstance().getJobName()
+                    + "-" + jobExecution.getJobInstance().getInstanceId());
+            if (Files.exists(directory)) {
+                try (Stream<Path> paths = Files.walk(directory)) {
+                    paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+                } catch (IOException e) {
+                    log.warn("Unable to delete duplicate check journals in {}", directory, e);
+                }
+            }
+        }
+    }
+
+    // 이전 실행에서 완료된 step(파티션)의 journal은 전부 커밋된 상태이므로 통째로 복구한다.
+    private void restoreSealed(Path directory, DuplicateKeyIndex index) {
+        try (DirectoryStream<Path> sealed = Files.newDirectoryStream(directory, "*" + DuplicateCheckProcessor.SEALED_SUFFIX)) {
+            for (Path journal : sealed) {
+                try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.READ)) {
+                    DuplicateCheckProcessor.replay(channel, channel.size(), index);
+                }
+                log.info("restored duplicate keys from {}", journal);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to restore duplicate check journals in " + directory, e);
+        }
+    }
+
+    @FunctionalInterface
+    public interface IndexFactory {
+        DuplicateKeyIndex create(Path directory);
+    }
+}
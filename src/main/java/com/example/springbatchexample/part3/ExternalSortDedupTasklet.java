@@ -0,0 +1,406 @@
+package com.example.springbatchexample.part3;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+// 이름 기준 중복 제거를 메모리 색인 없이 정렬로 처리하는 tasklet. 중복 체크 processor 대신 앞 step으로 둔다.
+//   1. 입력을 순서대로 읽으면서 (이름, 줄의 바이트 위치)를 runSize 개씩 정렬해 run 파일로 내보낸다.
+//   2. run들을 k-way merge 하면 같은 이름이 위치 순서로 모이므로 이름마다 첫번째 위치만 남긴다.
+//      남긴 위치들도 같은 방식으로 run 파일에 정렬해 두었다가 다시 merge 한다.
+//   3. 입력을 처음부터 다시 읽으면서 정렬된 위치에 해당하는 줄만 출력 파일에 쓴다. 원래 순서가 유지된다.
+// 메모리는 runSize 개의 항목과 run 마다의 읽기 버퍼만 사용하고, 파일은 모두 순차로 읽고 쓴다.
+// run이 fanIn 개보다 많으면 fanIn 개씩 먼저 합친다.
+// header(linesToSkip)와 comments로 시작하는 줄은 비교하지 않고 그대로 쓴다.
+// 출력은 임시 파일에 쓴 뒤 옮기므로 실패하면 이전 출력이 남는다. 재시작하면 처음부터 다시 한다.
+@Slf4j
+public class ExternalSortDedupTasklet implements Tasklet {
+    public static final String RECORDS = "dedup.records";
+    public static final String KEPT = "dedup.kept";
+    private static final int DEFAULT_RUN_SIZE = 1_000_000;
+    private static final int DEFAULT_FAN_IN = 64;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] NO_KEY = new byte[0];
+
+    private static final Comparator<Entry> ORDER = (a, b) -> {
+        int result = Arrays.compareUnsigned(a.key, b.key);
+        return (result != 0) ? result : Long.compare(a.offset, b.offset);
+    };
+
+    private final Resource resource;
+    private final Path output;
+    private final Path workDirectory;
+    private int runSize = DEFAULT_RUN_SIZE;
+    private int fanIn = DEFAULT_FAN_IN;
+    private int linesToSkip;
+    private byte[][] comments = new byte[0][];
+
+    public ExternalSortDedupTasklet(Resource resource, Path output, Path workDirectory) {
+        this.resource = resource;
+        this.output = output;
+        this.workDirectory = workDirectory;
+    }
+
+    // 메모리에서 정렬할 항목 수
+    public void setRunSize(int runSize) {
+        Assert.isTrue(runSize > 0, "runSize must be positive");
+        this.runSize = runSize;
+    }
+
+    // 한번에 merge 하는 run 파일 수. 1 이하이면 run 수가 줄지 않는다.
+    public void setFanIn(int fanIn) {
+        Assert.isTrue(fanIn >= 2, "fanIn must be at least 2");
+        this.fanIn = fanIn;
+    }
+
+    public void setLinesToSkip(int linesToSkip) {
+        this.linesToSkip = linesToSkip;
+    }
+
+    public void setComments(String... comments) {
+        this.comments = new byte[comments.length][];
+        for (int i = 0; i < comments.length; i++) {
+            this.comments[i] = comments[i].getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        Files.createDirectories(workDirectory);
+        Path directory = Files.createTempDirectory(workDirectory, "dedup-");
+        try {
+            RunWriter keys = new RunWriter(directory, "keys");
+            long records = spillKeys(keys);
+            List<Path> keyRuns = keys.finish();
+
+            // 이름이 바뀔 때마다 첫번째 위치를 남긴다.
+            RunWriter offsets = new RunWriter(directory, "offsets");
+            long kept = 0;
+            try (RunMerger merger = new RunMerger(mergeDown(directory, keyRuns))) {
+                byte[] previous = null;
+                for (Entry entry = merger.next(); entry != null; entry = merger.next()) {
+                    if (previous == null || !Arrays.equals(previous, entry.key)) {
+                        offsets.add(new Entry(NO_KEY, entry.offset));
+                        previous = entry.key;
+                        kept++;
+                    }
+                }
+            }
+            List<Path> offsetRuns = offsets.finish();
+
+            try (RunMerger merger = new RunMerger(mergeDown(directory, offsetRuns))) {
+                copyLines(merger, directory);
+            }
+
+            // StepExecution의 건수는 int 이므로 정확한 건수는 ExecutionContext에 남긴다.
+            // StepContribution의 readCount는 하나씩만 올릴 수 있으므로 StepExecution에 한번에 더한다.
+            StepExecution stepExecution = chunkContext.getStepContext().getStepExecution();
+            stepExecution.setReadCount((int) Math.min(stepExecution.getReadCount() + records, Integer.MAX_VALUE));
+            contribution.incrementWriteCount((int) Math.min(kept, Integer.MAX_VALUE));
+            contribution.incrementFilterCount((int) Math.min(records - kept, Integer.MAX_VALUE));
+            stepExecution.getExecutionContext().putLong(RECORDS, records);
+            stepExecution.getExecutionContext().putLong(KEPT, kept);
+            log.info("deduplicated {} : {} records, {} kept, {} key runs, {} offset runs", resource.getDescription(),
+                    records, kept, keyRuns.size(), offsetRuns.size());
+        } finally {
+            deleteDirectory(directory);
+        }
+
+        return RepeatStatus.FINISHED;
+    }
+
+    // 입력을 읽어 (이름, 위치)를 run 파일로 내보내고 비교한 줄 수를 리턴한다.
+    private long spillKeys(RunWriter keys) throws IOException {
+        PersonRecordParser parser = new PersonRecordParser();
+        long records = 0;
+        try (LineScanner scanner = new LineScanner(resource.getInputStream())) {
+            ByteBuffer buffer = ByteBuffer.wrap(scanner.line);
+            for (long lineNumber = 0; scanner.next(); lineNumber++) {
+                if (lineNumber < linesToSkip || isComment(scanner)) {
+                    continue;
+                }
+                if (buffer.array() != scanner.line) {
+                    buffer = ByteBuffer.wrap(scanner.line);
+                }
+                Person person = parser.parse(buffer, 0, scanner.contentLength);
+                byte[] key = (person.getName() != null) ? person.getName().getBytes(StandardCharsets.UTF_8) : NO_KEY;
+                keys.add(new Entry(key, scanner.offset));
+                records++;
+            }
+        }
+        return records;
+    }
+
+    // 정렬된 위치에 해당하는 줄과 비교하지 않은 줄만 쓴다.
+    private void copyLines(RunMerger offsets, Path directory) throws IOException {
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        Path temp = directory.resolve("output.tmp");
+        try (LineScanner scanner = new LineScanner(resource.getInputStream());
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE)) {
+            Entry next = offsets.next();
+            for (long lineNumber = 0; scanner.next(); lineNumber++) {
+                if (lineNumber < linesToSkip || isComment(scanner)) {
+                    out.write(scanner.line, 0, scanner.length);
+                } else if (next != null && next.offset == scanner.offset) {
+                    out.write(scanner.line, 0, scanner.length);
+                    next = offsets.next();
+                }
+            }
+        }
+        Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // run이 fanIn 개 이하가 될 때까지 fanIn 개씩 합친다.
+    private List<Path> mergeDown(Path directory, List<Path> runs) throws IOException {
+        int pass = 0;
+        while (runs.size() > fanIn) {
+            List<Path> merged = new ArrayList<>();
+            for (int from = 0; from < runs.size(); from += fanIn) {
+                List<Path> group = runs.subList(from, Math.min(from + fanIn, runs.size()));
+                Path target = directory.resolve("merge-" + pass + "-" + merged.size() + ".run");
+                try (RunMerger merger = new RunMerger(group);
+                     DataOutputStream out = openRun(target)) {
+                    for (Entry entry = merger.next(); entry != null; entry = merger.next()) {
+                        entry.writeTo(out);
+                    }
+                }
+                for (Path run : group) {
+                    Files.delete(run);
+                }
+                merged.add(target);
+            }
+            runs = merged;
+            pass++;
+        }
+        return runs;
+    }
+
+    private boolean isComment(LineScanner scanner) {
+        for (byte[] comment : comments) {
+            if (scanner.contentLength >= comment.length
+                    && Arrays.equals(scanner.line, 0, comment.length, comment, 0, comment.length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static DataOutputStream openRun(Path path) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE));
+    }
+
+    private static void deleteDirectory(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            log.warn("Unable to delete dedup work directory {}", directory, e);
+        }
+    }
+
+    private static final class Entry {
+        private final byte[] key;
+        private final long offset;
+
+        private Entry(byte[] key, long offset) {
+            this.key = key;
+            this.offset = offset;
+        }
+
+        private void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(key.length);
+            out.write(key);
+            out.writeLong(offset);
+        }
+
+        // 파일 끝이면 null
+        private static Entry readFrom(DataInputStream in) throws IOException {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+            byte[] key = (length == 0) ? NO_KEY : new byte[length];
+            in.readFully(key);
+            return new Entry(key, in.readLong());
+        }
+    }
+
+    // runSize 개씩 모아서 정렬한 뒤 run 파일로 내보낸다.
+    private final class RunWriter {
+        private final Path directory;
+        private final String prefix;
+        private final List<Entry> entries = new ArrayList<>();
+        private final List<Path> runs = new ArrayList<>();
+
+        private RunWriter(Path directory, String prefix) {
+            this.directory = directory;
+            this.prefix = prefix;
+        }
+
+        private void add(Entry entry) throws IOException {
+            entries.add(entry);
+            if (entries.size() >= runSize) {
+                spill();
+            }
+        }
+
+        private List<Path> finish() throws IOException {
+            if (!entries.isEmpty()) {
+                spill();
+            }
+            return runs;
+        }
+
+        private void spill() throws IOException {
+            entries.sort(ORDER);
+            Path run = directory.resolve(prefix + "-" + runs.size() + ".run");
+            try (DataOutputStream out = openRun(run)) {
+                for (Entry entry : entries) {
+                    entry.writeTo(out);
+                }
+            }
+            entries.clear();
+            runs.add(run);
+        }
+    }
+
+    // 정렬된 run 파일들을 하나의 정렬된 흐름으로 합친다.
+    private static final class RunMerger implements AutoCloseable {
+        private final List<DataInputStream> inputs = new ArrayList<>();
+        private final PriorityQueue<Head> heads = new PriorityQueue<>((a, b) -> ORDER.compare(a.entry, b.entry));
+
+        private RunMerger(List<Path> runs) throws IOException {
+            try {
+                for (Path run : runs) {
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), BUFFER_SIZE));
+                    inputs.add(in);
+                    Entry entry = Entry.readFrom(in);
+                    if (entry != null) {
+                        heads.add(new Head(entry, in));
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        // 더 없으면 null
+        private Entry next() throws IOException {
+            Head head = heads.poll();
+            if (head == null) {
+                return null;
+            }
+            Entry entry = head.entry;
+            Entry following = Entry.readFrom(head.in);
+            if (following != null) {
+                heads.add(new Head(following, head.in));
+            }
+            return entry;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (DataInputStream in : inputs) {
+                in.close();
+            }
+        }
+    }
+
+    private static final class Head {
+        private final Entry entry;
+        private final DataInputStream in;
+
+        private Head(Entry entry, DataInputStream in) {
+            this.entry = entry;
+            this.in = in;
+        }
+    }
+
+    // 줄 단위로 읽으면서 줄의 시작 위치(바이트)를 알려준다.
+    // line[0, length)는 줄바꿈까지 포함한 줄, line[0, contentLength)는 줄바꿈(\n, \r\n)을 뺀 내용이다.
+    private static final class LineScanner implements AutoCloseable {
+        private final InputStream in;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position;
+        private int limit;
+        private long bufferOffset;
+
+        private byte[] line = new byte[256];
+        private int length;
+        private int contentLength;
+        private long offset;
+
+        private LineScanner(InputStream in) {
+            this.in = in;
+        }
+
+        private boolean next() throws IOException {
+            offset = bufferOffset + position;
+            length = 0;
+            while (true) {
+                if (position == limit) {
+                    bufferOffset += limit;
+                    position = 0;
+                    limit = Math.max(in.read(buffer), 0);
+                    if (limit == 0) {
+                        contentLength = length;
+                        return length > 0;
+                    }
+                }
+                int end = position;
+                while (end < limit && buffer[end] != '\n') {
+                    end++;
+                }
+                boolean found = end < limit;
+                int count = (found ? end + 1 : end) - position;
+                if (line.length < length + count) {
+                    line = Arrays.copyOf(line, Math.max(length + count, line.length * 2));
+                }
+                System.arraycopy(buffer, position, line, length, count);
+                length += count;
+                position += count;
+                if (found) {
+                    contentLength = length - 1;
+                    if (contentLength > 0 && line[contentLength - 1] == '\r') {
+                        contentLength--;
+                    }
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
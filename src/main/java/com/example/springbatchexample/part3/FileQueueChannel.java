@@ -0,0 +1,149 @@
+package com.example.springbatchexample.part3;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.PollableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 디렉토리를 큐로 쓰는 PollableChannel. 브로커나 네트워크 없이 같은 머신의 여러 JVM이 메시지를 주고받는다.
+// 메시지 payload만 Java 직렬화로 파일 하나에 담고, header는 전달하지 않는다.
+// 보낼 때는 임시 파일에 다 쓴 뒤 이름을 바꾸므로 받는 쪽은 완성된 파일만 본다.
+// 받을 때는 파일을 claimed 디렉토리로 atomic move 하는 쪽이 가져가므로 여러 consumer가 같은 디렉토리를 읽어도 한번만 전달된다.
+// 가져간 뒤 처리 전에 JVM이 죽으면 그 메시지는 사라진다. (manager는 응답을 기다리다 실패하고, 재시작하면 다시 보낸다.)
+@Slf4j
+public class FileQueueChannel implements PollableChannel {
+    private static final String SUFFIX = ".msg";
+    private static final long POLL_INTERVAL_MILLIS = 20;
+
+    private final Path directory;
+    private final Path claimed;
+    private final AtomicLong sequence = new AtomicLong();
+
+    public FileQueueChannel(Path directory) {
+        this.directory = directory;
+        this.claimed = directory.resolve(".claimed");
+        try {
+            Files.createDirectories(claimed);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create queue directory " + directory, e);
+        }
+    }
+
+    @Override
+    public boolean send(Message<?> message, long timeout) {
+        Object payload = message.getPayload();
+        if (!(payload instanceof Serializable)) {
+            throw new MessageDeliveryException(message, "Payload is not serializable : " + payload.getClass().getName());
+        }
+
+        // 파일 이름 순서가 보낸 순서가 되도록 시각과 순번을 앞에 둔다.
+        String name = String.format("%019d-%010d-%s", System.currentTimeMillis(), sequence.incrementAndGet(), UUID.randomUUID());
+        Path temporary = directory.resolve("." + name);
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporary));
+                 ObjectOutputStream objectOut = new ObjectOutputStream(out)) {
+                objectOut.writeObject(payload);
+            }
+            Files.move(temporary, directory.resolve(name + SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            throw new MessageDeliveryException(message, "Unable to write message to " + directory, e);
+        }
+    }
+
+    @Override
+    public Message<?> receive() {
+        return receive(-1);
+    }
+
+    // timeout이 음수이면 메시지가 올 때까지 기다린다.
+    @Override
+    public Message<?> receive(long timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (true) {
+            for (Path file : pending()) {
+                Path target = claimed.resolve(file.getFileName());
+                try {
+                    Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (NoSuchFileException e) {
+                    // 다른 consumer가 먼저 가져갔다.
+                    continue;
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Unable to claim message " + file, e);
+                }
+                return read(target);
+            }
+
+            if (timeout >= 0 && System.currentTimeMillis() >= deadline) {
+                return null;
+            }
+            try {
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
+    // 이전 실행에서 남은 메시지를 버린다.
+    public void purge() {
+        List<Path> files = pending();
+        for (Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to delete message " + file, e);
+            }
+        }
+        if (!files.isEmpty()) {
+            log.info("purged {} stale messages from {}", files.size(), directory);
+        }
+    }
+
+    private List<Path> pending() {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to list messages in " + directory, e);
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private Message<?> read(Path file) {
+        try {
+            Object payload;
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(file));
+                 ObjectInputStream objectIn = new ObjectInputStream(in)) {
+                payload = objectIn.readObject();
+            }
+            Files.delete(file);
+            return MessageBuilder.withPayload(payload).build();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("Unable to read message " + file, e);
+        }
+    }
+}
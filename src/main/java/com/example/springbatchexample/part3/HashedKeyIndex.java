@@ -0,0 +1,155 @@
+package com.example.springbatchexample.part3;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// long 해시만 저장하는 open addressing 집합
+// key 대신 해시를 비교하므로 해시가 충돌한 다른 key는 이미 있는 것으로 본다. (DuplicateKeyIndex 참고)
+// 생성 시점에 배열 크기가 정해지므로 입력이 커져도 메모리 사용량이 늘지 않는다.
+// 슬롯 등록은 CAS로 처리하므로 lock 없이 여러 스레드에서 사용할 수 있다.
+// remove()한 슬롯은 해시 값을 그대로 두고 지움 비트(tombstone)만 켠다. 같은 key가 다시 등록되면 그 슬롯을 재사용한다.
+//   한 슬롯에는 처음 등록한 해시만 들어가므로 같은 해시가 두 슬롯에 들어가는 경합이 생기지 않는다.
+// maxEntries는 살아 있는 key 수만 센다. tombstone은 load factor 여유분 안에서만 허용하고, 그것도 넘으면 가득 찬 것으로 본다.
+public class HashedKeyIndex implements DuplicateKeyIndex {
+    private final AtomicLongArray slots;
+    // 슬롯 별 tombstone 비트
+    private final AtomicLongArray removed;
+    private final int mask;
+    private final int maxEntries;
+    // 빈 슬롯이 남아 있어야 탐색이 끝나므로 tombstone을 포함해서 사용할 수 있는 슬롯 수 (load factor 0.875)
+    private final int maxUsed;
+    private final AtomicInteger size = new AtomicInteger();
+    // 한번이라도 사용한 슬롯 수 (tombstone 포함)
+    private final AtomicInteger used = new AtomicInteger();
+
+    public HashedKeyIndex(int maxEntries) {
+        // load factor 0.75 이하를 유지하도록 2의 거듭제곱 크기로 잡는다.
+        int capacity = Integer.highestOneBit(Math.max(16, (int) Math.min(1 << 30, maxEntries * 4L / 3)) * 2 - 1);
+        this.slots = new AtomicLongArray(capacity);
+        this.removed = new AtomicLongArray((capacity + 63) / 64);
+        this.mask = capacity - 1;
+        this.maxEntries = maxEntries;
+        this.maxUsed = Math.max(maxEntries, capacity - capacity / 8);
+    }
+
+    @Override
+    public boolean add(long hash, String key) {
+        return insert(hash);
+    }
+
+    @Override
+    public void restore(long hash) {
+        insert(hash);
+    }
+
+    // 커밋되지 않은 청크에서 등록한 key를 되돌린다.
+    @Override
+    public boolean remove(long hash) {
+        int index = find(hash);
+        if (index < 0 || !setRemoved(index, true)) {
+            return false;
+        }
+        size.decrementAndGet();
+        return true;
+    }
+
+    public boolean contains(long hash) {
+        int index = find(hash);
+        return index >= 0 && !isRemoved(index);
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public boolean isFull() {
+        return size.get() >= maxEntries || used.get() >= maxUsed;
+    }
+
+    // 슬롯 배열을 비운다. (SpillableKeyIndex가 디스크로 내보낸 뒤 사용)
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, 0);
+        }
+        for (int i = 0; i < removed.length(); i++) {
+            removed.set(i, 0);
+        }
+        size.set(0);
+        used.set(0);
+    }
+
+    long[] toArray() {
+        long[] values = new long[size.get()];
+        int count = 0;
+        for (int i = 0; i < slots.length() && count < values.length; i++) {
+            long value = slots.get(i);
+            if (value != 0 && !isRemoved(i)) {
+                values[count++] = value;
+            }
+        }
+        return values;
+    }
+
+    private boolean insert(long hash) {
+        int index = (int) hash & mask;
+        while (true) {
+            long current = slots.get(index);
+            if (current == hash) {
+                // 지운 key가 다시 오면 같은 슬롯을 되살린다. 다른 스레드가 먼저 되살렸으면 중복이다.
+                if (isRemoved(index) && setRemoved(index, false)) {
+                    size.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+            if (current == 0) {
+                if (size.get() >= maxEntries || used.get() >= maxUsed) {
+                    throw new IllegalStateException("Duplicate key index is full (maxEntries=" + maxEntries + "). "
+                            + "Increase the capacity or use the spill index.");
+                }
+                if (slots.compareAndSet(index, 0, hash)) {
+                    used.incrementAndGet();
+                    size.incrementAndGet();
+                    return true;
+                }
+                // 다른 스레드가 먼저 채웠으면 같은 슬롯을 다시 확인한다.
+                continue;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    // 해시가 들어 있는 슬롯 (tombstone 포함). 없으면 -1
+    private int find(long hash) {
+        int index = (int) hash & mask;
+        while (true) {
+            long current = slots.get(index);
+            if (current == hash) {
+                return index;
+            }
+            if (current == 0) {
+                return -1;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private boolean isRemoved(int index) {
+        return (removed.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    // 비트를 바꿨으면 true, 이미 그 값이면 false
+    private boolean setRemoved(int index, boolean value) {
+        int word = index >>> 6;
+        long bit = 1L << index;
+        while (true) {
+            long current = removed.get(word);
+            if (((current & bit) != 0) == value) {
+                return false;
+            }
+            if (removed.compareAndSet(word, current, value ? current | bit : current & ~bit)) {
+                return true;
+            }
+        }
+    }
+}
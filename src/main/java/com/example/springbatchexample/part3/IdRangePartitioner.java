@@ -0,0 +1,73 @@
+package com.example.springbatchexample.part3;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// 테이블을 key 컬럼의 구간 (minId, maxId] 으로 나눈다.
+// 구간의 경계는 min/max를 균등하게 나누지 않고 행 수 기준 분위수(quantile)로 잡으므로 key에 빈 구간이 많아도 파티션 크기가 고르다.
+// 분위수는 key 인덱스를 따라 offset 위치의 key 하나만 읽어서 구한다.
+@Slf4j
+public class IdRangePartitioner implements Partitioner {
+    public static final String MIN_ID = "minId";
+    public static final String MAX_ID = "maxId";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String table;
+    private final String column;
+
+    public IdRangePartitioner(DataSource dataSource, String table, String column) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.table = table;
+        this.column = column;
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        long count = jdbcTemplate.queryForObject("select count(*) from " + table, Long.class);
+        Map<String, ExecutionContext> partitions = new LinkedHashMap<>();
+        if (count == 0) {
+            partitions.put("partition0", range(0, 0));
+            return partitions;
+        }
+
+        long previous = keyAt(0) - 1;
+        long max = keyAt(count - 1);
+        for (int i = 1; i <= gridSize; i++) {
+            long rows = count * i / gridSize;
+            // 행이 gridSize보다 적으면 앞쪽 구간은 행이 없거나 같은 경계가 반복되므로 빈 구간은 만들지 않는다.
+            if (rows == 0) {
+                continue;
+            }
+            long upper = (i == gridSize) ? max : keyAt(rows - 1);
+            if (upper <= previous) {
+                continue;
+            }
+            String name = "partition" + partitions.size();
+            partitions.put(name, range(previous, upper));
+            log.info("{} : ({}, {}]", name, previous, upper);
+            previous = upper;
+        }
+
+        return partitions;
+    }
+
+    private long keyAt(long offset) {
+        List<Long> keys = jdbcTemplate.queryForList("select " + column + " from " + table
+                + " order by " + column + " limit 1 offset ?", Long.class, offset);
+        return keys.get(0);
+    }
+
+    private static ExecutionContext range(long minId, long maxId) {
+        ExecutionContext context = new ExecutionContext();
+        context.putLong(MIN_ID, minId);
+        context.putLong(MAX_ID, maxId);
+        return context;
+    }
+}
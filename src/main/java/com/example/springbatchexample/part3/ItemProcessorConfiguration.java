@@ -5,16 +5,21 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.integration.async.AsyncItemProcessor;
+import org.springframework.batch.integration.async.AsyncItemWriter;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Future;
 
 @Configuration
 @Slf4j
@@ -41,17 +46,51 @@ public class ItemProcessorConfiguration {
                 .build();
     }
 
+    // itemProcessor를 별도 스레드(Java 21 이상은 virtual thread)에서 실행하고, writer는 입력 순서대로 결과를 모아 쓴다.
+    @Bean
+    public Job asyncItemProcessorJob() throws Exception {
+        return this.jobBuilderFactory.get("asyncItemProcessorJob")
+                .incrementer(new RunIdIncrementer())
+                .start(this.asyncItemProcessorStep(null))
+                .build();
+    }
+
+    @Bean
+    @JobScope
+    public Step asyncItemProcessorStep(@Value("#{jobParameters[asyncConcurrency]}") Integer asyncConcurrency) throws Exception {
+        return this.stepBuilderFactory.get("asyncItemProcessorStep")
+                .<Person, Future<Person>>chunk(10)
+                .reader(itemReader())
+                .processor(asyncItemProcessor((asyncConcurrency != null) ? asyncConcurrency : 4))
+                .writer(asyncItemWriter())
+                .build();
+    }
+
+    private AsyncItemProcessor<Person, Person> asyncItemProcessor(int concurrency) throws Exception {
+        AsyncItemProcessor<Person, Person> itemProcessor = new AsyncItemProcessor<>();
+        itemProcessor.setDelegate(itemProcessor());
+        itemProcessor.setTaskExecutor(ProcessingTaskExecutors.create("async-processor-", concurrency));
+        itemProcessor.afterPropertiesSet();
+
+        return itemProcessor;
+    }
+
+    // processor가 null을 리턴한 item은 AsyncItemWriter에서 걸러진다.
+    private AsyncItemWriter<Person> asyncItemWriter() throws Exception {
+        AsyncItemWriter<Person> itemWriter = new AsyncItemWriter<>();
+        itemWriter.setDelegate(itemWriter());
+        itemWriter.afterPropertiesSet();
+
+        return itemWriter;
+    }
+
     private ItemWriter<Person> itemWriter() {
         return items -> items.forEach(x -> log.info("PERSON ID : {}", x.getId()));
     }
 
+    // reader로 조건을 내려보낼 수 없는 경우이므로 processor에서 거른다.
     private ItemProcessor<Person, Person> itemProcessor() {
-        return item -> {
-            if(item.getId() % 2 == 0) {
-                return item;
-            }
-            return null;
-        };
+        return PersonPredicate.idModulo(2, 0).asProcessor();
     }
 
     private ItemReader<Person> itemReader() {
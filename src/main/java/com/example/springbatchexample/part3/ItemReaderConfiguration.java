@@ -1,48 +1,77 @@
 package com.example.springbatchexample.part3;
 
+import com.example.springbatchexample.support.DagFlow;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.job.flow.Flow;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.step.builder.SimpleStepBuilder;
+import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.database.HibernateCursorItemReader;
 import org.springframework.batch.item.database.JdbcCursorItemReader;
+import org.springframework.batch.item.database.JdbcPagingItemReader;
 import org.springframework.batch.item.database.JpaCursorItemReader;
+import org.springframework.batch.item.database.Order;
+import org.springframework.batch.item.database.builder.HibernateCursorItemReaderBuilder;
 import org.springframework.batch.item.database.builder.JdbcCursorItemReaderBuilder;
+import org.springframework.batch.item.database.builder.JdbcPagingItemReaderBuilder;
 import org.springframework.batch.item.database.builder.JpaCursorItemReaderBuilder;
-import org.springframework.batch.item.file.FlatFileItemReader;
-import org.springframework.batch.item.file.builder.FlatFileItemReaderBuilder;
-import org.springframework.batch.item.file.mapping.DefaultLineMapper;
-import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.jdbc.core.RowMapper;
 
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Configuration
 @Slf4j
 @RequiredArgsConstructor
 public class ItemReaderConfiguration {
+    private static final int JDBC_PAGE_SIZE = 1000;
+    private static final PersonPredicate EVEN_ID = PersonPredicate.idModulo(2, 0);
+
     private final JobBuilderFactory jobBuilderFactory;
     private final StepBuilderFactory stepBuilderFactory;
     private final DataSource dataSource;
     private final EntityManagerFactory entityManagerFactory;
+    private final StringDictionary personDictionary;
 
+    // 네 step은 서로 의존하지 않으므로 동시에 실행한다.
+    // jdbcStep, jpaStep은 cursor reader가 청크 트랜잭션과 별도의 커넥션을 잡는다.
     @Bean
     public Job itemReaderJob() throws Exception {
         return this.jobBuilderFactory.get("itemReaderJob")
                 .incrementer(new RunIdIncrementer())
-                .start(this.customItemReaderStep())
-                .next(this.csvFileStep())
-                .next(this.jdbcStep())
-                .next(this.jpaStep())
+                .start(this.itemReaderFlow())
+                .end()
+                .build();
+    }
+
+    private Flow itemReaderFlow() throws Exception {
+        return DagFlow.builder("itemReaderFlow")
+                .maxConcurrency(4)
+                .dataSource(dataSource)
+                .step(this.customItemReaderStep())
+                .step(this.csvFileStep())
+                .step(this.jdbcStep()).connections(2)
+                .step(this.jpaStep(null, null)).connections(2)
                 .build();
     }
 
@@ -64,24 +93,203 @@ public class ItemReaderConfiguration {
                 .build();
     }
 
+    // dictionarySize를 주면 name, age, address를 personDictionary로 canonicalize 한다.
     @Bean
     public Step jdbcStep() throws Exception {
         return stepBuilderFactory.get("jdbcStep")
                 .<Person, Person>chunk(10)
                 .reader(jdbcCursorItemReader())
                 .writer(itemWriter())
+                .listener(personDictionary)
                 .build();
     }
 
+    // jpaReadMode
+    //   managed(기본값) : Person 엔티티를 영속성 컨텍스트에 올려서 읽는다.
+    //   stateless : StatelessSession으로 생성자 projection(select new ...)을 읽는다.
+    //               영속성 컨텍스트와 dirty checking 스냅샷이 없으므로 읽은 행 수와 관계없이 메모리 사용량이 일정하다.
+    // fetchSize : stateless 모드에서 드라이버가 한번에 가져오는 행 수
     @Bean
-    public Step jpaStep() throws Exception {
+    @JobScope
+    public Step jpaStep(@Value("#{jobParameters[jpaReadMode] ?: 'managed'}") String readMode,
+                        @Value("#{jobParameters[fetchSize] ?: 1000}") Integer fetchSize) throws Exception {
+        ItemReader<Person> itemReader;
+        switch (readMode) {
+            case "managed":
+                itemReader = jpaCursorItemReader();
+                break;
+            case "stateless":
+                itemReader = statelessPersonItemReader(fetchSize);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown jpaReadMode : " + readMode);
+        }
+
         return stepBuilderFactory.get("jpaStep")
                 .<Person, Person>chunk(10)
-                .reader(jpaCursorItemReader())
+                .reader(itemReader)
                 .writer(itemWriter())
                 .build();
     }
 
+    // 짝수 id만 처리하는 조건을 reader로 내려보낸다.
+    //   csv  : 줄의 토큰에서 id만 읽어 판단하고, 맞지 않는 줄은 Person을 만들지 않는다.
+    //   jdbc : where 절로 DB에서 거른다.
+    //   jpa  : JPQL where 절로 DB에서 거르므로 엔티티를 영속성 컨텍스트에 올리지 않는다.
+    // pushdown=false 이면 같은 조건을 processor에서 걸러서 비교할 수 있다. (filterCount로 집계된다)
+    // reader에서 걸러낸 행 수는 SourceFilterListener가 로그와 step ExecutionContext에 남긴다.
+    @Bean
+    public Job personFilterJob() throws Exception {
+        return this.jobBuilderFactory.get("personFilterJob")
+                .incrementer(new RunIdIncrementer())
+                .start(this.filteredCsvStep(null))
+                .next(this.filteredJdbcStep(null))
+                .next(this.filteredJpaStep(null))
+                .build();
+    }
+
+    @Bean
+    @JobScope
+    public Step filteredCsvStep(@Value("#{jobParameters[pushdown] ?: 'true'}") String pushdown) throws Exception {
+        MappedPersonItemReader itemReader = csvFileItemReader();
+        if (Boolean.parseBoolean(pushdown)) {
+            itemReader.setFilter(EVEN_ID);
+        }
+
+        return filteredStep("filteredCsvStep", itemReader, Boolean.parseBoolean(pushdown), SourceFilterListener.of(itemReader));
+    }
+
+    @Bean
+    @JobScope
+    public Step filteredJdbcStep(@Value("#{jobParameters[pushdown] ?: 'true'}") String pushdown) throws Exception {
+        if (!Boolean.parseBoolean(pushdown)) {
+            return filteredStep("filteredJdbcStep", jdbcCursorItemReader(), false, null);
+        }
+
+        JdbcCursorItemReader<Person> itemReader = new JdbcCursorItemReaderBuilder<Person>()
+                .name("filteredJdbcCursorItemReader")
+                .dataSource(dataSource)
+                .sql("select id, name, age, address from person where " + EVEN_ID.sql())
+                .queryArguments(EVEN_ID.sqlParameters())
+                .rowMapper(((rs, rowNum) -> new Person(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4))))
+                .build();
+        itemReader.afterPropertiesSet();
+
+        return filteredStep("filteredJdbcStep", itemReader, true, SourceFilterListener.of(dataSource, "person", EVEN_ID));
+    }
+
+    @Bean
+    @JobScope
+    public Step filteredJpaStep(@Value("#{jobParameters[pushdown] ?: 'true'}") String pushdown) throws Exception {
+        if (!Boolean.parseBoolean(pushdown)) {
+            return filteredStep("filteredJpaStep", jpaCursorItemReader(), false, null);
+        }
+
+        Map<String, Object> parameters = new HashMap<>();
+        JpaCursorItemReader<Person> itemReader = new JpaCursorItemReaderBuilder<Person>()
+                .name("filteredJpaCursorItemReader")
+                .entityManagerFactory(entityManagerFactory)
+                .queryString("select p from Person p where " + EVEN_ID.jpql("p", parameters))
+                .parameterValues(parameters)
+                .build();
+        itemReader.afterPropertiesSet();
+
+        return filteredStep("filteredJpaStep", itemReader, true, SourceFilterListener.of(dataSource, "person", EVEN_ID));
+    }
+
+    private Step filteredStep(String name, ItemReader<Person> itemReader, boolean pushdown,
+                              SourceFilterListener sourceFilterListener) {
+        SimpleStepBuilder<Person, Person> builder = stepBuilderFactory.get(name)
+                .<Person, Person>chunk(10)
+                .reader(itemReader)
+                .writer(itemWriter());
+        if (pushdown) {
+            builder.listener(sourceFilterListener);
+        } else {
+            builder.processor(EVEN_ID.asProcessor());
+        }
+
+        return builder.build();
+    }
+
+    // person 테이블을 id 분위수 구간으로 나누어 gridSize 개의 파티션이 각자의 커넥션으로 병렬로 읽는다.
+    // 파티션 안에서는 id 순서로 pageSize 개씩 "id > 마지막 id" 조건으로 다음 페이지를 읽는다. (keyset paging)
+    // 마지막으로 커밋된 페이지의 id가 ExecutionContext에 남으므로 재시작하면 처음부터 다시 읽지 않는다.
+    @Bean
+    public Job jdbcPartitionReaderJob() throws Exception {
+        return this.jobBuilderFactory.get("jdbcPartitionReaderJob")
+                .incrementer(new RunIdIncrementer())
+                .start(this.jdbcPartitionStep(null))
+                .build();
+    }
+
+    @Bean
+    @JobScope
+    public Step jdbcPartitionStep(@Value("#{jobParameters[gridSize]}") Integer gridSize) throws Exception {
+        int partitionCount = (gridSize != null) ? gridSize : Runtime.getRuntime().availableProcessors();
+        SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("jdbc-partition-");
+        taskExecutor.setConcurrencyLimit(partitionCount);
+
+        return this.stepBuilderFactory.get("jdbcPartitionStep")
+                .partitioner("jdbcWorkerStep", new IdRangePartitioner(dataSource, "person", "id"))
+                .step(jdbcWorkerStep())
+                .gridSize(partitionCount)
+                .taskExecutor(taskExecutor)
+                .build();
+    }
+
+    // 커밋 단위를 페이지 크기에 맞춰 재시작 시 페이지 중간부터 읽지 않게 한다.
+    private Step jdbcWorkerStep() throws Exception {
+        return this.stepBuilderFactory.get("jdbcWorkerStep")
+                .<Person, Person>chunk(JDBC_PAGE_SIZE)
+                .reader(jdbcPagingItemReader(null, null, null))
+                .writer(itemWriter())
+                .build();
+    }
+
+    // fetchSize : 드라이버가 한번에 가져오는 행 수. 기본값은 페이지 크기와 같다.
+    @Bean
+    @StepScope
+    public JdbcPagingItemReader<Person> jdbcPagingItemReader(@Value("#{stepExecutionContext[minId]}") Long minId,
+                                                             @Value("#{stepExecutionContext[maxId]}") Long maxId,
+                                                             @Value("#{jobParameters[fetchSize]}") Integer fetchSize) throws Exception {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put(IdRangePartitioner.MIN_ID, minId);
+        parameters.put(IdRangePartitioner.MAX_ID, maxId);
+
+        JdbcPagingItemReader<Person> jdbcPagingItemReader = new JdbcPagingItemReaderBuilder<Person>()
+                .name("jdbcPagingItemReader")
+                .dataSource(dataSource)
+                .selectClause("select id, name, age, address")
+                .fromClause("from person")
+                .whereClause("where id > :minId and id <= :maxId")
+                .sortKeys(Collections.singletonMap("id", Order.ASCENDING))
+                .parameterValues(parameters)
+                .pageSize(JDBC_PAGE_SIZE)
+                .fetchSize((fetchSize != null) ? fetchSize : JDBC_PAGE_SIZE)
+                .rowMapper(((rs, rowNum) -> new Person(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4))))
+                .build();
+
+        jdbcPagingItemReader.afterPropertiesSet();
+
+        return jdbcPagingItemReader;
+    }
+
+    // 생성자 projection으로 만든 Person은 엔티티로 관리되지 않는다.
+    // 다른 DTO로 읽으려면 select new 절의 클래스만 바꾸면 된다.
+    private HibernateCursorItemReader<Person> statelessPersonItemReader(int fetchSize) throws Exception {
+        HibernateCursorItemReader<Person> hibernateCursorItemReader = new HibernateCursorItemReaderBuilder<Person>()
+                .name("statelessPersonItemReader")
+                .sessionFactory(entityManagerFactory.unwrap(SessionFactory.class))
+                .useStatelessSession(true)
+                .queryString("select new " + Person.class.getName() + "(p.id, p.name, p.age, p.address) from Person p")
+                .fetchSize(fetchSize)
+                .build();
+        hibernateCursorItemReader.afterPropertiesSet();
+
+        return hibernateCursorItemReader;
+    }
+
     private JpaCursorItemReader<Person> jpaCursorItemReader() throws Exception {
         JpaCursorItemReader<Person> jpaCursorItemReader = new JpaCursorItemReaderBuilder<Person>()
                 .name("jpaCursorItemReader")
@@ -94,12 +302,20 @@ public class ItemReaderConfiguration {
     }
 
 
-    private JdbcCursorItemReader<Person> jdbcCursorItemReader() throws Exception {
+    // 행마다 step scope 프록시를 거치지 않도록 step마다 사전을 한번 꺼내 둔다.
+    @Bean
+    @StepScope
+    public JdbcCursorItemReader<Person> jdbcCursorItemReader() throws Exception {
+        StringDictionary dictionary = StringDictionary.resolve(personDictionary);
+        RowMapper<Person> rowMapper = (dictionary == null)
+                ? (rs, rowNum) -> new Person(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4))
+                : (rs, rowNum) -> new Person(rs.getInt(1), dictionary.canonicalize(rs.getString(2)),
+                        dictionary.canonicalize(rs.getString(3)), dictionary.canonicalize(rs.getString(4)));
         JdbcCursorItemReader<Person> jdbcCursorItemReader = new JdbcCursorItemReaderBuilder<Person>()
                 .name("jdbcCursorItemReader")
                 .dataSource(dataSource)
                 .sql("select id, name, age, address from person")
-                .rowMapper(((rs, rowNum) -> new Person(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4))))
+                .rowMapper(rowMapper)
                 .build();
 
         jdbcCursorItemReader.afterPropertiesSet();
@@ -108,31 +324,13 @@ public class ItemReaderConfiguration {
     }
 
 
-    private FlatFileItemReader<Person> csvFileItemReader() throws Exception {
-        DefaultLineMapper<Person> lineMapper = new DefaultLineMapper<>();
-        DelimitedLineTokenizer tokenizer = new DelimitedLineTokenizer();
-        tokenizer.setNames("id", "name", "age", "address");
-        lineMapper.setLineTokenizer(tokenizer);
-
-        lineMapper.setFieldSetMapper(fieldSet -> {
-            int id = fieldSet.readInt("id");
-            String name = fieldSet.readString("name");
-            String age = fieldSet.readString("age");
-            String address = fieldSet.readString("address");
-
-            return new Person(id, name, age, address);
-        });
-
-        FlatFileItemReader<Person> itemReader = new FlatFileItemReaderBuilder<Person>()
-                .name("csvFileItemReader")
-                .encoding("UTF-8")
-                .resource(new ClassPathResource("test.csv"))
-                //첫번째 라인은 필드명이므로 1줄은 스킵해라
-                .linesToSkip(1)
-                .lineMapper(lineMapper)
-                .build();
-        // itemReader에서 필수 항목이 정상적으로 설정되었는지 확인하는 메서드
-        itemReader.afterPropertiesSet();
+    private MappedPersonItemReader csvFileItemReader() throws Exception {
+        // DefaultLineMapper, DelimitedLineTokenizer, FieldSet을 거치지 않고 파일의 바이트에서 바로 Person을 만든다.
+        MappedPersonItemReader itemReader = new MappedPersonItemReader();
+        itemReader.setName("csvFileItemReader");
+        itemReader.setResource(new ClassPathResource("test.csv"));
+        //첫번째 라인은 필드명이므로 1줄은 스킵해라
+        itemReader.setLinesToSkip(1);
 
         return itemReader;
     }
@@ -1,31 +1,48 @@
 package com.example.springbatchexample.part3;
 
+import com.example.springbatchexample.support.DagFlow;
+import com.example.springbatchexample.support.PipelinedStepBuilder;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.SkipListener;
 import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.job.flow.Flow;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.listener.JobExecutionListenerSupport;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.core.step.skip.LimitCheckingItemSkipPolicy;
+import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
 import org.springframework.batch.item.database.BeanPropertyItemSqlParameterSourceProvider;
+import org.springframework.batch.item.database.JdbcCursorItemReader;
 import org.springframework.batch.item.database.JdbcBatchItemWriter;
 import org.springframework.batch.item.database.JpaItemWriter;
 import org.springframework.batch.item.database.builder.JdbcBatchItemWriterBuilder;
+import org.springframework.batch.item.database.builder.JdbcCursorItemReaderBuilder;
 import org.springframework.batch.item.database.builder.JpaItemWriterBuilder;
-import org.springframework.batch.item.file.FlatFileItemWriter;
-import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.dao.DataIntegrityViolationException;
 
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Configuration
 @Slf4j
@@ -36,13 +53,23 @@ public class ItemWriterConfiguration {
     private final DataSource dataSource;
     private final EntityManagerFactory entityManagerFactory;
 
+    // csv 파일과 person 테이블에 쓰는 step은 서로 의존하지 않으므로 동시에 실행한다.
     @Bean
     public Job itemWriterJob() throws Exception {
         return this.jobBuilderFactory.get("itemWriterJob")
                 .incrementer(new RunIdIncrementer())
-                .start(this.csvItemWriterStep())
-                //.next(this.jdbcBatchItemWriterStep())
-                .next(this.jpaItemWriterStep())
+                .start(this.itemWriterFlow())
+                .end()
+                .build();
+    }
+
+    private Flow itemWriterFlow() throws Exception {
+        return DagFlow.builder("itemWriterFlow")
+                .maxConcurrency(2)
+                .dataSource(dataSource)
+                .step(this.csvItemWriterStep())
+                //.step(this.jdbcBatchItemWriterStep())
+                .step(this.jpaItemWriterStep())
                 .build();
     }
 
@@ -73,6 +100,230 @@ public class ItemWriterConfiguration {
                 .build();
     }
 
+    // 같은 건수의 데이터를 JpaItemWriter, JdbcBatchItemWriter, PersonBulkInsertItemWriter로 각각 저장하고 처리 시간을 비교한다.
+    @Bean
+    public Job itemWriterComparisonJob() throws Exception {
+        return this.jobBuilderFactory.get("itemWriterComparisonJob")
+                .incrementer(new RunIdIncrementer())
+                .listener(writerComparisonListener())
+                .start(this.jpaComparisonStep(null, null))
+                .next(this.jdbcComparisonStep(null, null))
+                .next(this.bulkInsertComparisonStep(null, null))
+                .build();
+    }
+
+    @Bean
+    @JobScope
+    public Step jpaComparisonStep(@Value("#{jobParameters[itemCount] ?: 10000}") Integer itemCount,
+                                  @Value("#{jobParameters[chunkSize] ?: 1000}") Integer chunkSize) throws Exception {
+        return comparisonStep("jpaComparisonStep", itemCount, chunkSize, jpaBatchItemWriter());
+    }
+
+    @Bean
+    @JobScope
+    public Step jdbcComparisonStep(@Value("#{jobParameters[itemCount] ?: 10000}") Integer itemCount,
+                                   @Value("#{jobParameters[chunkSize] ?: 1000}") Integer chunkSize) {
+        return comparisonStep("jdbcComparisonStep", itemCount, chunkSize, jdbcBatchItemWriter());
+    }
+
+    @Bean
+    @JobScope
+    public Step bulkInsertComparisonStep(@Value("#{jobParameters[itemCount] ?: 10000}") Integer itemCount,
+                                         @Value("#{jobParameters[chunkSize] ?: 1000}") Integer chunkSize) {
+        return comparisonStep("bulkInsertComparisonStep", itemCount, chunkSize, bulkInsertItemWriter());
+    }
+
+    private Step comparisonStep(String name, int itemCount, int chunkSize, ItemWriter<Person> itemWriter) {
+        return stepBuilderFactory.get(name)
+                .<Person, Person>chunk(chunkSize)
+                .reader(new CustomItemReader<>(getItems(itemCount)))
+                .writer(itemWriter)
+                .build();
+    }
+
+    // person 테이블에서 itemCount 건을 읽어 다시 insert 한다. 읽기와 쓰기가 모두 DB I/O인 step이다.
+    // 같은 reader/writer를 일반 chunk step과 PipelinedStep으로 각각 실행하고 처리 시간을 비교한다.
+    // person 테이블에 itemCount 건 이상이 있어야 한다. (itemWriterComparisonJob 등으로 채운다)
+    @Bean
+    public Job pipelinedWriterJob() throws Exception {
+        return this.jobBuilderFactory.get("pipelinedWriterJob")
+                .incrementer(new RunIdIncrementer())
+                .listener(writerComparisonListener())
+                .start(this.sequentialCopyStep(null, null))
+                .next(this.pipelinedCopyStep(null, null, null))
+                .build();
+    }
+
+    @Bean
+    @JobScope
+    public Step sequentialCopyStep(@Value("#{jobParameters[itemCount] ?: 10000}") Integer itemCount,
+                                   @Value("#{jobParameters[chunkSize] ?: 1000}") Integer chunkSize) throws Exception {
+        return stepBuilderFactory.get("sequentialCopyStep")
+                .<Person, Person>chunk(chunkSize)
+                .reader(personCopyReader(itemCount, chunkSize))
+                .writer(jdbcBatchItemWriter())
+                .build();
+    }
+
+    // writer가 청크 N을 커밋하는 동안 reader가 청크 N+1을 읽는다. bufferedChunks는 미리 읽어 둘 청크 수
+    @Bean
+    @JobScope
+    public Step pipelinedCopyStep(@Value("#{jobParameters[itemCount] ?: 10000}") Integer itemCount,
+                                  @Value("#{jobParameters[chunkSize] ?: 1000}") Integer chunkSize,
+                                  @Value("#{jobParameters[bufferedChunks] ?: 2}") Integer bufferedChunks) throws Exception {
+        return new PipelinedStepBuilder<Person, Person>(stepBuilderFactory.get("pipelinedCopyStep"))
+                .chunk(chunkSize)
+                .bufferedChunks(bufferedChunks)
+                .reader(personCopyReader(itemCount, chunkSize))
+                .writer(jdbcBatchItemWriter())
+                .build();
+    }
+
+    private JdbcCursorItemReader<Person> personCopyReader(int itemCount, int fetchSize) throws Exception {
+        JdbcCursorItemReader<Person> itemReader = new JdbcCursorItemReaderBuilder<Person>()
+                .name("personCopyReader")
+                .dataSource(dataSource)
+                .sql("select id, name, age, address from person order by id")
+                .fetchSize(fetchSize)
+                .maxItemCount(itemCount)
+                .rowMapper(((rs, rowNum) -> new Person(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4))))
+                .build();
+        itemReader.afterPropertiesSet();
+
+        return itemReader;
+    }
+
+    // itemCount 건 중 badItems 건은 name이 컬럼 길이(255)를 넘어 insert가 실패한다.
+    // BisectingChunkProcessor가 실패한 청크를 반씩 나누어 쓰고 실패한 item만 건너뛴다.
+    @Bean
+    public Job bisectingWriterJob() throws Exception {
+        return this.jobBuilderFactory.get("bisectingWriterJob")
+                .incrementer(new RunIdIncrementer())
+                .start(this.bisectingWriterStep(null, null, null, null))
+                .build();
+    }
+
+    @Bean
+    @JobScope
+    public Step bisectingWriterStep(@Value("#{jobParameters[itemCount] ?: 1000}") Integer itemCount,
+                                    @Value("#{jobParameters[chunkSize] ?: 1000}") Integer chunkSize,
+                                    @Value("#{jobParameters[badItems] ?: 3}") Integer badItems,
+                                    @Value("#{jobParameters[skipLimit] ?: 10}") Integer skipLimit) {
+        List<Person> items = getItems(itemCount);
+        for (int i = 1; i <= badItems; i++) {
+            int index = (int) ((long) itemCount * i / (badItems + 1));
+            items.set(index, new Person("x".repeat(300), "test age", "bad item " + index));
+        }
+
+        LimitCheckingItemSkipPolicy skipPolicy = new LimitCheckingItemSkipPolicy(skipLimit,
+                Collections.singletonMap(DataIntegrityViolationException.class, true));
+        return new BisectingStepBuilder<Person, Person>(stepBuilderFactory.get("bisectingWriterStep").chunk(chunkSize))
+                .dataSource(dataSource)
+                .skipPolicy(skipPolicy)
+                .listener(new SkipListener<Person, Person>() {
+                    @Override
+                    public void onSkipInRead(Throwable t) {
+                    }
+
+                    @Override
+                    public void onSkipInWrite(Person item, Throwable t) {
+                        log.warn("skipped in write : {}", item.getAddress());
+                    }
+
+                    @Override
+                    public void onSkipInProcess(Person item, Throwable t) {
+                    }
+                })
+                .reader(new CustomItemReader<>(items))
+                .writer(jdbcBatchItemWriter())
+                .build();
+    }
+
+    // itemCount 건을 gridSize 개의 파티션으로 나누어 병렬로 쓰고, 끝나면 파티션 순서대로 output/segmented-output.csv 하나로 합친다.
+    @Bean
+    public Job segmentedWriterJob() throws Exception {
+        return this.jobBuilderFactory.get("segmentedWriterJob")
+                .incrementer(new RunIdIncrementer())
+                .start(this.segmentedWriterStep(null, null))
+                .build();
+    }
+
+    @Bean
+    @JobScope
+    public Step segmentedWriterStep(@Value("#{jobParameters[gridSize] ?: 4}") Integer gridSize,
+                                    @Value("#{jobParameters[itemCount] ?: 10000}") Integer itemCount) {
+        SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("segmented-writer-");
+        taskExecutor.setConcurrencyLimit(gridSize);
+
+        return stepBuilderFactory.get("segmentedWriterStep")
+                .partitioner("segmentedWorkerStep", indexRangePartitioner(itemCount))
+                .step(segmentedWorkerStep())
+                .gridSize(gridSize)
+                .taskExecutor(taskExecutor)
+                .listener(segmentedFileItemWriter().mergeListener())
+                .build();
+    }
+
+    private Step segmentedWorkerStep() {
+        return stepBuilderFactory.get("segmentedWorkerStep")
+                .<Person, Person>chunk(100)
+                .reader(indexRangeItemReader(null, null))
+                .writer(segmentedFileItemWriter())
+                .build();
+    }
+
+    // 파티션 별로 [fromIndex, toIndex) 구간의 item을 만든다.
+    @Bean
+    @StepScope
+    public CustomItemReader<Person> indexRangeItemReader(@Value("#{stepExecutionContext[fromIndex]}") Integer fromIndex,
+                                                        @Value("#{stepExecutionContext[toIndex]}") Integer toIndex) {
+        return new CustomItemReader<>(getItems(fromIndex, toIndex));
+    }
+
+    // worker step과 manager step이 같은 writer를 써야 하므로 bean으로 등록한다.
+    @Bean
+    public SegmentedFileItemWriter<Person> segmentedFileItemWriter() {
+        SegmentedFileItemWriter<Person> itemWriter = new SegmentedFileItemWriter<>();
+        itemWriter.setName("segmentedFileItemWriter");
+        itemWriter.setResource(new FileSystemResource("output/segmented-output.csv"));
+        itemWriter.setFieldExtractor(new CompiledFieldExtractor<>(Person.class, "id", "name", "age", "address"));
+        itemWriter.setDelimiter(",");
+        itemWriter.setHeaderCallback(writer -> writer.write("id,이름,나이,거주지"));
+        itemWriter.setFooterCallback(writer -> writer.write("---------------\n"));
+
+        return itemWriter;
+    }
+
+    private Partitioner indexRangePartitioner(int itemCount) {
+        return gridSize -> {
+            Map<String, ExecutionContext> partitions = new LinkedHashMap<>();
+            int rangeSize = (itemCount + gridSize - 1) / gridSize;
+            for (int i = 0; i < gridSize; i++) {
+                ExecutionContext context = new ExecutionContext();
+                context.putInt("fromIndex", Math.min(itemCount, i * rangeSize));
+                context.putInt("toIndex", Math.min(itemCount, (i + 1) * rangeSize));
+                partitions.put("partition" + i, context);
+            }
+            return partitions;
+        };
+    }
+
+    private JobExecutionListener writerComparisonListener() {
+        return new JobExecutionListenerSupport() {
+            @Override
+            public void afterJob(JobExecution jobExecution) {
+                for (StepExecution stepExecution : jobExecution.getStepExecutions()) {
+                    long millis = Math.max(1, stepExecution.getEndTime().getTime() - stepExecution.getStartTime().getTime());
+                    log.info("{} : {} items, {} ms, {} items/sec"
+                            , stepExecution.getStepName()
+                            , stepExecution.getWriteCount()
+                            , millis
+                            , stepExecution.getWriteCount() * 1000L / millis);
+                }
+            }
+        };
+    }
+
     private ItemWriter<Person> jpaBatchItemWriter() throws Exception {
         JpaItemWriter<Person> itemWriter = new JpaItemWriterBuilder<Person>()
                 .entityManagerFactory(entityManagerFactory)
@@ -97,35 +348,36 @@ public class ItemWriterConfiguration {
         return itemWriter;
     }
 
-    private ItemWriter<? super Person> csvFileItemWriter() throws Exception {
-        BeanWrapperFieldExtractor<Person> fieldExtractor = new BeanWrapperFieldExtractor<>();
-        fieldExtractor.setNames(new String[] {"id", "name", "age", "address"});
-        DelimitedLineAggregator<Person> lineAggregator = new DelimitedLineAggregator<>();
-        lineAggregator.setDelimiter(",");
-        lineAggregator.setFieldExtractor(fieldExtractor);
-
-        FlatFileItemWriter<Person> itemWriter = new FlatFileItemWriterBuilder<Person>()
-                .name("csvFileItemWriter")
-                .encoding("UTF-8")
-                .resource(new FileSystemResource("output/test-output.csv"))
-                .lineAggregator(lineAggregator)
-                .headerCallback(writer -> writer.write("id,이름,나이,거주지"))
-                .footerCallback(writer -> writer.write("---------------\n"))
-                .append(true)
-                .build();
+    // id를 블록 단위로 미리 할당하고, 100건씩 묶은 multi-row insert를 JDBC batch로 보낸다.
+    private ItemWriter<Person> bulkInsertItemWriter() {
+        return new PersonBulkInsertItemWriter(dataSource, 100);
+    }
 
-        itemWriter.afterPropertiesSet();
+    // getter를 미리 묶어 둔 CompiledFieldExtractor로 필드를 꺼내 UTF-8 바이트로 바로 쓴다.
+    private ItemWriter<? super Person> csvFileItemWriter() throws Exception {
+        Utf8DelimitedItemWriter<Person> itemWriter = new Utf8DelimitedItemWriter<>();
+        itemWriter.setName("csvFileItemWriter");
+        itemWriter.setResource(new FileSystemResource("output/test-output.csv"));
+        itemWriter.setFieldExtractor(new CompiledFieldExtractor<>(Person.class, "id", "name", "age", "address"));
+        itemWriter.setDelimiter(",");
+        itemWriter.setHeaderCallback(writer -> writer.write("id,이름,나이,거주지"));
+        itemWriter.setFooterCallback(writer -> writer.write("---------------\n"));
+        itemWriter.setAppend(true);
 
         return itemWriter;
     }
 
     private ItemReader<Person> itemReader() {
-        return new CustomItemReader<>(getItems());
+        return new CustomItemReader<>(getItems(100));
+    }
+
+    private List<Person> getItems(int count) {
+        return getItems(0, count);
     }
 
-    private List<Person> getItems() {
+    private List<Person> getItems(int from, int to) {
         List<Person> items = new ArrayList<>();
-        for (int i = 0; i < 100; i++) {
+        for (int i = from; i < to; i++) {
             items.add(new Person("test name " + i, "test age", "test address"));
         }
 
@@ -0,0 +1,114 @@
+package com.example.springbatchexample.part3;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.Resource;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// 입력 파일을 gridSize 개의 바이트 구간으로 나눈다.
+// 각 구간의 시작은 항상 줄의 시작에 맞춰지므로 하나의 줄이 두 파티션에 걸치지 않는다.
+@Slf4j
+public class LineRangePartitioner implements Partitioner {
+    public static final String START_OFFSET = "startOffset";
+    public static final String END_OFFSET = "endOffset";
+
+    private final Resource resource;
+    private final int linesToSkip;
+
+    public LineRangePartitioner(Resource resource, int linesToSkip) {
+        this.resource = resource;
+        this.linesToSkip = linesToSkip;
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        try {
+            long length = resource.contentLength();
+            long dataStart = skipHeader();
+
+            long[] boundaries = new long[gridSize + 1];
+            boundaries[0] = dataStart;
+            boundaries[gridSize] = length;
+            for (int i = 1; i < gridSize; i++) {
+                long nominal = dataStart + (length - dataStart) * i / gridSize;
+                boundaries[i] = Math.max(alignToLineStart(nominal, length), boundaries[i - 1]);
+            }
+
+            Map<String, ExecutionContext> partitions = new LinkedHashMap<>();
+            for (int i = 0; i < gridSize; i++) {
+                ExecutionContext context = new ExecutionContext();
+                context.putLong(START_OFFSET, boundaries[i]);
+                context.putLong(END_OFFSET, boundaries[i + 1]);
+                partitions.put("partition" + i, context);
+
+                log.info("partition{} : [{}, {})", i, boundaries[i], boundaries[i + 1]);
+            }
+
+            return partitions;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to partition resource: " + resource, e);
+        }
+    }
+
+    // 헤더(linesToSkip 만큼의 줄)가 끝나는 위치
+    private long skipHeader() throws IOException {
+        long position = 0;
+        int skipped = 0;
+
+        try (InputStream in = new BufferedInputStream(resource.getInputStream())) {
+            int b;
+            while (skipped < linesToSkip && (b = in.read()) != -1) {
+                position++;
+                if (b == '\n') {
+                    skipped++;
+                }
+            }
+        }
+
+        return position;
+    }
+
+    // offset 위치 또는 그 이후에 처음으로 시작하는 줄의 위치
+    private long alignToLineStart(long offset, long length) throws IOException {
+        if (offset <= 0) {
+            return 0;
+        }
+
+        try (InputStream in = new BufferedInputStream(resource.getInputStream())) {
+            skipFully(in, offset - 1);
+            long position = offset - 1;
+
+            int b;
+            while ((b = in.read()) != -1) {
+                position++;
+                if (b == '\n') {
+                    return position;
+                }
+            }
+        }
+
+        return length;
+    }
+
+    private static void skipFully(InputStream in, long bytes) throws IOException {
+        long remaining = bytes;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() == -1) {
+                    throw new EOFException("Unexpected end of stream while skipping " + bytes + " bytes");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.springbatchexample.part3;
+
+import org.springframework.core.io.Resource;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+// memory-map 하려면 파일 시스템의 파일이 필요하다.
+// bootJar 안의 classpath resource처럼 파일이 아닌 resource는 임시 파일로 복사해서 사용하고, close()할 때 지운다.
+// 복사본의 바이트 위치는 원본과 같으므로 ExecutionContext에 저장한 위치로 재시작할 수 있다.
+final class LocalResourceFile implements Closeable {
+    private final Path path;
+    private final boolean temporary;
+
+    private LocalResourceFile(Path path, boolean temporary) {
+        this.path = path;
+        this.temporary = temporary;
+    }
+
+    static LocalResourceFile of(Resource resource) throws IOException {
+        if (resource.isFile()) {
+            return new LocalResourceFile(resource.getFile().toPath(), false);
+        }
+
+        Path copy = Files.createTempFile("resource-", ".tmp");
+        try (InputStream in = resource.getInputStream()) {
+            Files.copy(in, copy, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(copy);
+            throw e;
+        }
+        return new LocalResourceFile(copy, true);
+    }
+
+    Path path() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (temporary) {
+            Files.deleteIfExists(path);
+        }
+    }
+}
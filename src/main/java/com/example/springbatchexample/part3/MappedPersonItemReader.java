@@ -0,0 +1,265 @@
+package com.example.springbatchexample.part3;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+// 파일을 memory-map 해서 UTF-8 바이트 위에서 바로 Person을 만드는 reader
+// FlatFileItemReader + DefaultLineMapper + DelimitedLineTokenizer 조합을 Person 전용으로 대체한다.
+// 재시작 시에는 마지막으로 커밋된 바이트 위치로 바로 이동한다.
+public class MappedPersonItemReader extends AbstractItemCountingItemStreamItemReader<Person> {
+    private static final String POSITION = "position";
+    private static final String LINE_COUNT = "line.count";
+    private static final String FILTERED_COUNT = "filtered.count";
+    private static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final PersonRecordParser parser = new PersonRecordParser();
+    private StringDictionary dictionary;
+
+    private Resource resource;
+    private int linesToSkip;
+    private byte[][] comments = new byte[0][];
+    private long startOffset;
+    private long endOffset = Long.MAX_VALUE;
+    private int windowSize = DEFAULT_WINDOW_SIZE;
+    private PersonPredicate filter;
+
+    private LocalResourceFile file;
+    private FileChannel channel;
+    private long fileSize;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position;
+    private int lineCount;
+    private long restartPosition = -1;
+    private int restartLineCount;
+    private long filteredCount;
+
+    public MappedPersonItemReader() {
+        setName(ClassUtils.getShortName(MappedPersonItemReader.class));
+    }
+
+    public void setResource(Resource resource) {
+        this.resource = resource;
+    }
+
+    public void setLinesToSkip(int linesToSkip) {
+        this.linesToSkip = linesToSkip;
+    }
+
+    // 해당 prefix로 시작하는 줄은 건너뛴다. (footer 등)
+    public void setComments(String... comments) {
+        this.comments = new byte[comments.length][];
+        for (int i = 0; i < comments.length; i++) {
+            this.comments[i] = comments[i].getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    // 파티션 처리 시 읽을 바이트 구간을 지정한다.
+    public void setStartOffset(long startOffset) {
+        this.startOffset = startOffset;
+    }
+
+    public void setEndOffset(long endOffset) {
+        this.endOffset = endOffset;
+    }
+
+    // 조건을 만족하지 않는 줄은 Person을 만들지 않고 건너뛴다. 건너뛴 줄 수는 getFilteredCount()로 알 수 있다.
+    public void setFilter(PersonPredicate filter) {
+        this.filter = filter;
+    }
+
+    public long getFilteredCount() {
+        return filteredCount;
+    }
+
+    // 반복되는 문자열 필드를 같은 String 객체로 읽는다.
+    public void setDictionary(StringDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    // 한번에 map 하는 크기. 2GB 이상의 파일도 window 단위로 옮겨가며 읽는다.
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        if (isSaveState() && executionContext.containsKey(getExecutionContextKey(POSITION))) {
+            restartPosition = executionContext.getLong(getExecutionContextKey(POSITION));
+            restartLineCount = executionContext.getInt(getExecutionContextKey(LINE_COUNT), 0);
+        }
+        filteredCount = isSaveState() ? executionContext.getLong(getExecutionContextKey(FILTERED_COUNT), 0L) : 0L;
+        super.open(executionContext);
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        super.update(executionContext);
+        if (isSaveState()) {
+            executionContext.putLong(getExecutionContextKey(POSITION), position);
+            executionContext.putInt(getExecutionContextKey(LINE_COUNT), lineCount);
+            executionContext.putLong(getExecutionContextKey(FILTERED_COUNT), filteredCount);
+        }
+    }
+
+    @Override
+    protected void doOpen() throws Exception {
+        Assert.notNull(resource, "Resource must be set");
+
+        parser.setDictionary(StringDictionary.resolve(dictionary));
+
+        // jar 안의 resource처럼 파일이 아니면 임시 파일로 복사해서 map 한다.
+        file = LocalResourceFile.of(resource);
+        channel = FileChannel.open(file.path(), StandardOpenOption.READ);
+        fileSize = channel.size();
+        endOffset = Math.min(endOffset, fileSize);
+        position = startOffset;
+        lineCount = 0;
+        window = null;
+
+        // 헤더는 파일의 처음부터 읽는 경우에만 건너뛴다.
+        if (startOffset == 0) {
+            long lineEnd;
+            for (int i = 0; i < linesToSkip && (lineEnd = nextLineEnd()) >= 0; i++) {
+                advanceLine(lineEnd);
+            }
+        }
+    }
+
+    @Override
+    protected Person doRead() throws Exception {
+        long lineEnd;
+        while ((lineEnd = nextLineEnd()) >= 0) {
+            int from = (int) (position - windowStart);
+            int to = (int) (lineEnd - windowStart);
+            if (to > from && window.get(to - 1) == '\r') {
+                to--;
+            }
+            advanceLine(lineEnd);
+
+            if (isComment(from, to)) {
+                continue;
+            }
+
+            try {
+                Person person = parser.parse(window, from, to, filter);
+                if (person == null) {
+                    filteredCount++;
+                    continue;
+                }
+                return person;
+            } catch (Exception e) {
+                String line = decode(from, to);
+                throw new FlatFileParseException("Parsing error at line: " + lineCount + " in resource=["
+                        + resource.getDescription() + "], input=[" + line + "]", e, line, lineCount);
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    protected void jumpToItem(int itemIndex) throws Exception {
+        if (restartPosition < 0) {
+            super.jumpToItem(itemIndex);
+            return;
+        }
+
+        position = restartPosition;
+        lineCount = restartLineCount;
+        restartPosition = -1;
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        window = null;
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } finally {
+            channel = null;
+            if (file != null) {
+                file.close();
+                file = null;
+            }
+        }
+    }
+
+    // 현재 줄의 끝(줄바꿈 문자 위치 또는 파일 끝)의 절대 위치. 더 읽을 줄이 없으면 -1
+    private long nextLineEnd() throws IOException {
+        if (position >= endOffset || position >= fileSize) {
+            return -1;
+        }
+
+        while (true) {
+            ensureMapped(position);
+            long windowEnd = windowStart + window.limit();
+
+            for (int i = (int) (position - windowStart); i < window.limit(); i++) {
+                if (window.get(i) == '\n') {
+                    return windowStart + i;
+                }
+            }
+
+            if (windowEnd >= fileSize) {
+                return fileSize;
+            }
+            if (windowStart == position) {
+                throw new IllegalStateException("Line at byte offset " + position + " is longer than the window size " + windowSize);
+            }
+            // 줄이 window 경계에 걸쳐 있으면 줄의 시작부터 다시 map 한다.
+            remap(position);
+        }
+    }
+
+    private void advanceLine(long lineEnd) {
+        position = Math.min(lineEnd + 1, fileSize);
+        lineCount++;
+    }
+
+    private void ensureMapped(long offset) throws IOException {
+        if (window == null || offset < windowStart || offset >= windowStart + window.limit()) {
+            remap(offset);
+        }
+    }
+
+    private void remap(long offset) throws IOException {
+        long size = Math.min(windowSize, fileSize - offset);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+        windowStart = offset;
+    }
+
+    private boolean isComment(int from, int to) {
+        for (byte[] bytes : comments) {
+            if (to - from < bytes.length) {
+                continue;
+            }
+            boolean matched = true;
+            for (int i = 0; i < bytes.length && matched; i++) {
+                matched = window.get(from + i) == bytes[i];
+            }
+            if (matched) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String decode(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        window.get(from, bytes, 0, bytes.length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
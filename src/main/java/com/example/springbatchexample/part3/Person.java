@@ -7,11 +7,15 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import java.io.Serializable;
 
+// remote chunking에서 청크 요청에 담겨 worker로 직렬화되어 전달된다.
 @Entity
 @NoArgsConstructor
 @Getter
-public class Person {
+public class Person implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private int id;
@@ -29,4 +33,9 @@ public class Person {
     public Person(String name, String age, String address) {
         this(0, name, age, address);
     }
+
+    // 미리 할당받은 id를 채운다. (PersonBulkInsertItemWriter)
+    void assignId(int id) {
+        this.id = id;
+    }
 }
@@ -0,0 +1,39 @@
+package com.example.springbatchexample.part3;
+
+// job 사이에서 Person을 넘길 때 쓰는 바이너리 파일 형식
+// 파일 : [magic "PSNB"][version 1byte][블록 당 최대 사전 크기 varint] 이후 블록과 레코드가 이어진다.
+// 블록 시작 : [BLOCK] 이 위치부터 문자열 사전을 비운다.
+// 레코드 : [RECORD][id zigzag varint][name][age][address]
+// 문자열 : varint 헤더 h
+//   h == 0          : null
+//   h 가 홀수         : 사전의 (h >>> 1) 번째 문자열
+//   h 가 0이 아닌 짝수 : (h >>> 1) - 1 바이트의 UTF-8 문자열이 뒤따르고, 사전에 자리가 있으면 사전에 추가된다.
+// 사전은 블록 단위이므로 재시작할 때는 블록의 시작부터 다시 읽으면 사전이 복원된다.
+final class PersonBinaryFormat {
+    static final byte[] MAGIC = {'P', 'S', 'N', 'B'};
+    static final byte VERSION = 1;
+    static final byte BLOCK = 1;
+    static final byte RECORD = 2;
+
+    // varint 하나의 최대 바이트 수
+    static final int MAX_VARINT_BYTES = 5;
+
+    private PersonBinaryFormat() {
+    }
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static int literalHeader(int length) {
+        return (length + 1) << 1;
+    }
+
+    static int referenceHeader(int index) {
+        return (index << 1) | 1;
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.springbatchexample.part3;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// PersonBinaryItemWriter가 쓴 파일을 memory-map 해서 읽는 reader
+// 사전에서 꺼낸 문자열은 같은 String 객체를 재사용한다.
+// 커밋마다 다음 레코드의 위치와 그 레코드가 속한 블록의 시작 위치를 저장하고,
+// 재시작하면 블록의 시작부터 저장한 위치까지 다시 읽어 사전을 복원한 뒤 이어 읽는다.
+public class PersonBinaryItemReader extends AbstractItemCountingItemStreamItemReader<Person> {
+    private static final String POSITION = "position";
+    private static final String BLOCK_START = "block.start";
+    private static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    // window 끝에 걸친 레코드를 만났을 때 던진다. 매번 stack trace를 만들지 않도록 하나만 쓴다.
+    private static final IndexOutOfBoundsException UNDERFLOW = new IndexOutOfBoundsException("Record crosses the mapped window") {
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    };
+
+    private Resource resource;
+    private int windowSize = DEFAULT_WINDOW_SIZE;
+
+    private FileChannel channel;
+    private long fileSize;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private int cursor;
+    private long position;
+    private long blockStart;
+    private int dictionarySize;
+    private final List<String> dictionary = new ArrayList<>();
+    private long restartPosition = -1;
+    private long restartBlockStart;
+
+    public PersonBinaryItemReader() {
+        setName(ClassUtils.getShortName(PersonBinaryItemReader.class));
+    }
+
+    public void setResource(Resource resource) {
+        this.resource = resource;
+    }
+
+    // 한번에 map 하는 크기. 2GB 이상의 파일도 window 단위로 옮겨가며 읽는다.
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        if (isSaveState() && executionContext.containsKey(getExecutionContextKey(POSITION))) {
+            restartPosition = executionContext.getLong(getExecutionContextKey(POSITION));
+            restartBlockStart = executionContext.getLong(getExecutionContextKey(BLOCK_START));
+        }
+        super.open(executionContext);
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        super.update(executionContext);
+        if (isSaveState()) {
+            executionContext.putLong(getExecutionContextKey(POSITION), position);
+            executionContext.putLong(getExecutionContextKey(BLOCK_START), blockStart);
+        }
+    }
+
+    @Override
+    protected void doOpen() throws Exception {
+        Assert.notNull(resource, "Resource must be set");
+        Assert.state(resource.isFile(), "Resource must be a file in the file system: " + resource);
+
+        channel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ);
+        fileSize = channel.size();
+        window = null;
+        dictionary.clear();
+
+        remap(0);
+        try {
+            cursor = 0;
+            for (byte magic : PersonBinaryFormat.MAGIC) {
+                if (readByte() != magic) {
+                    throw new IllegalStateException("Not a person binary file : " + resource.getDescription());
+                }
+            }
+            byte version = readByte();
+            if (version != PersonBinaryFormat.VERSION) {
+                throw new IllegalStateException("Unsupported person binary version " + version + " : " + resource.getDescription());
+            }
+            dictionarySize = readVarint();
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalStateException("Truncated person binary header : " + resource.getDescription(), e);
+        }
+        position = windowStart + cursor;
+        blockStart = position;
+    }
+
+    @Override
+    protected Person doRead() throws Exception {
+        while (position < fileSize) {
+            ensureMapped(position);
+            int dictionaryMark = dictionary.size();
+            try {
+                cursor = (int) (position - windowStart);
+                byte tag = readByte();
+                if (tag == PersonBinaryFormat.BLOCK) {
+                    dictionary.clear();
+                    blockStart = position;
+                    position = windowStart + cursor;
+                    continue;
+                }
+                if (tag != PersonBinaryFormat.RECORD) {
+                    throw new IllegalStateException("Unknown record tag " + tag + " at byte offset " + position
+                            + " in " + resource.getDescription());
+                }
+
+                int id = PersonBinaryFormat.unzigzag(readVarint());
+                String name = readString();
+                String age = readString();
+                String address = readString();
+                position = windowStart + cursor;
+                return new Person(id, name, age, address);
+            } catch (IndexOutOfBoundsException e) {
+                // 읽다 만 레코드에서 사전에 넣은 문자열은 되돌리고, 레코드의 시작부터 다시 map 한다.
+                dictionary.subList(dictionaryMark, dictionary.size()).clear();
+                if (windowStart + window.limit() >= fileSize) {
+                    throw new IllegalStateException("Truncated record at byte offset " + position
+                            + " in " + resource.getDescription());
+                }
+                if (windowStart == position) {
+                    throw new IllegalStateException("Record at byte offset " + position + " is longer than the window size " + windowSize);
+                }
+                remap(position);
+            }
+        }
+
+        return null;
+    }
+
+    // 블록의 시작부터 저장한 위치까지 읽어서 사전을 복원한다.
+    @Override
+    protected void jumpToItem(int itemIndex) throws Exception {
+        if (restartPosition < 0) {
+            super.jumpToItem(itemIndex);
+            return;
+        }
+
+        position = restartBlockStart;
+        blockStart = restartBlockStart;
+        dictionary.clear();
+        while (position < restartPosition && doRead() != null) {
+        }
+        if (position != restartPosition) {
+            throw new IllegalStateException("Restart position " + restartPosition + " is not a record boundary in "
+                    + resource.getDescription());
+        }
+        restartPosition = -1;
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        window = null;
+        dictionary.clear();
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void ensureMapped(long offset) throws IOException {
+        if (window == null || offset < windowStart || offset >= windowStart + window.limit()) {
+            remap(offset);
+        }
+    }
+
+    private void remap(long offset) throws IOException {
+        long size = Math.min(windowSize, fileSize - offset);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+        windowStart = offset;
+    }
+
+    private byte readByte() {
+        if (cursor >= window.limit()) {
+            throw UNDERFLOW;
+        }
+        return window.get(cursor++);
+    }
+
+    private int readVarint() {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint in " + resource.getDescription());
+    }
+
+    private String readString() {
+        int header = readVarint();
+        if (header == 0) {
+            return null;
+        }
+        if ((header & 1) == 1) {
+            return dictionary.get(header >>> 1);
+        }
+
+        int length = (header >>> 1) - 1;
+        if (length > window.limit() - cursor) {
+            throw UNDERFLOW;
+        }
+        byte[] bytes = new byte[length];
+        window.get(cursor, bytes, 0, length);
+        cursor += length;
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        if (dictionary.size() < dictionarySize) {
+            dictionary.add(value);
+        }
+        return value;
+    }
+}
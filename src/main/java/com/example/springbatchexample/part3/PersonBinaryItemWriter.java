@@ -0,0 +1,304 @@
+package com.example.springbatchexample.part3;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.support.AbstractItemStreamItemWriter;
+import org.springframework.core.io.Resource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Person을 PersonBinaryFormat으로 쓰는 writer. 다음 job이 PersonBinaryItemReader로 읽는다.
+// CSV처럼 숫자를 문자로 바꾸거나 구분자를 찾을 필요가 없고, 반복되는 문자열은 사전 번호만 쓴다.
+// Utf8DelimitedItemWriter와 같이 버퍼에 모았다가 청크가 커밋될 때(update) FileChannel로 내보내고,
+// 롤백되면 그 청크에서 쓴 부분을 잘라내고, 재시작하면 마지막 커밋 위치까지 잘라낸 뒤 이어 쓴다.
+// 잘라낸 뒤에는 사전이 reader와 달라지므로 새 블록을 시작한다.
+// 여러 스레드에서 동시에 쓰면 안 된다.
+public class PersonBinaryItemWriter extends AbstractItemStreamItemWriter<Person> {
+    private static final String POSITION = "position";
+    private static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+    private static final int DEFAULT_DICTIONARY_SIZE = 1024;
+    private static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    private Resource resource;
+    private int dictionarySize = DEFAULT_DICTIONARY_SIZE;
+    private int blockSize = DEFAULT_BLOCK_SIZE;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    private FileChannel channel;
+    private byte[] buffer;
+    private int count;
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private int blockRecords;
+    private boolean newBlock;
+    private boolean rollbackRegistered;
+
+    public PersonBinaryItemWriter() {
+        setName(ClassUtils.getShortName(PersonBinaryItemWriter.class));
+    }
+
+    public void setResource(Resource resource) {
+        this.resource = resource;
+    }
+
+    // 블록 당 사전에 넣을 문자열 수. 0이면 사전을 쓰지 않는다.
+    public void setDictionarySize(int dictionarySize) {
+        this.dictionarySize = dictionarySize;
+    }
+
+    // 블록 당 레코드 수. 재시작한 reader는 블록의 시작부터 다시 읽으므로 작을수록 재시작이 빠르다.
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        if (resource == null) {
+            throw new ItemStreamException("resource must be set");
+        }
+
+        buffer = new byte[Math.max(bufferSize, 64)];
+        count = 0;
+        newBlock = true;
+        try {
+            Path file = resource.getFile().toPath();
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+
+            if (executionContext.containsKey(getExecutionContextKey(POSITION))) {
+                // 재시작 : 마지막으로 커밋된 위치 이후는 버린다.
+                long position = executionContext.getLong(getExecutionContextKey(POSITION));
+                if (channel.size() < position) {
+                    throw new ItemStreamException("Current file size is smaller than size at last commit : " + file);
+                }
+                channel.truncate(position);
+                channel.position(position);
+            } else {
+                channel.truncate(0);
+                put(PersonBinaryFormat.MAGIC);
+                putByte(PersonBinaryFormat.VERSION);
+                putVarint(dictionarySize);
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to open output file " + resource, e);
+        }
+    }
+
+    @Override
+    public void write(List<? extends Person> items) throws Exception {
+        registerRollback();
+
+        for (Person person : items) {
+            if (newBlock || blockRecords >= blockSize) {
+                startBlock();
+            }
+            putByte(PersonBinaryFormat.RECORD);
+            putVarint(PersonBinaryFormat.zigzag(person.getId()));
+            putString(person.getName());
+            putString(person.getAge());
+            putString(person.getAddress());
+            blockRecords++;
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            flush();
+            executionContext.putLong(getExecutionContextKey(POSITION), channel.position());
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to flush output file " + resource, e);
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            flush();
+            channel.close();
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to close output file " + resource, e);
+        } finally {
+            channel = null;
+            buffer = null;
+            dictionary.clear();
+        }
+    }
+
+    private void startBlock() throws IOException {
+        putByte(PersonBinaryFormat.BLOCK);
+        dictionary.clear();
+        blockRecords = 0;
+        newBlock = false;
+    }
+
+    // 청크 트랜잭션마다 시작 위치를 기억해 두고, 롤백되면 그 위치로 되돌린다.
+    private void registerRollback() throws IOException {
+        if (rollbackRegistered || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        long position = channel.position() + count;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                rollbackRegistered = false;
+                if (status != STATUS_COMMITTED && channel != null) {
+                    rollbackTo(position);
+                    newBlock = true;
+                }
+            }
+        });
+        rollbackRegistered = true;
+    }
+
+    private void rollbackTo(long position) {
+        try {
+            long flushed = channel.position();
+            if (position >= flushed) {
+                count = (int) (position - flushed);
+            } else {
+                count = 0;
+                channel.truncate(position);
+                channel.position(position);
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to roll back output file " + resource, e);
+        }
+    }
+
+    private void flush() throws IOException {
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, count);
+        while (byteBuffer.hasRemaining()) {
+            channel.write(byteBuffer);
+        }
+        count = 0;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.length - count < bytes) {
+            flush();
+        }
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length) {
+            flush();
+            ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+            while (byteBuffer.hasRemaining()) {
+                channel.write(byteBuffer);
+            }
+            return;
+        }
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private void putByte(byte value) throws IOException {
+        ensure(1);
+        buffer[count++] = value;
+    }
+
+    private void putVarint(int value) throws IOException {
+        ensure(PersonBinaryFormat.MAX_VARINT_BYTES);
+        while ((value & ~0x7F) != 0) {
+            buffer[count++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[count++] = (byte) value;
+    }
+
+    private void putString(String value) throws IOException {
+        if (value == null) {
+            putVarint(0);
+            return;
+        }
+
+        Integer index = dictionary.get(value);
+        if (index != null) {
+            putVarint(PersonBinaryFormat.referenceHeader(index));
+            return;
+        }
+        if (dictionary.size() < dictionarySize) {
+            dictionary.put(value, dictionary.size());
+        }
+
+        int length = utf8Length(value);
+        putVarint(PersonBinaryFormat.literalHeader(length));
+        if (length > buffer.length) {
+            put(value.getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        ensure(length);
+        putUtf8(value);
+    }
+
+    // String.getBytes(UTF_8)와 같은 바이트 수. 짝이 맞지 않는 surrogate는 '?' 한 바이트로 쓴다.
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    // 버퍼에 utf8Length(value) 만큼의 자리가 있어야 한다.
+    private void putUtf8(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[count++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[count++] = (byte) (0xC0 | (c >> 6));
+                buffer[count++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[count++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[count++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer[count++] = '?';
+            } else {
+                buffer[count++] = (byte) (0xE0 | (c >> 12));
+                buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[count++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.springbatchexample.part3;
+
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+// Person을 청크 단위의 multi-row insert로 저장하는 writer
+// IDENTITY 컬럼은 insert 마다 생성된 키를 돌려받아야 해서 배치가 되지 않으므로,
+// PersonIdAllocator로 id를 미리 블록 단위로 받아 채운 뒤 한번에 insert 한다.
+// 할당된 id는 Person 객체에 다시 채워지므로 이후 writer에서 바로 사용할 수 있다.
+public class PersonBulkInsertItemWriter implements ItemWriter<Person> {
+    private static final String INSERT = "insert into person(id, name, age, address) values ";
+    private static final String ROW = "(?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PersonIdAllocator idAllocator;
+    private final int rowsPerStatement;
+    private final String batchSql;
+
+    public PersonBulkInsertItemWriter(DataSource dataSource, int rowsPerStatement) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.idAllocator = new PersonIdAllocator(jdbcTemplate);
+        this.rowsPerStatement = rowsPerStatement;
+        this.batchSql = insertSql(rowsPerStatement);
+    }
+
+    @Override
+    public void write(List<? extends Person> items) {
+        for (Person person : items) {
+            person.assignId(idAllocator.nextId());
+        }
+
+        // rowsPerStatement 개씩 묶은 multi-row insert를 JDBC batch로 보내고, 나머지는 한번 더 보낸다.
+        int fullRows = items.size() - items.size() % rowsPerStatement;
+        if (fullRows > 0) {
+            List<Object[]> batchArgs = new ArrayList<>(fullRows / rowsPerStatement);
+            for (int from = 0; from < fullRows; from += rowsPerStatement) {
+                batchArgs.add(rowArgs(items, from, from + rowsPerStatement));
+            }
+            jdbcTemplate.batchUpdate(batchSql, batchArgs);
+        }
+        if (fullRows < items.size()) {
+            jdbcTemplate.update(insertSql(items.size() - fullRows), rowArgs(items, fullRows, items.size()));
+        }
+    }
+
+    private Object[] rowArgs(List<? extends Person> items, int from, int to) {
+        Object[] args = new Object[(to - from) * 4];
+        int i = 0;
+        for (int index = from; index < to; index++) {
+            Person person = items.get(index);
+            args[i++] = person.getId();
+            args[i++] = person.getName();
+            args[i++] = person.getAge();
+            args[i++] = person.getAddress();
+        }
+        return args;
+    }
+
+    private static String insertSql(int rows) {
+        StringBuilder sql = new StringBuilder(INSERT.length() + rows * (ROW.length() + 2)).append(INSERT);
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(ROW);
+        }
+        return sql.toString();
+    }
+}
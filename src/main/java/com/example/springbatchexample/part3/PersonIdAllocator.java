@@ -0,0 +1,32 @@
+package com.example.springbatchexample.part3;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+// person id를 시퀀스의 increment 개씩 미리 받아와서 나눠준다. (hi/lo 방식)
+// 시퀀스(person_id_seq)는 person.sql에서 한번만 만들고, 여기서는 DDL을 실행하지 않는다.
+// 시퀀스는 IDENTITY가 쓰지 않는 범위(10억)부터 시작하므로 IDENTITY로 insert 하는 다른 writer(JpaItemWriter)와 id가 겹치지 않는다.
+public class PersonIdAllocator {
+    private static final String SEQUENCE = "person_id_seq";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private long blockSize;
+    private long next;
+    private long limit;
+
+    public PersonIdAllocator(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public synchronized int nextId() {
+        if (next == limit) {
+            if (blockSize == 0) {
+                blockSize = jdbcTemplate.queryForObject("select increment from information_schema.sequences where sequence_name = ?",
+                        Long.class, SEQUENCE.toUpperCase());
+            }
+            next = jdbcTemplate.queryForObject("select next value for " + SEQUENCE, Long.class);
+            limit = next + blockSize;
+        }
+        return Math.toIntExact(next++);
+    }
+}
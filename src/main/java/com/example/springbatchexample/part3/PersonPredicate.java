@@ -0,0 +1,225 @@
+package com.example.springbatchexample.part3;
+
+import org.springframework.batch.item.ItemProcessor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+// reader 쪽으로 내려보낼 수 있는 Person 필터 조건
+// 같은 조건을 여러 형태로 적용한다.
+//   JDBC reader : where 절(sql) + 위치 파라미터(sqlParameters)
+//   JPA reader  : where 절(jpql) + 이름 파라미터
+//   CSV reader  : Person을 만들기 전에 토큰(Tokens) 위에서 판단
+//   그 외       : asProcessor()로 processor에서 걸러낸다. (filterCount로 집계된다)
+// 조건에 쓰는 컬럼 이름은 Person의 필드 이름과 같다. (id, name, age, address)
+public interface PersonPredicate {
+
+    boolean test(Person person);
+
+    boolean test(Tokens tokens);
+
+    String sql();
+
+    List<Object> sqlParameters();
+
+    // alias : JPQL에서 Person의 별칭 (select p from Person p 이면 "p")
+    // 값은 :p0, :p1 ... 이름으로 parameters에 추가한다.
+    String jpql(String alias, Map<String, Object> parameters);
+
+    default ItemProcessor<Person, Person> asProcessor() {
+        return person -> test(person) ? person : null;
+    }
+
+    default PersonPredicate and(PersonPredicate other) {
+        return new And(this, other);
+    }
+
+    // id % divisor == remainder
+    static PersonPredicate idModulo(int divisor, int remainder) {
+        return new IdModulo(divisor, remainder);
+    }
+
+    // min <= id <= max
+    static PersonPredicate idBetween(int min, int max) {
+        return new IdBetween(min, max);
+    }
+
+    static PersonPredicate nameEquals(String name) {
+        return new FieldEquals("name", Tokens.NAME, name);
+    }
+
+    static PersonPredicate addressEquals(String address) {
+        return new FieldEquals("address", Tokens.ADDRESS, address);
+    }
+
+    static String parameter(Map<String, Object> parameters, Object value) {
+        String name = "p" + parameters.size();
+        parameters.put(name, value);
+        return ":" + name;
+    }
+
+    // 파싱하기 전의 한 줄. PersonRecordParser가 토큰 위치를 잡은 뒤 넘겨준다.
+    interface Tokens {
+        int ID = 0;
+        int NAME = 1;
+        int AGE = 2;
+        int ADDRESS = 3;
+
+        int id();
+
+        // UTF-8 바이트끼리 비교하므로 String을 만들지 않는다.
+        boolean fieldEquals(int index, byte[] utf8);
+    }
+
+    final class IdModulo implements PersonPredicate {
+        private final int divisor;
+        private final int remainder;
+
+        private IdModulo(int divisor, int remainder) {
+            this.divisor = divisor;
+            this.remainder = remainder;
+        }
+
+        @Override
+        public boolean test(Person person) {
+            return person.getId() % divisor == remainder;
+        }
+
+        @Override
+        public boolean test(Tokens tokens) {
+            return tokens.id() % divisor == remainder;
+        }
+
+        @Override
+        public String sql() {
+            return "mod(id, ?) = ?";
+        }
+
+        @Override
+        public List<Object> sqlParameters() {
+            return Arrays.asList(divisor, remainder);
+        }
+
+        @Override
+        public String jpql(String alias, Map<String, Object> parameters) {
+            return "mod(" + alias + ".id, " + parameter(parameters, divisor) + ") = " + parameter(parameters, remainder);
+        }
+    }
+
+    final class IdBetween implements PersonPredicate {
+        private final int min;
+        private final int max;
+
+        private IdBetween(int min, int max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public boolean test(Person person) {
+            return person.getId() >= min && person.getId() <= max;
+        }
+
+        @Override
+        public boolean test(Tokens tokens) {
+            int id = tokens.id();
+            return id >= min && id <= max;
+        }
+
+        @Override
+        public String sql() {
+            return "id between ? and ?";
+        }
+
+        @Override
+        public List<Object> sqlParameters() {
+            return Arrays.asList(min, max);
+        }
+
+        @Override
+        public String jpql(String alias, Map<String, Object> parameters) {
+            return alias + ".id between " + parameter(parameters, min) + " and " + parameter(parameters, max);
+        }
+    }
+
+    final class FieldEquals implements PersonPredicate {
+        private final String field;
+        private final int index;
+        private final String value;
+        private final byte[] utf8;
+
+        private FieldEquals(String field, int index, String value) {
+            this.field = field;
+            this.index = index;
+            this.value = Objects.requireNonNull(value, "value");
+            this.utf8 = value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public boolean test(Person person) {
+            String actual = (index == Tokens.NAME) ? person.getName() : person.getAddress();
+            return value.equals(actual);
+        }
+
+        @Override
+        public boolean test(Tokens tokens) {
+            return tokens.fieldEquals(index, utf8);
+        }
+
+        @Override
+        public String sql() {
+            return field + " = ?";
+        }
+
+        @Override
+        public List<Object> sqlParameters() {
+            return Arrays.asList(value);
+        }
+
+        @Override
+        public String jpql(String alias, Map<String, Object> parameters) {
+            return alias + "." + field + " = " + parameter(parameters, value);
+        }
+    }
+
+    final class And implements PersonPredicate {
+        private final PersonPredicate left;
+        private final PersonPredicate right;
+
+        private And(PersonPredicate left, PersonPredicate right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean test(Person person) {
+            return left.test(person) && right.test(person);
+        }
+
+        @Override
+        public boolean test(Tokens tokens) {
+            return left.test(tokens) && right.test(tokens);
+        }
+
+        @Override
+        public String sql() {
+            return "(" + left.sql() + ") and (" + right.sql() + ")";
+        }
+
+        @Override
+        public List<Object> sqlParameters() {
+            List<Object> parameters = new ArrayList<>(left.sqlParameters());
+            parameters.addAll(right.sqlParameters());
+            return parameters;
+        }
+
+        @Override
+        public String jpql(String alias, Map<String, Object> parameters) {
+            return "(" + left.jpql(alias, parameters) + ") and (" + right.jpql(alias, parameters) + ")";
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.springbatchexample.part3;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// "id,name,age,address" 형식의 UTF-8 한 줄을 ByteBuffer 위에서 바로 토큰화해 Person으로 만든다.
+// 중간 String, String[], FieldSet을 만들지 않고 최종 Person의 필드만 할당한다.
+// 토큰 위치를 담는 배열을 재사용하므로 thread-safe 하지 않다. (reader 마다 하나씩 사용)
+public class PersonRecordParser {
+    private static final int FIELD_COUNT = 4;
+    private static final byte DELIMITER = ',';
+    private static final byte QUOTE = '"';
+
+    private final int[] tokenStart = new int[FIELD_COUNT];
+    private final int[] tokenEnd = new int[FIELD_COUNT];
+    private final boolean[] quoted = new boolean[FIELD_COUNT];
+    private byte[] scratch = new byte[256];
+    private final Tokens tokens = new Tokens();
+    private StringDictionary dictionary;
+
+    // 문자열 필드를 dictionary로 canonicalize 한다.
+    public void setDictionary(StringDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    // buffer의 [from, to) 구간(줄바꿈 문자 제외)을 Person으로 변환한다.
+    public Person parse(ByteBuffer buffer, int from, int to) {
+        return parse(buffer, from, to, null);
+    }
+
+    // filter를 만족하지 않는 줄은 Person을 만들지 않고 null을 리턴한다.
+    public Person parse(ByteBuffer buffer, int from, int to, PersonPredicate filter) {
+        tokenize(buffer, from, to);
+        if (filter != null && !tokens.test(buffer, filter)) {
+            return null;
+        }
+
+        int id = parseInt(buffer, tokenStart[0], tokenEnd[0]);
+        String name = canonicalize(readString(buffer, 1));
+        String age = canonicalize(readString(buffer, 2));
+        String address = canonicalize(readString(buffer, 3));
+
+        return new Person(id, name, age, address);
+    }
+
+    private void tokenize(ByteBuffer buffer, int from, int to) {
+        int count = 0;
+        int position = from;
+
+        while (true) {
+            if (count == FIELD_COUNT) {
+                throw new IllegalArgumentException("Incorrect number of tokens found in record: expected " + FIELD_COUNT + " actual more");
+            }
+
+            if (position < to && buffer.get(position) == QUOTE) {
+                // 따옴표로 감싼 필드는 닫는 따옴표까지를 하나의 토큰으로 본다. ("" 는 따옴표 문자)
+                int end = position + 1;
+                while (end < to) {
+                    if (buffer.get(end) == QUOTE) {
+                        if (end + 1 < to && buffer.get(end + 1) == QUOTE) {
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    end++;
+                }
+                if (end >= to) {
+                    throw new IllegalArgumentException("Unterminated quoted field in record");
+                }
+
+                tokenStart[count] = position + 1;
+                tokenEnd[count] = end;
+                quoted[count] = true;
+                trim(buffer, count);
+                position = end + 1;
+            } else {
+                int end = position;
+                while (end < to && buffer.get(end) != DELIMITER) {
+                    end++;
+                }
+
+                tokenStart[count] = position;
+                tokenEnd[count] = end;
+                quoted[count] = false;
+                trim(buffer, count);
+                position = end;
+            }
+            count++;
+
+            if (position >= to) {
+                break;
+            }
+            if (buffer.get(position) != DELIMITER) {
+                throw new IllegalArgumentException("Unexpected character after quoted field in record");
+            }
+            position++;
+        }
+
+        if (count != FIELD_COUNT) {
+            throw new IllegalArgumentException("Incorrect number of tokens found in record: expected " + FIELD_COUNT + " actual " + count);
+        }
+    }
+
+    // FieldSet.readString 처럼 토큰 앞뒤의 공백(0x20 이하)은 값에 넣지 않는다. UTF-8의 다른 문자는 0x80 이상이다.
+    private void trim(ByteBuffer buffer, int index) {
+        int start = tokenStart[index];
+        int end = tokenEnd[index];
+        while (start < end && (buffer.get(start) & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (buffer.get(end - 1) & 0xff) <= ' ') {
+            end--;
+        }
+        tokenStart[index] = start;
+        tokenEnd[index] = end;
+    }
+
+    private String canonicalize(String value) {
+        return (dictionary != null) ? dictionary.canonicalize(value) : value;
+    }
+
+    private String readString(ByteBuffer buffer, int index) {
+        int start = tokenStart[index];
+        int length = tokenEnd[index] - start;
+
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.get(start, scratch, 0, length);
+
+        String value = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        return quoted[index] ? value.replace("\"\"", "\"") : value;
+    }
+
+    // 토큰 위치만 잡힌 상태에서 filter가 필요한 필드만 읽는다.
+    private class Tokens implements PersonPredicate.Tokens {
+        private ByteBuffer buffer;
+
+        boolean test(ByteBuffer buffer, PersonPredicate filter) {
+            this.buffer = buffer;
+            try {
+                return filter.test(this);
+            } finally {
+                this.buffer = null;
+            }
+        }
+
+        @Override
+        public int id() {
+            return parseInt(buffer, tokenStart[ID], tokenEnd[ID]);
+        }
+
+        @Override
+        public boolean fieldEquals(int index, byte[] utf8) {
+            if (quoted[index]) {
+                return readString(buffer, index).equals(new String(utf8, StandardCharsets.UTF_8));
+            }
+            int start = tokenStart[index];
+            if (tokenEnd[index] - start != utf8.length) {
+                return false;
+            }
+            for (int i = 0; i < utf8.length; i++) {
+                if (buffer.get(start + i) != utf8[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // FieldSet.readInt 처럼 앞뒤 공백은 무시한다.
+    static int parseInt(ByteBuffer buffer, int from, int to) {
+        while (from < to && buffer.get(from) == ' ') {
+            from++;
+        }
+        while (to > from && buffer.get(to - 1) == ' ') {
+            to--;
+        }
+        if (from == to) {
+            throw new NumberFormatException("Unparseable number: empty token");
+        }
+
+        boolean negative = buffer.get(from) == '-';
+        int position = negative ? from + 1 : from;
+        if (position == to) {
+            throw new NumberFormatException("Unparseable number: -");
+        }
+
+        long value = 0;
+        for (; position < to; position++) {
+            int digit = buffer.get(position) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Unparseable number at byte offset " + position);
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw new NumberFormatException("Number out of int range");
+            }
+        }
+
+        long result = negative ? -value : value;
+        if (result > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Number out of int range");
+        }
+        return (int) result;
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.springbatchexample.part3;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+
+// AsyncItemProcessor에서 item 처리를 나누어 실행할 TaskExecutor
+// Java 21 이상에서 실행하면 virtual thread를, 그 이하에서는 크기가 고정된 thread pool을 사용한다.
+// 프로젝트는 17로 컴파일하므로 virtual thread API는 reflection으로 찾는다.
+@Slf4j
+public final class ProcessingTaskExecutors {
+
+    private ProcessingTaskExecutors() {
+    }
+
+    public static TaskExecutor create(String threadNamePrefix, int concurrencyLimit) {
+        ThreadFactory virtualThreadFactory = virtualThreadFactory(threadNamePrefix);
+        if (virtualThreadFactory != null) {
+            // virtual thread는 만드는 비용이 작으므로 item 마다 새로 만들고, 동시에 실행되는 수만 제한한다.
+            SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor(virtualThreadFactory);
+            taskExecutor.setConcurrencyLimit(concurrencyLimit);
+            log.info("processing on virtual threads, concurrency limit : {}", concurrencyLimit);
+            return taskExecutor;
+        }
+
+        // 한 청크 분량의 Future가 모일 때까지만 쌓이므로 큐는 따로 제한하지 않는다.
+        // 유휴 스레드는 종료되도록 해서 step이 끝난 뒤 pool을 닫지 않아도 남지 않게 한다.
+        ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setThreadNamePrefix(threadNamePrefix);
+        taskExecutor.setCorePoolSize(concurrencyLimit);
+        taskExecutor.setMaxPoolSize(concurrencyLimit);
+        taskExecutor.setKeepAliveSeconds(30);
+        taskExecutor.setAllowCoreThreadTimeOut(true);
+        taskExecutor.setDaemon(true);
+        taskExecutor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        taskExecutor.initialize();
+        log.info("processing on thread pool, size : {}", concurrencyLimit);
+        return taskExecutor;
+    }
+
+    // Thread.ofVirtual().name(prefix, 0).factory()
+    private static ThreadFactory virtualThreadFactory(String threadNamePrefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, threadNamePrefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.springbatchexample.part3;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.step.item.SimpleChunkProcessor;
+import org.springframework.batch.integration.chunk.ChunkProcessorChunkHandler;
+import org.springframework.batch.integration.chunk.ChunkRequest;
+import org.springframework.batch.integration.chunk.ChunkResponse;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// remote chunking worker. manager가 보낸 청크를 중복 체크 후 writer로 쓰고, 처리 결과(StepContribution)를 응답으로 돌려준다.
+// 청크 하나를 트랜잭션 하나로 처리하고, 처리에 실패하면 롤백한 뒤 실패 응답을 보낸다. (manager step은 실패로 끝난다.)
+// 중복 체크 색인은 manager의 job instance 단위로 이 JVM 안에서 공유한다.
+// 청크에서 새로 등록한 key는 트랜잭션이 커밋되지 않으면 색인에서 지운다. 재전송되거나 재시작으로 다시 온 item이 중복으로 걸러지지 않게 한다.
+// worker JVM이 여럿이면 서로의 색인은 보지 못하므로 JVM 사이의 중복은 걸러지지 않을 수 있다.
+@Slf4j
+public class RemoteChunkWorker {
+    private static final String JOB_NAME = "remoteChunkWorker";
+
+    private final DuplicateKeyIndexRegistry registry;
+    private final DuplicateKeyIndexRegistry.IndexFactory indexFactory;
+    private final ItemWriter<Person> itemWriter;
+    private final TransactionTemplate transactionTemplate;
+
+    private JobExecution current;
+
+    public RemoteChunkWorker(DuplicateKeyIndexRegistry registry, DuplicateKeyIndexRegistry.IndexFactory indexFactory,
+                             ItemWriter<Person> itemWriter, PlatformTransactionManager transactionManager) {
+        this.registry = registry;
+        this.indexFactory = indexFactory;
+        this.itemWriter = itemWriter;
+        // 같은 JVM에서 manager의 청크 트랜잭션 안에서 호출되더라도 따로 커밋한다.
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public ChunkResponse handle(ChunkRequest<Person> request) {
+        DuplicateKeyIndex index = index(request.getJobId());
+        List<Long> added = new ArrayList<>();
+        ItemProcessor<Person, Person> processor = person -> {
+            long hash = DuplicateKeyIndex.hash(person.getName());
+            if (!index.add(hash, person.getName())) {
+                return null;
+            }
+            added.add(hash);
+            return person;
+        };
+
+        ChunkProcessorChunkHandler<Person> chunkHandler = new ChunkProcessorChunkHandler<>();
+        chunkHandler.setChunkProcessor(new SimpleChunkProcessor<>(processor, itemWriter));
+
+        try {
+            return transactionTemplate.execute(status -> {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        if (status != STATUS_COMMITTED) {
+                            added.forEach(index::remove);
+                        }
+                    }
+                });
+                ChunkResponse response;
+                try {
+                    response = chunkHandler.handleChunk(request);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                if (!response.isSuccessful()) {
+                    status.setRollbackOnly();
+                }
+                return response;
+            });
+        } catch (RuntimeException e) {
+            log.warn("chunk {} of job {} failed", request.getSequence(), request.getJobId(), e);
+            return new ChunkResponse(false, request.getSequence(), request.getJobId(), request.getStepContribution(),
+                    e.getClass().getName() + ": " + e.getMessage());
+        }
+    }
+
+    // 새 job instance의 청크가 오면 이전 색인은 닫는다.
+    private synchronized DuplicateKeyIndex index(Long jobId) {
+        if (current == null || !current.getId().equals(jobId)) {
+            if (current != null) {
+                registry.afterJob(current);
+            }
+            current = new JobExecution(new JobInstance(jobId, JOB_NAME), jobId, null, null);
+        }
+        return registry.getIndex(current, indexFactory);
+    }
+}
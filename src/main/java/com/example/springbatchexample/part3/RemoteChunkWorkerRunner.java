@@ -0,0 +1,79 @@
+package com.example.springbatchexample.part3;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.integration.chunk.ChunkRequest;
+import org.springframework.batch.integration.chunk.ChunkResponse;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.PollableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// worker JVM에서 요청 채널을 polling 해서 청크를 처리하고 응답 채널로 결과를 보낸다.
+// polling 스레드는 daemon이 아니므로 실행할 job이 없어도 context가 닫힐 때까지 JVM이 살아 있다.
+@Slf4j
+public class RemoteChunkWorkerRunner implements SmartLifecycle {
+    private static final long RECEIVE_TIMEOUT_MILLIS = 1000;
+
+    private final PollableChannel requests;
+    private final MessageChannel replies;
+    private final RemoteChunkWorker worker;
+    private final int concurrency;
+    private final List<Thread> threads = new ArrayList<>();
+
+    private volatile boolean running;
+
+    public RemoteChunkWorkerRunner(PollableChannel requests, MessageChannel replies, RemoteChunkWorker worker, int concurrency) {
+        this.requests = requests;
+        this.replies = replies;
+        this.worker = worker;
+        this.concurrency = concurrency;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        for (int i = 0; i < concurrency; i++) {
+            Thread thread = new Thread(this::poll, "remote-chunk-worker-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        log.info("remote chunk worker started, concurrency : {}", concurrency);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        threads.clear();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void poll() {
+        while (running) {
+            Message<?> message = requests.receive(RECEIVE_TIMEOUT_MILLIS);
+            if (message == null) {
+                continue;
+            }
+            ChunkRequest<Person> request = (ChunkRequest<Person>) message.getPayload();
+            ChunkResponse response = worker.handle(request);
+            replies.send(MessageBuilder.withPayload(response).build());
+            log.debug("chunk {} of job {} handled : {}", request.getSequence(), request.getJobId(), response.isSuccessful());
+        }
+    }
+}
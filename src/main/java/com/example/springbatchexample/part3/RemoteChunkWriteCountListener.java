@@ -0,0 +1,39 @@
+package com.example.springbatchexample.part3;
+
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.ItemWriteListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+
+import java.util.List;
+
+// manager step은 청크를 요청 채널로 보낸 것만으로 writeCount를 올리고,
+// ChunkMessageChannelItemWriter가 step이 끝날 때 worker의 writeCount를 한번 더 합산한다.
+// 보낸 item 수를 빼서 writeCount에는 worker가 실제로 쓴 수만 남긴다.
+public class RemoteChunkWriteCountListener implements StepExecutionListener, ItemWriteListener<Object> {
+    private int sent;
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        sent = 0;
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        stepExecution.setWriteCount(stepExecution.getWriteCount() - sent);
+        return null;
+    }
+
+    @Override
+    public void beforeWrite(List<?> items) {
+    }
+
+    @Override
+    public void afterWrite(List<?> items) {
+        sent += items.size();
+    }
+
+    @Override
+    public void onWriteError(Exception exception, List<?> items) {
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.springbatchexample.part3;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.JobScope;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.listener.StepExecutionListenerSupport;
+import org.springframework.batch.core.step.builder.SimpleStepBuilder;
+import org.springframework.batch.integration.chunk.ChunkMessageChannelItemWriter;
+import org.springframework.batch.integration.chunk.ChunkRequest;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.database.JpaItemWriter;
+import org.springframework.batch.item.database.builder.JpaItemWriterBuilder;
+import org.springframework.batch.item.support.CompositeItemWriter;
+import org.springframework.batch.item.support.builder.CompositeItemWriterBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.integration.channel.ExecutorChannel;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.core.MessagingTemplate;
+import org.springframework.integration.dsl.IntegrationFlow;
+import org.springframework.integration.dsl.IntegrationFlows;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.PollableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.Assert;
+
+import javax.persistence.EntityManagerFactory;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+// remote chunking : manager는 파일을 읽어 청크를 요청 채널로 보내고, worker가 중복 체크와 쓰기를 한 뒤 응답 채널로 결과를 돌려준다.
+// worker의 처리 결과(write/filter count)는 step이 끝날 때 manager의 StepExecution에 합산된다.
+// remote-chunking.transport
+//   local(기본값) : 같은 JVM 안의 worker 스레드(remote-chunking.workers 개)가 처리한다.
+//   file : remote-chunking.directory 아래 requests/replies 디렉토리를 큐로 쓴다.
+//          worker JVM은 --spring.batch.job.enabled=false --spring.profiles.active=remote-worker --remote-chunking.transport=file 로 따로 띄운다.
+// 요청/응답 채널만 바꾸면 JMS, AMQP 같은 다른 전송 방식으로 교체할 수 있다.
+@Configuration
+@Slf4j
+@RequiredArgsConstructor
+public class RemoteChunkingConfiguration {
+    private final JobBuilderFactory jobBuilderFactory;
+    private final StepBuilderFactory stepBuilderFactory;
+    private final EntityManagerFactory entityManagerFactory;
+    private final PlatformTransactionManager transactionManager;
+    private final DuplicateKeyIndexRegistry duplicateKeyIndexRegistry;
+
+    @Value("${remote-chunking.transport:local}")
+    private String transport;
+
+    @Value("${remote-chunking.directory:output/remote-chunking}")
+    private String directory;
+
+    @Value("${remote-chunking.workers:4}")
+    private int workers;
+
+    @Value("${remote-chunking.dedup-capacity:1048576}")
+    private int dedupCapacity;
+
+    @Bean
+    public Job taskRemoteChunkingJob() {
+        return this.jobBuilderFactory.get("taskRemoteChunkingJob")
+                .incrementer(new RunIdIncrementer())
+                .start(this.taskRemoteChunkingStep(null, null))
+                .build();
+    }
+
+    // throttleLimit : 응답을 기다리지 않고 보낼 수 있는 청크 수
+    @Bean
+    @JobScope
+    public Step taskRemoteChunkingStep(@Value("#{jobParameters[chunkSize]}") Integer chunkSize,
+                                       @Value("#{jobParameters[throttleLimit] ?: 6}") Long throttleLimit) {
+        MessagingTemplate messagingTemplate = new MessagingTemplate();
+        messagingTemplate.setDefaultChannel(remoteChunkRequests());
+        messagingTemplate.setReceiveTimeout(1000);
+
+        ChunkMessageChannelItemWriter<Person> itemWriter = new ChunkMessageChannelItemWriter<>();
+        itemWriter.setMessagingOperations(messagingTemplate);
+        itemWriter.setReplyChannel(remoteChunkReplies());
+        itemWriter.setThrottleLimit(throttleLimit);
+        // step이 끝난 뒤 남은 응답을 최대 60초(receive timeout * 60) 기다린다.
+        itemWriter.setMaxWaitTimeouts(60);
+
+        SimpleStepBuilder<Person, Person> builder = this.stepBuilderFactory.get("taskRemoteChunkingStep")
+                .<Person, Person>chunk(chunkSize)
+                .reader(csvItemReader())
+                .writer(itemWriter);
+        builder.listener((StepExecutionListener) new RemoteChunkWriteCountListener());
+
+        if (remoteChunkRequests() instanceof FileQueueChannel) {
+            builder.listener(new StepExecutionListenerSupport() {
+                // 이전 실행이 실패하고 남긴 요청/응답은 재시작한 step이 다시 보내므로 버린다. (manager는 하나만 실행한다.)
+                @Override
+                public void beforeStep(StepExecution stepExecution) {
+                    ((FileQueueChannel) remoteChunkRequests()).purge();
+                    ((FileQueueChannel) remoteChunkReplies()).purge();
+                }
+            });
+        }
+
+        return builder.build();
+    }
+
+    @Bean
+    public MessageChannel remoteChunkRequests() {
+        if ("file".equals(transport)) {
+            return new FileQueueChannel(Paths.get(directory, "requests"));
+        }
+        Assert.state("local".equals(transport), "Unknown remote-chunking.transport : " + transport);
+        return new ExecutorChannel(ProcessingTaskExecutors.create("remote-chunk-worker-", workers));
+    }
+
+    // local : 요청 채널의 executor 스레드에서 바로 청크를 처리한다.
+    @Bean
+    @ConditionalOnProperty(name = "remote-chunking.transport", havingValue = "local", matchIfMissing = true)
+    @SuppressWarnings("unchecked")
+    public IntegrationFlow remoteChunkLocalWorkerFlow() {
+        return IntegrationFlows.from(remoteChunkRequests())
+                .handle(message -> remoteChunkReplies().send(MessageBuilder
+                        .withPayload(remoteChunkWorker().handle((ChunkRequest<Person>) message.getPayload()))
+                        .build()))
+                .get();
+    }
+
+    @Bean
+    public PollableChannel remoteChunkReplies() {
+        if ("file".equals(transport)) {
+            return new FileQueueChannel(Paths.get(directory, "replies"));
+        }
+        return new QueueChannel();
+    }
+
+    @Bean
+    public RemoteChunkWorker remoteChunkWorker() {
+        return new RemoteChunkWorker(duplicateKeyIndexRegistry, path -> new HashedKeyIndex(dedupCapacity),
+                remoteChunkItemWriter(), transactionManager);
+    }
+
+    @Bean
+    @Profile("remote-worker")
+    public RemoteChunkWorkerRunner remoteChunkWorkerRunner() {
+        Assert.state(remoteChunkRequests() instanceof PollableChannel,
+                "remote-worker profile needs a pollable request channel (remote-chunking.transport=file)");
+        return new RemoteChunkWorkerRunner((PollableChannel) remoteChunkRequests(), remoteChunkReplies(), remoteChunkWorker(), workers);
+    }
+
+    // worker 스레드에는 step scope가 없으므로 step scope인 compositeItemWriter 대신 같은 구성을 따로 만든다.
+    private ItemWriter<Person> remoteChunkItemWriter() {
+        JpaItemWriter<Person> jpaItemWriter = new JpaItemWriterBuilder<Person>()
+                .entityManagerFactory(entityManagerFactory)
+                .build();
+        ItemWriter<Person> logItemWriter = persons -> log.info("person.size : {}", persons.size());
+
+        CompositeItemWriter<Person> itemWriter = new CompositeItemWriterBuilder<Person>()
+                .delegates(Arrays.asList(jpaItemWriter, logItemWriter))
+                .build();
+
+        return itemWriter;
+    }
+
+    private MappedPersonItemReader csvItemReader() {
+        MappedPersonItemReader itemReader = new MappedPersonItemReader();
+        itemReader.setName("csvFileItemReader");
+        itemReader.setResource(new ClassPathResource("task-input.csv"));
+        //첫번째 라인은 필드명이므로 1줄은 스킵해라
+        itemReader.setLinesToSkip(1);
+        itemReader.setMaxItemCount(100);
+
+        return itemReader;
+    }
+}
@@ -0,0 +1,377 @@
+package com.example.springbatchexample.part3;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.batch.item.file.FlatFileFooterCallback;
+import org.springframework.batch.item.file.FlatFileHeaderCallback;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 파티션(또는 스레드)마다 별도의 segment 파일에 쓰고, step이 끝나면 segment를 하나의 파일로 합치는 writer
+// 한 파일에 쓰는 writer를 동기화해서 공유하는 대신 각자 자기 segment에만 쓰므로 스레드끼리 기다리지 않는다.
+// segment는 Utf8DelimitedItemWriter로 쓰므로 청크 롤백, 파티션 재시작 동작이 같다.
+// 파티션 step : worker step의 writer로 쓰고, manager step에 mergeListener()를 등록한다. 파티션 이름 순서로 합친다.
+// multi-threaded step : segmentPerThread를 켜고 같은 step에 writer와 mergeListener()를 등록한다. slot 번호 순서로 합친다.
+//   청크를 쓰는 스레드는 slot 하나를 빌려 그 slot의 segment에 쓰고, 청크 트랜잭션이 끝나면 slot을 돌려준다.
+//   slot 수는 동시에 쓰는 청크 수를 넘지 않으므로 청크마다 새 스레드를 만드는 executor(virtual thread)에서도 segment 파일이 늘지 않는다.
+// writer 자신이 listener이면 worker step에도 자동으로 등록되므로 listener는 따로 만든다.
+// 합칠 때는 header를 한번 쓰고 segment를 FileChannel.transferTo로 이어 붙인 뒤 footer를 한번 쓴다.
+// segment는 <출력 파일>.segments/<jobInstanceId>/ 아래에 두며, step이 COMPLETED일 때만 합치고 지운다.
+@Slf4j
+public class SegmentedFileItemWriter<T> implements ItemStreamWriter<T> {
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Map<String, Utf8DelimitedItemWriter<T>> segments = new ConcurrentHashMap<>();
+    // 청크를 쓰는 중인 스레드가 빌린 slot. 청크 트랜잭션이 끝나면 지우므로 동시에 쓰는 청크 수만큼만 남는다.
+    private final Map<Thread, Integer> heldSlots = new ConcurrentHashMap<>();
+    private final Queue<Integer> freeSlots = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger slotCount = new AtomicInteger();
+
+    private String name = "segmentedFileItemWriter";
+    private Resource resource;
+    private CompiledFieldExtractor<T> fieldExtractor;
+    private String delimiter = ",";
+    private String lineSeparator = System.lineSeparator();
+    private FlatFileHeaderCallback headerCallback;
+    private FlatFileFooterCallback footerCallback;
+    private boolean segmentPerThread;
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public void setResource(Resource resource) {
+        this.resource = resource;
+    }
+
+    public void setFieldExtractor(CompiledFieldExtractor<T> fieldExtractor) {
+        this.fieldExtractor = fieldExtractor;
+    }
+
+    public void setDelimiter(String delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    public void setLineSeparator(String lineSeparator) {
+        this.lineSeparator = lineSeparator;
+    }
+
+    public void setHeaderCallback(FlatFileHeaderCallback headerCallback) {
+        this.headerCallback = headerCallback;
+    }
+
+    public void setFooterCallback(FlatFileFooterCallback footerCallback) {
+        this.footerCallback = footerCallback;
+    }
+
+    // multi-threaded step에서는 slot마다 segment를 만든다. 이 경우 재시작은 지원하지 않는다.
+    // step이 시작할 때(mergeListener의 beforeStep) 이전 실행의 segment를 지우고 처음부터 다시 쓰므로,
+    // reader도 상태를 저장하지 않도록(saveState(false)) 해서 처음부터 다시 읽어야 한다.
+    public void setSegmentPerThread(boolean segmentPerThread) {
+        this.segmentPerThread = segmentPerThread;
+    }
+
+    // 파티션 step은 자기 ExecutionContext로 segment를 열어서 재시작하면 마지막 커밋 위치부터 이어 쓴다.
+    // 스레드별 segment는 처음 쓸 때 연다.
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        if (!segmentPerThread) {
+            openSegment(currentStepExecution(), segmentName(currentStepExecution()), executionContext);
+        }
+    }
+
+    @Override
+    public void write(List<? extends T> items) throws Exception {
+        StepExecution stepExecution = currentStepExecution();
+        if (!segmentPerThread) {
+            segments.get(segmentName(stepExecution)).write(items);
+            return;
+        }
+
+        boolean acquired = !heldSlots.containsKey(Thread.currentThread());
+        int slot = heldSlots.computeIfAbsent(Thread.currentThread(), thread -> acquireSlot());
+        try {
+            String segmentName = segmentName(stepExecution, slot);
+            Utf8DelimitedItemWriter<T> segment = segments.get(segmentName);
+            if (segment == null) {
+                segment = openSegment(stepExecution, segmentName, new ExecutionContext());
+            }
+            segment.write(items);
+        } finally {
+            if (acquired) {
+                releaseAfterCompletion(stepExecution, slot);
+            }
+        }
+    }
+
+    // 청크가 커밋될 때 그 청크를 쓴 스레드에서 호출되므로 현재 segment만 내보낸다.
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        StepContext context = StepSynchronizationManager.getContext();
+        if (context == null) {
+            return;
+        }
+        if (!segmentPerThread) {
+            Utf8DelimitedItemWriter<T> segment = segments.get(segmentName(context.getStepExecution()));
+            if (segment != null) {
+                segment.update(executionContext);
+            }
+            return;
+        }
+
+        Integer slot = heldSlots.get(Thread.currentThread());
+        Utf8DelimitedItemWriter<T> segment = (slot != null) ? segments.get(segmentName(context.getStepExecution(), slot)) : null;
+        if (segment != null) {
+            segment.update(new ExecutionContext());
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        if (segmentPerThread) {
+            return;
+        }
+        StepContext context = StepSynchronizationManager.getContext();
+        if (context != null) {
+            closeSegment(segmentName(context.getStepExecution()));
+        }
+    }
+
+    // step이 끝나면 segment를 합치는 listener
+    public StepExecutionListener mergeListener() {
+        return new StepExecutionListener() {
+            // slot segment는 이어 쓰지 않으므로 이전 실행이 남긴 segment를 지운다.
+            @Override
+            public void beforeStep(StepExecution stepExecution) {
+                if (segmentPerThread) {
+                    try {
+                        FileSystemUtils.deleteRecursively(getSegmentDirectory(stepExecution));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Unable to clear segments of " + stepExecution.getStepName(), e);
+                    }
+                }
+            }
+
+            @Override
+            public ExitStatus afterStep(StepExecution stepExecution) {
+                return mergeSegments(stepExecution);
+            }
+        };
+    }
+
+    // multi-threaded step은 listener가 stream close보다 먼저 호출되므로 열려 있는 segment를 여기서 닫는다.
+    private ExitStatus mergeSegments(StepExecution stepExecution) {
+        new ArrayList<>(segments.keySet()).forEach(this::closeSegment);
+        heldSlots.clear();
+        freeSlots.clear();
+        slotCount.set(0);
+        if (stepExecution.getStatus() != BatchStatus.COMPLETED) {
+            return null;
+        }
+
+        try {
+            merge(getSegmentDirectory(stepExecution));
+            return null;
+        } catch (IOException | UncheckedIOException e) {
+            log.error("Unable to merge segments into {}", resource, e);
+            return ExitStatus.FAILED.addExitDescription(e);
+        }
+    }
+
+    private int acquireSlot() {
+        Integer slot = freeSlots.poll();
+        return (slot != null) ? slot : slotCount.getAndIncrement();
+    }
+
+    // segment의 롤백 처리(잘라내기)가 끝난 뒤에 다른 스레드가 slot을 쓰도록 write 뒤에 등록한다.
+    // 트랜잭션 밖에서 쓰면 바로 내보내고 돌려준다.
+    private void releaseAfterCompletion(StepExecution stepExecution, int slot) {
+        Thread thread = Thread.currentThread();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            Utf8DelimitedItemWriter<T> segment = segments.get(segmentName(stepExecution, slot));
+            if (segment != null) {
+                segment.update(new ExecutionContext());
+            }
+            releaseSlot(thread, slot);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                releaseSlot(thread, slot);
+            }
+        });
+    }
+
+    private void releaseSlot(Thread thread, int slot) {
+        heldSlots.remove(thread);
+        freeSlots.add(slot);
+    }
+
+    private Utf8DelimitedItemWriter<T> openSegment(StepExecution stepExecution, String segmentName, ExecutionContext executionContext) {
+        Utf8DelimitedItemWriter<T> segment = new Utf8DelimitedItemWriter<>();
+        segment.setName(name);
+        segment.setResource(new FileSystemResource(getSegmentDirectory(stepExecution).resolve(segmentName + SEGMENT_SUFFIX)));
+        segment.setFieldExtractor(fieldExtractor);
+        segment.setDelimiter(delimiter);
+        segment.setLineSeparator(lineSeparator);
+        segment.open(executionContext);
+        segments.put(segmentName, segment);
+        return segment;
+    }
+
+    private void closeSegment(String segmentName) {
+        Utf8DelimitedItemWriter<T> segment = segments.remove(segmentName);
+        if (segment != null) {
+            segment.close();
+        }
+    }
+
+    // header + segment(이름 순) + footer를 임시 파일에 쓰고 출력 파일로 옮긴다.
+    private void merge(Path segmentDirectory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(segmentDirectory)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(segmentDirectory, "*" + SEGMENT_SUFFIX)) {
+                stream.forEach(files::add);
+            }
+        }
+        files.sort((left, right) -> compareNatural(left.getFileName().toString(), right.getFileName().toString()));
+
+        Path output = resource.getFile().toPath().toAbsolutePath();
+        Files.createDirectories(output.getParent());
+        Path temporary = output.resolveSibling(output.getFileName() + ".tmp");
+        long bytes = 0;
+        try (FileChannel target = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            if (headerCallback != null) {
+                StringWriter header = new StringWriter();
+                headerCallback.writeHeader(header);
+                bytes += writeFully(target, header + lineSeparator);
+            }
+            for (Path file : files) {
+                try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+                    long size = source.size();
+                    for (long position = 0; position < size; ) {
+                        position += source.transferTo(position, size - position, target);
+                    }
+                    bytes += size;
+                }
+            }
+            if (footerCallback != null) {
+                StringWriter footer = new StringWriter();
+                footerCallback.writeFooter(footer);
+                bytes += writeFully(target, footer.toString());
+            }
+        }
+        Files.move(temporary, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        FileSystemUtils.deleteRecursively(segmentDirectory);
+        // 다른 job instance의 segment가 남아 있으면 상위 디렉토리는 지우지 않는다.
+        try {
+            Files.deleteIfExists(segmentDirectory.getParent());
+        } catch (DirectoryNotEmptyException e) {
+            log.debug("segments of other job instances remain in {}", segmentDirectory.getParent());
+        }
+        log.info("merged {} segments into {} : {} bytes", files.size(), output, bytes);
+    }
+
+    private static long writeFully(FileChannel channel, String value) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+        long written = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        return written;
+    }
+
+    private Path getSegmentDirectory(StepExecution stepExecution) {
+        try {
+            Path output = resource.getFile().toPath().toAbsolutePath();
+            return output.resolveSibling(output.getFileName() + ".segments")
+                    .resolve(String.valueOf(stepExecution.getJobExecution().getJobInstance().getInstanceId()));
+        } catch (IOException e) {
+            throw new ItemStreamException("Resource must be a file in the file system: " + resource, e);
+        }
+    }
+
+    // 파티션 worker의 step 이름(step:partitionN)은 재시작해도 같으므로 segment 이름으로 쓴다.
+    private String segmentName(StepExecution stepExecution) {
+        return stepExecution.getStepName().replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    private String segmentName(StepExecution stepExecution, int slot) {
+        return segmentName(stepExecution) + "-" + slot;
+    }
+
+    private static StepExecution currentStepExecution() {
+        StepContext context = StepSynchronizationManager.getContext();
+        if (context == null) {
+            throw new ItemStreamException("SegmentedFileItemWriter must be used inside a step");
+        }
+        return context.getStepExecution();
+    }
+
+    // partition2가 partition10보다 앞에 오도록 숫자 부분은 숫자로 비교한다.
+    private static int compareNatural(String left, String right) {
+        int i = 0;
+        int j = 0;
+        while (i < left.length() && j < right.length()) {
+            char a = left.charAt(i);
+            char b = right.charAt(j);
+            if (Character.isDigit(a) && Character.isDigit(b)) {
+                int leftEnd = i;
+                int rightEnd = j;
+                while (leftEnd < left.length() && Character.isDigit(left.charAt(leftEnd))) {
+                    leftEnd++;
+                }
+                while (rightEnd < right.length() && Character.isDigit(right.charAt(rightEnd))) {
+                    rightEnd++;
+                }
+                int result = new BigInteger(left.substring(i, leftEnd)).compareTo(new BigInteger(right.substring(j, rightEnd)));
+                if (result != 0) {
+                    return result;
+                }
+                i = leftEnd;
+                j = rightEnd;
+            } else {
+                if (a != b) {
+                    return Character.compare(a, b);
+                }
+                i++;
+                j++;
+            }
+        }
+        return Integer.compare(left.length() - i, right.length() - j);
+    }
+}
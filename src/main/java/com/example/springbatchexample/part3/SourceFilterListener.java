@@ -0,0 +1,50 @@
+package com.example.springbatchexample.part3;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.function.LongSupplier;
+
+// reader에서 걸러낸 행 수(processor까지 오지 않아서 filterCount에 잡히지 않는 수)를 step이 끝날 때 로그로 남기고
+// step ExecutionContext에 "source.filtered.count"로 저장한다.
+// 스트림의 close는 afterStep 다음에 호출되므로 reader가 센 값을 그대로 읽을 수 있다.
+@Slf4j
+public class SourceFilterListener implements StepExecutionListener {
+    public static final String SOURCE_FILTERED_COUNT = "source.filtered.count";
+
+    private final LongSupplier filteredCount;
+
+    public SourceFilterListener(LongSupplier filteredCount) {
+        this.filteredCount = filteredCount;
+    }
+
+    // 토큰 단계에서 걸러낸 줄 수
+    public static SourceFilterListener of(MappedPersonItemReader itemReader) {
+        return new SourceFilterListener(itemReader::getFilteredCount);
+    }
+
+    // where 절로 걸러낸 행 수. DB는 걸러낸 행을 돌려주지 않으므로 step이 끝난 뒤 같은 조건으로 한번 더 센다.
+    public static SourceFilterListener of(DataSource dataSource, String table, PersonPredicate filter) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        String sql = "select count(*) - count(case when " + filter.sql() + " then 1 end) from " + table;
+        return new SourceFilterListener(() -> jdbcTemplate.queryForObject(sql, Long.class, filter.sqlParameters().toArray()));
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        long count = filteredCount.getAsLong();
+        stepExecution.getExecutionContext().putLong(SOURCE_FILTERED_COUNT, count);
+        log.info("{} : read {}, filtered at source {}, filtered by processor {}", stepExecution.getStepName(),
+                stepExecution.getReadCount(), count, stepExecution.getFilterCount());
+
+        return null;
+    }
+}
@@ -0,0 +1,268 @@
+package com.example.springbatchexample.part3;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+// 메모리에는 memoryEntries 개까지만 해시를 들고 있고, 가득 차면 정렬해서 디스크의 run 파일로 내보낸다.
+// run 파일은 memory-map 해서 이진 탐색하고, run이 maxRuns 개를 넘으면 하나로 병합한다.
+// run 파일은 고칠 수 없으므로 이미 내보낸 key를 remove()하면 따로 기억해 두고 찾을 때 빼며, 다음 병합에서 버린다.
+// key 대신 해시를 비교하므로 해시가 충돌한 다른 key는 이미 있는 것으로 본다. (DuplicateKeyIndex 참고)
+@Slf4j
+public class SpillableKeyIndex implements DuplicateKeyIndex {
+    private final HashedKeyIndex memory;
+    private final Path directory;
+    private final int maxRuns;
+    private final List<Run> runs = new ArrayList<>();
+    // run 파일에 있지만 지운 key. 커밋되지 않은 청크의 key뿐이므로 많지 않다.
+    private final Set<Long> removedFromRuns = new HashSet<>();
+    private int runSequence;
+
+    public SpillableKeyIndex(int memoryEntries, Path spillDirectory, int maxRuns) {
+        try {
+            this.memory = new HashedKeyIndex(memoryEntries);
+            this.directory = Files.createTempDirectory(Files.createDirectories(spillDirectory), "spill-");
+            this.maxRuns = maxRuns;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized boolean add(long hash, String key) {
+        if (contains(hash)) {
+            return false;
+        }
+        // 지웠던 key가 다시 오면 run 파일에 있는 값을 되살린다.
+        if (removedFromRuns.remove(hash)) {
+            return true;
+        }
+        if (memory.isFull()) {
+            spill();
+        }
+        return memory.add(hash, key);
+    }
+
+    @Override
+    public void restore(long hash) {
+        add(hash, null);
+    }
+
+    @Override
+    public synchronized boolean remove(long hash) {
+        if (memory.remove(hash)) {
+            return true;
+        }
+        return inRuns(hash) && removedFromRuns.add(hash);
+    }
+
+    // 없는 것이 확실한 key를 찾아보지 않고 추가한다. (BloomFilterKeyIndex가 처음 보는 key)
+    public synchronized void append(long hash) {
+        if (memory.isFull()) {
+            spill();
+        }
+        memory.add(hash, null);
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Run run : runs) {
+            run.delete();
+        }
+        runs.clear();
+        removedFromRuns.clear();
+        try {
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            log.warn("Unable to delete spill directory {}", directory, e);
+        }
+    }
+
+    private boolean contains(long hash) {
+        if (memory.contains(hash)) {
+            return true;
+        }
+        return inRuns(hash) && !removedFromRuns.contains(hash);
+    }
+
+    private boolean inRuns(long hash) {
+        for (Run run : runs) {
+            if (run.contains(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void spill() {
+        long[] values = memory.toArray();
+        Arrays.sort(values);
+        runs.add(writeRun(values.length, new ArrayCursor(values)));
+        memory.clear();
+
+        if (runs.size() > maxRuns) {
+            merge();
+        }
+    }
+
+    // 정렬된 run들을 k-way 병합해서 하나의 run으로 만든다. 지운 key는 이 때 버린다.
+    private void merge() {
+        PriorityQueue<RunCursor> queue = new PriorityQueue<>((a, b) -> Long.compare(a.current(), b.current()));
+        long total = 0;
+        for (Run run : runs) {
+            RunCursor cursor = new RunCursor(run.values);
+            if (cursor.hasNext()) {
+                cursor.next();
+                queue.add(cursor);
+            }
+            total += run.values.limit();
+        }
+
+        Run merged = writeRun(total, new Cursor() {
+            @Override
+            public boolean hasNext() {
+                while (!queue.isEmpty() && removedFromRuns.contains(queue.peek().current())) {
+                    poll();
+                }
+                return !queue.isEmpty();
+            }
+
+            @Override
+            public long next() {
+                return poll();
+            }
+
+            private long poll() {
+                RunCursor cursor = queue.poll();
+                long value = cursor.current();
+                if (cursor.hasNext()) {
+                    cursor.next();
+                    queue.add(cursor);
+                }
+                return value;
+            }
+        });
+
+        for (Run run : runs) {
+            run.delete();
+        }
+        runs.clear();
+        runs.add(merged);
+        removedFromRuns.clear();
+
+        log.debug("merged spill runs into {} ({} keys)", merged.file, merged.values.limit());
+    }
+
+    private Run writeRun(long count, Cursor values) {
+        Path file = directory.resolve("run-" + (runSequence++) + ".idx");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024))) {
+            for (long i = 0; i < count && values.hasNext(); i++) {
+                out.writeLong(values.next());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write spill run " + file, e);
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            LongBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asLongBuffer();
+            return new Run(file, mapped);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to map spill run " + file, e);
+        }
+    }
+
+    private interface Cursor {
+        boolean hasNext();
+
+        long next();
+    }
+
+    private static class ArrayCursor implements Cursor {
+        private final long[] values;
+        private int index;
+
+        ArrayCursor(long[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < values.length;
+        }
+
+        @Override
+        public long next() {
+            return values[index++];
+        }
+    }
+
+    private static class RunCursor {
+        private final LongBuffer values;
+        private int index = -1;
+
+        RunCursor(LongBuffer values) {
+            this.values = values;
+        }
+
+        boolean hasNext() {
+            return index + 1 < values.limit();
+        }
+
+        void next() {
+            index++;
+        }
+
+        long current() {
+            return values.get(index);
+        }
+    }
+
+    private static class Run {
+        private final Path file;
+        private final LongBuffer values;
+
+        Run(Path file, LongBuffer values) {
+            this.file = file;
+            this.values = values;
+        }
+
+        boolean contains(long hash) {
+            int low = 0;
+            int high = values.limit() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long value = values.get(mid);
+                if (value < hash) {
+                    low = mid + 1;
+                } else if (value > hash) {
+                    high = mid - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void delete() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Unable to delete spill run {}", file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.springbatchexample.part3;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.scope.ScopedObject;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// 종류가 적은 문자열 컬럼(name, age, address 등)을 읽을 때 같은 값이면 같은 String 객체를 돌려준다.
+// 새로 만든 String은 바로 버려지므로 청크 버퍼, localRepo, 영속성 컨텍스트에는 값마다 하나의 String만 남는다.
+// maxSize 개까지만 담고, 가득 차면 더 넣지 않고 받은 값을 그대로 돌려준다. maxSize가 0이면 아무것도 하지 않는다.
+// maxLength보다 긴 값은 종류가 많을 가능성이 높으므로 담지 않는다.
+// 여러 스레드에서 동시에 사용해도 된다. (multi-threaded step)
+// step이 끝나면 hit 비율을 로그로 남기고 step ExecutionContext에 저장한다. step scope로 만들어서 step마다 새로 시작한다.
+@Slf4j
+public class StringDictionary implements StepExecutionListener {
+    public static final String HITS = "dictionary.hits";
+    public static final String MISSES = "dictionary.misses";
+    public static final String SIZE = "dictionary.size";
+    private static final int DEFAULT_MAX_LENGTH = 64;
+
+    private final int maxSize;
+    private final int maxLength;
+    private final Map<String, String> values = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public StringDictionary(int maxSize) {
+        this(maxSize, DEFAULT_MAX_LENGTH);
+    }
+
+    public StringDictionary(int maxSize, int maxLength) {
+        this.maxSize = maxSize;
+        this.maxLength = maxLength;
+    }
+
+    // step scope 프록시는 호출할 때마다 scope에서 대상을 찾는다. 필드마다 호출하는 쪽은 step을 시작할 때 한번 꺼내 둔다.
+    // 사용하지 않는 사전(maxSize 0)이면 null을 리턴하므로 호출하는 쪽은 canonicalize를 건너뛴다.
+    public static StringDictionary resolve(StringDictionary dictionary) {
+        if (dictionary instanceof ScopedObject) {
+            dictionary = (StringDictionary) ((ScopedObject) dictionary).getTargetObject();
+        }
+        return (dictionary != null && dictionary.maxSize > 0) ? dictionary : null;
+    }
+
+    public String canonicalize(String value) {
+        if (maxSize <= 0 || value == null || value.length() > maxLength) {
+            return value;
+        }
+
+        String canonical = values.get(value);
+        if (canonical != null) {
+            hits.increment();
+            return canonical;
+        }
+        misses.increment();
+
+        // 자리를 먼저 잡고 넣는다. 다른 스레드가 같은 값을 먼저 넣었으면 자리를 돌려준다.
+        if (size.get() < maxSize) {
+            if (size.incrementAndGet() <= maxSize) {
+                canonical = values.putIfAbsent(value, value);
+                if (canonical == null) {
+                    return value;
+                }
+            }
+            size.decrementAndGet();
+        }
+        return (canonical != null) ? canonical : value;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return (total == 0) ? 0 : (double) hitCount / total;
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        if (maxSize <= 0) {
+            return null;
+        }
+
+        stepExecution.getExecutionContext().putLong(HITS, getHits());
+        stepExecution.getExecutionContext().putLong(MISSES, getMisses());
+        stepExecution.getExecutionContext().putInt(SIZE, size());
+        log.info("{} : string dictionary hit rate {}% ({} hits, {} misses, {}/{} entries)", stepExecution.getStepName(),
+                String.format("%.1f", getHitRate() * 100), getHits(), getMisses(), size(), maxSize);
+
+        return null;
+    }
+}
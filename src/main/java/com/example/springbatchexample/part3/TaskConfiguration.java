@@ -4,31 +4,35 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecutionListener;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
-import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.integration.async.AsyncItemProcessor;
+import org.springframework.batch.integration.async.AsyncItemWriter;
 import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
 import org.springframework.batch.item.database.JpaItemWriter;
 import org.springframework.batch.item.database.builder.JpaItemWriterBuilder;
-import org.springframework.batch.item.file.FlatFileItemReader;
-import org.springframework.batch.item.file.builder.FlatFileItemReaderBuilder;
-import org.springframework.batch.item.file.mapping.DefaultLineMapper;
-import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
+import org.springframework.batch.item.support.CompositeItemProcessor;
 import org.springframework.batch.item.support.CompositeItemWriter;
+import org.springframework.batch.item.support.PassThroughItemProcessor;
+import org.springframework.batch.item.support.builder.CompositeItemProcessorBuilder;
 import org.springframework.batch.item.support.builder.CompositeItemWriterBuilder;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
 
 import javax.persistence.EntityManagerFactory;
+import java.nio.file.Paths;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -36,30 +40,248 @@ import java.util.stream.Stream;
 @Slf4j
 @RequiredArgsConstructor
 public class TaskConfiguration {
+    private static final String DEDUP_OUTPUT = "output/task-input-dedup.csv";
+
     private final JobBuilderFactory jobBuilderFactory;
     private final StepBuilderFactory stepBuilderFactory;
     private final EntityManagerFactory entityManagerFactory;
-    private Map<String, Person> localRepo = new ConcurrentHashMap<>();
 
     @Bean
     public Job taskJob() throws Exception {
         return this.jobBuilderFactory.get("taskJob")
                 .incrementer(new RunIdIncrementer())
-                .start(this.taskStep(null, null))
+                .listener(duplicateKeyIndexRegistry())
+                .start(this.taskStep(null, null, null, null))
+                .build();
+    }
+
+    @Bean
+    @JobScope
+    public Step taskStep(@Value("#{jobParameters[chunkSize]}") Integer chunkSize,
+                         @Value("#{jobParameters[targetCommitMillis]}") Long targetCommitMillis,
+                         @Value("#{jobParameters[minChunkSize]}") Integer minChunkSize,
+                         @Value("#{jobParameters[maxChunkSize]}") Integer maxChunkSize) throws Exception {
+        return AdaptiveChunkSizePolicy.<Person, Person>chunk(this.stepBuilderFactory.get("taskStep"),
+                        chunkSize, targetCommitMillis, minChunkSize, maxChunkSize)
+                .reader(csvItemReader(personDictionary(null)))
+                .processor(duplicateCheckProcessor(null, null, null))
+                .writer(compositeItemWriter())
+                .listener(personDictionary(null))
+                .build();
+    }
+
+    // taskInputBinaryJob이 쓴 output/task-input.bin을 읽어서 taskJob과 같이 처리한다.
+    // CSV를 쓰고 다시 파싱하는 대신 바이너리 레코드를 그대로 읽는다.
+    @Bean
+    public Job taskBinaryJob() throws Exception {
+        return this.jobBuilderFactory.get("taskBinaryJob")
+                .incrementer(new RunIdIncrementer())
+                .listener(duplicateKeyIndexRegistry())
+                .start(this.taskBinaryStep(null, null, null, null))
+                .build();
+    }
+
+    @Bean
+    @JobScope
+    public Step taskBinaryStep(@Value("#{jobParameters[chunkSize]}") Integer chunkSize,
+                               @Value("#{jobParameters[targetCommitMillis]}") Long targetCommitMillis,
+                               @Value("#{jobParameters[minChunkSize]}") Integer minChunkSize,
+                               @Value("#{jobParameters[maxChunkSize]}") Integer maxChunkSize) throws Exception {
+        return AdaptiveChunkSizePolicy.<Person, Person>chunk(this.stepBuilderFactory.get("taskBinaryStep"),
+                        chunkSize, targetCommitMillis, minChunkSize, maxChunkSize)
+                .reader(binaryItemReader())
+                .processor(duplicateCheckProcessor(null, null, null))
+                .writer(compositeItemWriter())
+                .build();
+    }
+
+    // processor를 asyncConcurrency 개의 스레드(Java 21 이상은 virtual thread)에 나누어 실행한다.
+    // 중복 체크는 청크 스레드에서 읽은 순서대로 먼저 하므로 taskStep과 같은 item이 남는다. 나머지 처리만 비동기로 실행한다.
+    // writer는 청크 트랜잭션 안에서 입력 순서대로 Future의 결과를 기다려 쓰므로 쓰는 순서와 커밋 단위는 그대로다.
+    @Bean
+    public Job taskAsyncJob() throws Exception {
+        return this.jobBuilderFactory.get("taskAsyncJob")
+                .incrementer(new RunIdIncrementer())
+                .listener(duplicateKeyIndexRegistry())
+                .start(this.taskAsyncStep(null, null))
+                .build();
+    }
+
+    @Bean
+    @JobScope
+    public Step taskAsyncStep(@Value("#{jobParameters[chunkSize]}") Integer chunkSize,
+                              @Value("#{jobParameters[asyncConcurrency]}") Integer asyncConcurrency) throws Exception {
+        DuplicateCheckProcessor processor = duplicateCheckProcessor(null, null, null);
+
+        // 중복 체크 뒤의 처리(조회 등)가 생기면 이 delegate에서 실행한다.
+        AsyncItemProcessor<Person, Person> asyncItemProcessor = new AsyncItemProcessor<>();
+        asyncItemProcessor.setDelegate(new PassThroughItemProcessor<>());
+        asyncItemProcessor.setTaskExecutor(ProcessingTaskExecutors.create("task-async-",
+                (asyncConcurrency != null) ? asyncConcurrency : Runtime.getRuntime().availableProcessors()));
+        asyncItemProcessor.afterPropertiesSet();
+
+        AsyncItemWriter<Person> asyncItemWriter = new AsyncItemWriter<>();
+        asyncItemWriter.setDelegate(compositeItemWriter());
+        asyncItemWriter.afterPropertiesSet();
+
+        // 중복으로 걸러진 item은 async processor로 넘어가지 않고 filterCount에 집계된다.
+        CompositeItemProcessor<Person, Future<Person>> compositeItemProcessor = new CompositeItemProcessorBuilder<Person, Future<Person>>()
+                .delegates(processor, asyncItemProcessor)
+                .build();
+
+        // CompositeItemProcessor로 감싸면 processor가 ItemStream, StepExecutionListener로 자동 등록되지 않으므로 직접 등록한다.
+        return this.stepBuilderFactory.get("taskAsyncStep")
+                .<Person, Future<Person>>chunk(chunkSize)
+                .reader(csvItemReader(personDictionary(null)))
+                .processor(compositeItemProcessor)
+                .writer(asyncItemWriter)
+                .stream(processor)
+                .listener((StepExecutionListener) processor)
+                .listener(personDictionary(null))
+                .build();
+    }
+
+    // task-input.csv를 threads 개의 스레드가 blockSize 바이트 블록씩 나누어 차지하며 읽는다.
+    // 모든 read()가 하나의 락을 기다리는 SynchronizedItemStreamReader 대신 BlockClaimingPersonItemReader를 사용한다.
+    // taskStep과 같은 중복 체크를 하므로 남는 이름의 집합은 같다.
+    // 다만 블록을 읽는 순서가 스레드 타이밍에 따라 달라지므로, 같은 이름이 여러 줄에 있으면 어느 줄이 남는지는 실행마다 다를 수 있다.
+    @Bean
+    public Job taskMultiThreadJob() throws Exception {
+        return this.jobBuilderFactory.get("taskMultiThreadJob")
+                .incrementer(new RunIdIncrementer())
+                .listener(duplicateKeyIndexRegistry())
+                .start(this.taskMultiThreadStep(null, null, null))
+                .build();
+    }
+
+    @Bean
+    @JobScope
+    public Step taskMultiThreadStep(@Value("#{jobParameters[chunkSize] ?: 10}") Integer chunkSize,
+                                    @Value("#{jobParameters[threads] ?: 4}") Integer threads,
+                                    @Value("#{jobParameters[blockSize] ?: 1048576}") Integer blockSize) throws Exception {
+        BlockClaimingPersonItemReader itemReader = new BlockClaimingPersonItemReader();
+        itemReader.setName("blockClaimingItemReader");
+        itemReader.setResource(new ClassPathResource("task-input.csv"));
+        itemReader.setLinesToSkip(1);
+        itemReader.setComments("---");
+        itemReader.setBlockSize(blockSize);
+        itemReader.setDictionary(personDictionary(null));
+
+        return this.stepBuilderFactory.get("taskMultiThreadStep")
+                .<Person, Person>chunk(chunkSize)
+                .reader(itemReader)
+                .processor(duplicateCheckProcessor(null, null, null))
+                .writer(compositeItemWriter())
+                .listener(personDictionary(null))
+                .taskExecutor(ProcessingTaskExecutors.create("task-thread-", threads))
+                .throttleLimit(threads)
+                .build();
+    }
+
+    // task-input.csv의 중복된 이름을 정렬로 걸러서 output/task-input-dedup.csv에 쓴 다음(externalDedupStep),
+    // 그 파일을 중복 체크 processor 없이 처리한다. 이름 색인을 메모리에 두지 않으므로 이름의 종류가 heap보다 많아도 된다.
+    @Bean
+    public Job taskExternalDedupJob() throws Exception {
+        return this.jobBuilderFactory.get("taskExternalDedupJob")
+                .incrementer(new RunIdIncrementer())
+                .start(this.externalDedupStep(null, null))
+                .next(this.taskExternalDedupStep(null))
+                .build();
+    }
+
+    // runSize : 메모리에서 정렬해서 run 파일로 내보내는 항목 수
+    // fanIn : 한번에 merge 하는 run 파일 수
+    @Bean
+    @JobScope
+    public Step externalDedupStep(@Value("#{jobParameters[runSize] ?: 1000000}") Integer runSize,
+                                  @Value("#{jobParameters[fanIn] ?: 64}") Integer fanIn) {
+        ExternalSortDedupTasklet tasklet = new ExternalSortDedupTasklet(new ClassPathResource("task-input.csv"),
+                Paths.get(DEDUP_OUTPUT), Paths.get("output", "dedup-sort"));
+        tasklet.setRunSize(runSize);
+        tasklet.setFanIn(fanIn);
+        tasklet.setLinesToSkip(1);
+        tasklet.setComments("---");
+
+        return this.stepBuilderFactory.get("externalDedupStep")
+                .tasklet(tasklet)
                 .build();
     }
 
     @Bean
     @JobScope
-    public Step taskStep(@Value("#{jobParameters[chunkSize]}") Integer chunkSize, @Value("#{jobParameters[allowDuplicate]}") Boolean allowDuplicate) throws Exception {
-        return this.stepBuilderFactory.get("taskStep")
+    public Step taskExternalDedupStep(@Value("#{jobParameters[chunkSize] ?: 10}") Integer chunkSize) throws Exception {
+        MappedPersonItemReader itemReader = new MappedPersonItemReader();
+        itemReader.setName("dedupFileItemReader");
+        itemReader.setResource(new FileSystemResource(DEDUP_OUTPUT));
+        itemReader.setLinesToSkip(1);
+        itemReader.setComments("---");
+
+        return this.stepBuilderFactory.get("taskExternalDedupStep")
                 .<Person, Person>chunk(chunkSize)
-                .reader(csvItemReader())
-                .processor(duplicateCheckProcessor(allowDuplicate))
+                .reader(itemReader)
                 .writer(compositeItemWriter())
                 .build();
     }
 
+    // task-input.csv를 줄 단위로 정렬된 바이트 구간으로 나누어 gridSize 개의 worker step이 병렬로 처리한다.
+    @Bean
+    public Job taskPartitionJob() throws Exception {
+        return this.jobBuilderFactory.get("taskPartitionJob")
+                .incrementer(new RunIdIncrementer())
+                .listener(duplicateKeyIndexRegistry())
+                .start(this.taskPartitionStep(null, null))
+                .build();
+    }
+
+    @Bean
+    @JobScope
+    public Step taskPartitionStep(@Value("#{jobParameters[gridSize]}") Integer gridSize,
+                                  @Value("#{jobParameters[chunkSize]}") Integer chunkSize) throws Exception {
+        int partitionCount = (gridSize != null) ? gridSize : Runtime.getRuntime().availableProcessors();
+
+        return this.stepBuilderFactory.get("taskPartitionStep")
+                .partitioner("taskWorkerStep", new LineRangePartitioner(new ClassPathResource("task-input.csv"), 1))
+                .step(taskWorkerStep(chunkSize))
+                .gridSize(partitionCount)
+                .taskExecutor(partitionTaskExecutor(partitionCount))
+                .build();
+    }
+
+    // worker step은 파티션 별 스레드에서 실행되므로 job scope 프록시가 아닌 실제 객체로 넘긴다.
+    private Step taskWorkerStep(Integer chunkSize) throws Exception {
+        return this.stepBuilderFactory.get("taskWorkerStep")
+                .<Person, Person>chunk(chunkSize)
+                .reader(this.rangeItemReader(null, null))
+                .processor(duplicateCheckProcessor(null, null, null))
+                .writer(compositeItemWriter())
+                .listener(personDictionary(null))
+                .build();
+    }
+
+    // 파티션 별로 partitioner가 넣어준 구간 정보를 stepExecutionContext에서 꺼내 쓴다.
+    @Bean
+    @StepScope
+    public MappedPersonItemReader rangeItemReader(@Value("#{stepExecutionContext[startOffset]}") Long startOffset, @Value("#{stepExecutionContext[endOffset]}") Long endOffset) {
+        MappedPersonItemReader itemReader = new MappedPersonItemReader();
+        itemReader.setName("rangeItemReader");
+        itemReader.setResource(new ClassPathResource("task-input.csv"));
+        itemReader.setDictionary(personDictionary(null));
+        // 구간은 헤더 뒤에서 시작하므로 linesToSkip은 지정하지 않는다.
+        itemReader.setStartOffset(startOffset);
+        itemReader.setEndOffset(endOffset);
+        // 파일 마지막의 footer 줄은 건너뛴다.
+        itemReader.setComments("---");
+
+        return itemReader;
+    }
+
+    private TaskExecutor partitionTaskExecutor(int concurrencyLimit) {
+        SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("task-partition-");
+        taskExecutor.setConcurrencyLimit(concurrencyLimit);
+
+        return taskExecutor;
+    }
+
     @Bean
     public ItemWriter<Person> compositeItemWriter() throws Exception {
         List<ItemWriter<? super Person>> writers = Stream.of(
@@ -94,49 +316,61 @@ public class TaskConfiguration {
         return itemWriter;
     }
 
-    private ItemProcessor<Person, Person> duplicateCheckProcessor(boolean allowDuplicate) {
-        return person -> {
-          if(allowDuplicate == true) {
-              return person;
-          }
-          else {
-              if(localRepo.get(person.getName()) != null) {
-                  return null;
-              }
-              else {
-                  localRepo.put(person.getName(), person);
-                  return person;
-              }
-          }
-        };
-    }
-
-    private ItemReader<Person> csvItemReader() throws Exception {
-        DefaultLineMapper<Person> lineMapper = new DefaultLineMapper<>();
-        DelimitedLineTokenizer tokenizer = new DelimitedLineTokenizer();
-        tokenizer.setNames("id", "name", "age", "address");
-        lineMapper.setLineTokenizer(tokenizer);
-
-        lineMapper.setFieldSetMapper(fieldSet -> {
-            int id = fieldSet.readInt("id");
-            String name = fieldSet.readString("name");
-            String age = fieldSet.readString("age");
-            String address = fieldSet.readString("address");
-
-            return new Person(id, name, age, address);
-        });
-
-        FlatFileItemReader<Person> itemReader = new FlatFileItemReaderBuilder<Person>()
-                .name("csvFileItemReader")
-                .encoding("UTF-8")
-                .resource(new ClassPathResource("task-input.csv"))
-                //첫번째 라인은 필드명이므로 1줄은 스킵해라
-                .linesToSkip(1)
-                .maxItemCount(100)
-                .lineMapper(lineMapper)
-                .build();
-        // itemReader에서 필수 항목이 정상적으로 설정되었는지 확인하는 메서드
-        itemReader.afterPropertiesSet();
+    // 파티션 worker 마다 별도의 processor가 만들어지지만 색인은 job execution 단위로 공유된다.
+    // dedupIndex : hashed(기본값) | bloom | spill
+    @Bean
+    @StepScope
+    public DuplicateCheckProcessor duplicateCheckProcessor(@Value("#{jobParameters[allowDuplicate]}") Boolean allowDuplicate,
+                                                           @Value("#{jobParameters[dedupIndex] ?: 'hashed'}") String indexType,
+                                                           @Value("#{jobParameters[dedupCapacity] ?: 1048576}") Integer capacity) {
+        return new DuplicateCheckProcessor(duplicateKeyIndexRegistry(), duplicateKeyIndexFactory(indexType, capacity), Boolean.TRUE.equals(allowDuplicate));
+    }
+
+    // 읽으면서 name, age, address를 canonicalize 하는 step 단위 사전. 파티션 worker는 각자의 사전을 사용한다.
+    // dictionarySize : 사전에 담을 최대 문자열 수 (기본값 0 : 사용하지 않음)
+    @Bean
+    @StepScope
+    public StringDictionary personDictionary(@Value("#{jobParameters[dictionarySize] ?: 0}") Integer dictionarySize) {
+        return new StringDictionary(dictionarySize);
+    }
+
+    @Bean
+    public DuplicateKeyIndexRegistry duplicateKeyIndexRegistry() {
+        return new DuplicateKeyIndexRegistry(Paths.get("output", "dedup"));
+    }
+
+    private DuplicateKeyIndexRegistry.IndexFactory duplicateKeyIndexFactory(String indexType, int capacity) {
+        switch (indexType) {
+            case "hashed":
+                return directory -> new HashedKeyIndex(capacity);
+            case "bloom":
+                // bloom filter가 "있을 수도 있음"이라고 하면 이 job execution이 등록한 key의 spill 색인에서 한번 더 확인한다.
+                // spill 색인은 메모리에 capacity / 8 개까지만 들고 나머지는 디스크로 내보낸다.
+                return directory -> new BloomFilterKeyIndex(capacity, 0.01,
+                        new SpillableKeyIndex(Math.max(1024, capacity / 8), directory, 8));
+            case "spill":
+                return directory -> new SpillableKeyIndex(capacity, directory, 8);
+            default:
+                throw new IllegalArgumentException("Unknown dedupIndex : " + indexType);
+        }
+    }
+
+    private ItemReader<Person> csvItemReader(StringDictionary dictionary) throws Exception {
+        MappedPersonItemReader itemReader = new MappedPersonItemReader();
+        itemReader.setDictionary(dictionary);
+        itemReader.setName("csvFileItemReader");
+        itemReader.setResource(new ClassPathResource("task-input.csv"));
+        //첫번째 라인은 필드명이므로 1줄은 스킵해라
+        itemReader.setLinesToSkip(1);
+        itemReader.setMaxItemCount(100);
+
+        return itemReader;
+    }
+
+    private ItemReader<Person> binaryItemReader() {
+        PersonBinaryItemReader itemReader = new PersonBinaryItemReader();
+        itemReader.setName("binaryFileItemReader");
+        itemReader.setResource(new FileSystemResource(TaskInputConfiguration.BINARY_OUTPUT));
 
         return itemReader;
     }
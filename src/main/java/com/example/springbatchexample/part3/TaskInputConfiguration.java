@@ -10,10 +10,6 @@ import org.springframework.batch.core.configuration.annotation.StepBuilderFactor
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
-import org.springframework.batch.item.file.FlatFileItemWriter;
-import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -26,6 +22,8 @@ import java.util.List;
 @Slf4j
 @RequiredArgsConstructor
 public class TaskInputConfiguration {
+    static final String BINARY_OUTPUT = "output/task-input.bin";
+
     private final JobBuilderFactory jobBuilderFactory;
     private final StepBuilderFactory stepBuilderFactory;
 
@@ -33,38 +31,101 @@ public class TaskInputConfiguration {
     public Job taskInputJob() throws Exception {
         return this.jobBuilderFactory.get("taskInputJob")
                 .incrementer(new RunIdIncrementer())
-                .start(this.taskInputStep(null))
+                .start(this.taskInputStep(null, null, null, null))
                 .build();
     }
 
     @Bean
     @JobScope
-    public Step taskInputStep(@Value("#{jobParameters[chunkSize]}")Integer chunkSize) throws Exception {
-        return this.stepBuilderFactory.get("taskInputStep")
-                .<Person, Person>chunk(chunkSize)
+    public Step taskInputStep(@Value("#{jobParameters[chunkSize]}")Integer chunkSize,
+                              @Value("#{jobParameters[targetCommitMillis]}") Long targetCommitMillis,
+                              @Value("#{jobParameters[minChunkSize]}") Integer minChunkSize,
+                              @Value("#{jobParameters[maxChunkSize]}") Integer maxChunkSize) throws Exception {
+        return AdaptiveChunkSizePolicy.<Person, Person>chunk(this.stepBuilderFactory.get("taskInputStep"),
+                        chunkSize, targetCommitMillis, minChunkSize, maxChunkSize)
                 .reader(inputReader())
                 .writer(inputWriter())
                 .build();
     }
 
-    private ItemWriter<Person> inputWriter() throws Exception {
-        BeanWrapperFieldExtractor<Person> fieldExtractor = new BeanWrapperFieldExtractor<>();
-        fieldExtractor.setNames(new String[] {"id", "name", "age", "address"});
-        DelimitedLineAggregator<Person> lineAggregator = new DelimitedLineAggregator<>();
-        lineAggregator.setDelimiter(",");
-        lineAggregator.setFieldExtractor(fieldExtractor);
-
-        FlatFileItemWriter<Person> itemWriter = new FlatFileItemWriterBuilder<Person>()
-                .name("csvFileItemWriter")
-                .encoding("UTF-8")
-                .resource(new FileSystemResource("output/task-input.csv"))
-                .lineAggregator(lineAggregator)
-                .headerCallback(writer -> writer.write("id,이름,나이,거주지"))
-                .footerCallback(writer -> writer.write("---------------\n"))
-                .append(true)
+    // taskInputJob과 같은 데이터를 CSV 대신 PersonBinaryFormat으로 output/task-input.bin에 쓴다. taskBinaryJob이 읽는다.
+    @Bean
+    public Job taskInputBinaryJob() throws Exception {
+        return this.jobBuilderFactory.get("taskInputBinaryJob")
+                .incrementer(new RunIdIncrementer())
+                .start(this.taskInputBinaryStep(null))
+                .build();
+    }
+
+    @Bean
+    @JobScope
+    public Step taskInputBinaryStep(@Value("#{jobParameters[chunkSize] ?: 10}") Integer chunkSize) {
+        return this.stepBuilderFactory.get("taskInputBinaryStep")
+                .<Person, Person>chunk(chunkSize)
+                .reader(inputReader())
+                .writer(binaryWriter())
+                .build();
+    }
+
+    // taskInputJob과 같은 데이터를 threads 개의 스레드로 나누어 쓴다.
+    // 스레드마다 자기 segment에 쓰고 step이 끝나면 output/task-input-parallel.csv 하나로 합친다.
+    @Bean
+    public Job taskInputParallelJob() throws Exception {
+        return this.jobBuilderFactory.get("taskInputParallelJob")
+                .incrementer(new RunIdIncrementer())
+                .start(this.taskInputParallelStep(null, null))
                 .build();
+    }
+
+    // slot segment는 재시작하면 처음부터 다시 쓰므로 reader도 위치를 저장하지 않는다.
+    @Bean
+    @JobScope
+    public Step taskInputParallelStep(@Value("#{jobParameters[chunkSize] ?: 10}") Integer chunkSize,
+                                      @Value("#{jobParameters[threads] ?: 4}") Integer threads) {
+        SegmentedFileItemWriter<Person> itemWriter = parallelWriter();
+        CustomItemReader<Person> itemReader = new CustomItemReader<>(getItems());
+        itemReader.setSaveState(false);
+
+        return this.stepBuilderFactory.get("taskInputParallelStep")
+                .<Person, Person>chunk(chunkSize)
+                .reader(itemReader)
+                .writer(itemWriter)
+                .listener(itemWriter.mergeListener())
+                .taskExecutor(ProcessingTaskExecutors.create("task-input-", threads))
+                .throttleLimit(threads)
+                .build();
+    }
+
+    private SegmentedFileItemWriter<Person> parallelWriter() {
+        SegmentedFileItemWriter<Person> itemWriter = new SegmentedFileItemWriter<>();
+        itemWriter.setName("csvFileItemWriter");
+        itemWriter.setResource(new FileSystemResource("output/task-input-parallel.csv"));
+        itemWriter.setFieldExtractor(new CompiledFieldExtractor<>(Person.class, "id", "name", "age", "address"));
+        itemWriter.setDelimiter(",");
+        itemWriter.setHeaderCallback(writer -> writer.write("id,이름,나이,거주지"));
+        itemWriter.setFooterCallback(writer -> writer.write("---------------\n"));
+        itemWriter.setSegmentPerThread(true);
 
-        itemWriter.afterPropertiesSet();
+        return itemWriter;
+    }
+
+    private ItemWriter<Person> binaryWriter() {
+        PersonBinaryItemWriter itemWriter = new PersonBinaryItemWriter();
+        itemWriter.setName("binaryFileItemWriter");
+        itemWriter.setResource(new FileSystemResource(BINARY_OUTPUT));
+
+        return itemWriter;
+    }
+
+    private ItemWriter<Person> inputWriter() throws Exception {
+        Utf8DelimitedItemWriter<Person> itemWriter = new Utf8DelimitedItemWriter<>();
+        itemWriter.setName("csvFileItemWriter");
+        itemWriter.setResource(new FileSystemResource("output/task-input.csv"));
+        itemWriter.setFieldExtractor(new CompiledFieldExtractor<>(Person.class, "id", "name", "age", "address"));
+        itemWriter.setDelimiter(",");
+        itemWriter.setHeaderCallback(writer -> writer.write("id,이름,나이,거주지"));
+        itemWriter.setFooterCallback(writer -> writer.write("---------------\n"));
+        itemWriter.setAppend(true);
 
         return itemWriter;
     }
@@ -0,0 +1,324 @@
+package com.example.springbatchexample.part3;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.file.FlatFileFooterCallback;
+import org.springframework.batch.item.file.FlatFileHeaderCallback;
+import org.springframework.batch.item.support.AbstractItemStreamItemWriter;
+import org.springframework.core.io.Resource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+// FlatFileItemWriter + DelimitedLineAggregator를 대신하는 UTF-8 CSV writer
+// CompiledFieldExtractor로 필드를 꺼내 String을 만들지 않고 바로 UTF-8 바이트로 버퍼에 쓰고,
+// 버퍼가 차거나 청크가 커밋될 때(update) FileChannel로 한번에 내보낸다.
+// header/footer callback, append 동작은 FlatFileItemWriter와 같다.
+// 청크가 롤백되면 그 청크에서 쓴 부분을 잘라내고, 재시작하면 마지막 커밋 위치까지 잘라낸 뒤 이어 쓴다.
+// 여러 스레드에서 동시에 쓰면 안 된다.
+public class Utf8DelimitedItemWriter<T> extends AbstractItemStreamItemWriter<T> {
+    private static final String POSITION = "position";
+    private static final String WRITTEN = "written";
+    private static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    private Resource resource;
+    private CompiledFieldExtractor<T> fieldExtractor;
+    private byte[] delimiter = {','};
+    private byte[] lineSeparator = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    private FlatFileHeaderCallback headerCallback;
+    private FlatFileFooterCallback footerCallback;
+    private boolean append;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    private FileChannel channel;
+    private byte[] buffer;
+    private int count;
+    private long written;
+    private boolean rollbackRegistered;
+    private final Writer callbackWriter = new CallbackWriter();
+
+    public Utf8DelimitedItemWriter() {
+        setName(ClassUtils.getShortName(Utf8DelimitedItemWriter.class));
+    }
+
+    public void setResource(Resource resource) {
+        this.resource = resource;
+    }
+
+    public void setFieldExtractor(CompiledFieldExtractor<T> fieldExtractor) {
+        this.fieldExtractor = fieldExtractor;
+    }
+
+    public void setDelimiter(String delimiter) {
+        this.delimiter = delimiter.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public void setLineSeparator(String lineSeparator) {
+        this.lineSeparator = lineSeparator.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public void setHeaderCallback(FlatFileHeaderCallback headerCallback) {
+        this.headerCallback = headerCallback;
+    }
+
+    public void setFooterCallback(FlatFileFooterCallback footerCallback) {
+        this.footerCallback = footerCallback;
+    }
+
+    public void setAppend(boolean append) {
+        this.append = append;
+    }
+
+    // 한 줄보다 작아도 되지만, 클수록 write 호출이 줄어든다.
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        if (resource == null || fieldExtractor == null) {
+            throw new ItemStreamException("resource and fieldExtractor must be set");
+        }
+
+        buffer = new byte[Math.max(bufferSize, 64)];
+        count = 0;
+        try {
+            Path file = resource.getFile().toPath();
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+
+            if (executionContext.containsKey(getExecutionContextKey(POSITION))) {
+                // 재시작 : 마지막으로 커밋된 위치 이후는 버린다.
+                long position = executionContext.getLong(getExecutionContextKey(POSITION));
+                if (channel.size() < position) {
+                    throw new ItemStreamException("Current file size is smaller than size at last commit : " + file);
+                }
+                channel.truncate(position);
+                channel.position(position);
+                written = executionContext.getLong(getExecutionContextKey(WRITTEN), 0L);
+            } else if (append && channel.size() > 0) {
+                channel.position(channel.size());
+                written = 0;
+            } else {
+                channel.truncate(0);
+                written = 0;
+                if (headerCallback != null) {
+                    headerCallback.writeHeader(callbackWriter);
+                    put(lineSeparator);
+                }
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to open output file " + resource, e);
+        }
+    }
+
+    @Override
+    public void write(List<? extends T> items) throws Exception {
+        registerRollback();
+
+        int fields = fieldExtractor.size();
+        for (T item : items) {
+            for (int i = 0; i < fields; i++) {
+                if (i > 0) {
+                    put(delimiter);
+                }
+                putValue(fieldExtractor.get(item, i));
+            }
+            put(lineSeparator);
+        }
+        written += items.size();
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            flush();
+            executionContext.putLong(getExecutionContextKey(POSITION), channel.position());
+            executionContext.putLong(getExecutionContextKey(WRITTEN), written);
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to flush output file " + resource, e);
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            if (footerCallback != null) {
+                footerCallback.writeFooter(callbackWriter);
+            }
+            flush();
+            channel.close();
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to close output file " + resource, e);
+        } finally {
+            channel = null;
+            buffer = null;
+        }
+    }
+
+    // 청크 트랜잭션마다 시작 위치를 기억해 두고, 롤백되면 그 위치로 되돌린다.
+    private void registerRollback() throws IOException {
+        if (rollbackRegistered || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        long position = channel.position() + count;
+        long writtenMark = written;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                rollbackRegistered = false;
+                if (status != STATUS_COMMITTED && channel != null) {
+                    rollbackTo(position);
+                    written = writtenMark;
+                }
+            }
+        });
+        rollbackRegistered = true;
+    }
+
+    private void rollbackTo(long position) {
+        try {
+            long flushed = channel.position();
+            if (position >= flushed) {
+                count = (int) (position - flushed);
+            } else {
+                count = 0;
+                channel.truncate(position);
+                channel.position(position);
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("Unable to roll back output file " + resource, e);
+        }
+    }
+
+    private void flush() throws IOException {
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, count);
+        while (byteBuffer.hasRemaining()) {
+            channel.write(byteBuffer);
+        }
+        count = 0;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.length - count < bytes) {
+            flush();
+        }
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length) {
+            flush();
+            channel.write(ByteBuffer.wrap(bytes));
+            return;
+        }
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    // DelimitedLineAggregator(ExtractorLineAggregator)와 같이 null은 빈 값으로 쓴다.
+    private void putValue(Object value) throws IOException {
+        if (value instanceof String) {
+            putString((String) value);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            putLong(((Number) value).longValue());
+        } else if (value != null) {
+            putString(value.toString());
+        }
+    }
+
+    private void putLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            putString(Long.toString(value));
+            return;
+        }
+        ensure(20);
+        if (value < 0) {
+            buffer[count++] = '-';
+            value = -value;
+        }
+        int start = count;
+        do {
+            buffer[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        for (int i = start, j = count - 1; i < j; i++, j--) {
+            byte digit = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = digit;
+        }
+    }
+
+    private void putString(String value) throws IOException {
+        putChars(value, null, 0, value.length());
+    }
+
+    // String 또는 char[]의 [from, to) 구간을 UTF-8로 인코딩한다.
+    private void putChars(String string, char[] chars, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            char c = (string != null) ? string.charAt(i) : chars[i];
+            if (buffer.length - count < 4) {
+                flush();
+            }
+            if (c < 0x80) {
+                buffer[count++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[count++] = (byte) (0xC0 | (c >> 6));
+                buffer[count++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < to
+                    && Character.isLowSurrogate((string != null) ? string.charAt(i + 1) : chars[i + 1])) {
+                int codePoint = Character.toCodePoint(c, (string != null) ? string.charAt(++i) : chars[++i]);
+                buffer[count++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[count++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // 짝이 맞지 않는 surrogate는 String.getBytes(UTF_8)처럼 '?'로 쓴다.
+                buffer[count++] = '?';
+            } else {
+                buffer[count++] = (byte) (0xE0 | (c >> 12));
+                buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[count++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    // header/footer callback에 넘기는 Writer. 같은 버퍼에 UTF-8로 쓴다.
+    private class CallbackWriter extends Writer {
+        @Override
+        public void write(char[] chars, int offset, int length) throws IOException {
+            putChars(null, chars, offset, offset + length);
+        }
+
+        @Override
+        public void write(String string) throws IOException {
+            putString(string);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.example.springbatchexample.support;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.JobInterruptedException;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.job.flow.Flow;
+import org.springframework.batch.core.job.flow.FlowExecution;
+import org.springframework.batch.core.job.flow.FlowExecutionException;
+import org.springframework.batch.core.job.flow.FlowExecutionStatus;
+import org.springframework.batch.core.job.flow.FlowExecutor;
+import org.springframework.batch.core.job.flow.State;
+import org.springframework.batch.core.job.flow.support.state.StepState;
+import org.springframework.batch.core.scope.context.JobSynchronizationManager;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Collectors;
+
+// step 사이의 의존 관계를 DAG로 선언하고, 앞선 step이 모두 끝난 step부터 동시에 실행하는 Flow
+// split()은 나란히 실행할 flow 묶음을 직접 나누어야 하지만, 여기서는 after()로 의존 관계만 적으면 실행 순서가 정해진다.
+// 동시에 실행하는 step 수는 maxConcurrency로, 동시에 잡는 커넥션 수는 connection pool 크기로 제한한다.
+//   step 마다 사용하는 커넥션 수(connections)를 적고, 합이 pool 크기 - 1(job repository 용)을 넘으면 기다린다.
+//   커넥션이 모자라서 step들이 pool에서 타임아웃 나는 대신 앞 step이 끝날 때까지 시작하지 않는다.
+// 하나라도 실패하거나 멈추면 새 step은 시작하지 않고, 실행 중인 step이 끝나기를 기다린 뒤 FAILED(STOPPED)로 끝난다.
+// 재시작하면 완료된 step은 다시 실행되지 않으므로 실패한 step과 그 뒤의 step만 실행된다.
+@Slf4j
+public class DagFlow implements Flow {
+    private static final int REPOSITORY_CONNECTIONS = 1;
+
+    private final String name;
+    private final List<Node> nodes;
+    private final int maxConcurrency;
+    private final DataSource dataSource;
+    private final TaskExecutor taskExecutor;
+
+    private DagFlow(Builder builder) {
+        this.name = builder.name;
+        this.nodes = new ArrayList<>(builder.nodes.values());
+        this.maxConcurrency = builder.maxConcurrency;
+        this.dataSource = builder.dataSource;
+        this.taskExecutor = (builder.taskExecutor != null) ? builder.taskExecutor : new SimpleAsyncTaskExecutor(name + "-");
+    }
+
+    public static Builder builder(String name) {
+        return new Builder(name);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public FlowExecution start(FlowExecutor executor) throws FlowExecutionException {
+        int connectionLimit = connectionLimit();
+        log.info("{} : {} steps, max concurrency {}, connection limit {}", name, nodes.size(), maxConcurrency,
+                (connectionLimit == Integer.MAX_VALUE) ? "none" : connectionLimit);
+        Map<Node, Integer> waitingFor = new LinkedHashMap<>();
+        Deque<Node> ready = new ArrayDeque<>();
+        for (Node node : nodes) {
+            waitingFor.put(node, node.dependencies.size());
+            if (node.dependencies.isEmpty()) {
+                ready.add(node);
+            }
+        }
+
+        BlockingQueue<Completion> completions = new LinkedBlockingQueue<>();
+        int running = 0;
+        int connections = 0;
+        FlowExecutionStatus status = FlowExecutionStatus.COMPLETED;
+        while (true) {
+            // 선언한 순서대로 자원이 허락하는 만큼 시작한다. 앞 step이 커넥션이 모자라 기다리면 뒤의 작은 step이 먼저 시작할 수 있다.
+            for (Iterator<Node> iterator = ready.iterator(); status.equals(FlowExecutionStatus.COMPLETED) && iterator.hasNext() && running < maxConcurrency; ) {
+                Node node = iterator.next();
+                // pool보다 많은 커넥션을 적은 step도 혼자 실행될 수는 있어야 한다.
+                int demand = Math.min(node.connections, connectionLimit);
+                if (connections + demand > connectionLimit) {
+                    continue;
+                }
+                iterator.remove();
+                running++;
+                connections += demand;
+                log.debug("{} : starting {} ({} running, {} connections)", name, node, running, connections);
+                taskExecutor.execute(() -> completions.add(execute(executor, node, demand)));
+            }
+            if (running == 0) {
+                break;
+            }
+
+            Completion completion = take(completions);
+            running--;
+            connections -= completion.connections;
+            if (completion.failure != null) {
+                status = (completion.failure instanceof JobInterruptedException) ? FlowExecutionStatus.STOPPED : FlowExecutionStatus.FAILED;
+                log.error("{} : step {} failed", name, completion.node.name(), completion.failure);
+                continue;
+            }
+            if (completion.status.isFail() || completion.status.isStop()) {
+                if (!status.equals(FlowExecutionStatus.FAILED)) {
+                    status = completion.status.isFail() ? FlowExecutionStatus.FAILED : FlowExecutionStatus.STOPPED;
+                }
+                continue;
+            }
+            for (Node dependent : completion.node.dependents) {
+                if (waitingFor.merge(dependent, -1, Integer::sum) == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+
+        return new FlowExecution(name, status);
+    }
+
+    // 완료된 step은 step handler가 건너뛰므로 처음부터 다시 판단한다.
+    @Override
+    public FlowExecution resume(String stateName, FlowExecutor executor) throws FlowExecutionException {
+        return start(executor);
+    }
+
+    @Override
+    public State getState(String stateName) {
+        return getStates().stream()
+                .filter(state -> state.getName().equals(stateName))
+                .findFirst()
+                .orElse(null);
+    }
+
+    // FlowJob이 step 이름으로 step을 찾을 때 사용한다. job scope step의 이름은 job 실행 중에만 알 수 있으므로 그때 만든다.
+    @Override
+    public Collection<State> getStates() {
+        return nodes.stream()
+                .map(node -> new StepState(node.name(), node.step))
+                .collect(Collectors.toList());
+    }
+
+    // 다른 스레드에서 실행하므로 job scope step을 찾을 수 있게 job execution을 등록한다.
+    private Completion execute(FlowExecutor executor, Node node, int connections) {
+        JobSynchronizationManager.register(executor.getJobExecution());
+        try {
+            return new Completion(node, connections, new FlowExecutionStatus(executor.executeStep(node.step)), null);
+        } catch (Throwable e) {
+            return new Completion(node, connections, null, e);
+        } finally {
+            JobSynchronizationManager.release();
+        }
+    }
+
+    private int connectionLimit() {
+        if (dataSource == null) {
+            return Integer.MAX_VALUE;
+        }
+        try {
+            if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                int poolSize = dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+                return Math.max(poolSize - REPOSITORY_CONNECTIONS, 1);
+            }
+        } catch (SQLException e) {
+            log.warn("Unable to read the connection pool size of {}", dataSource, e);
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    private static Completion take(BlockingQueue<Completion> completions) throws FlowExecutionException {
+        try {
+            return completions.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FlowExecutionException("Interrupted while waiting for steps to complete");
+        }
+    }
+
+    private static final class Node {
+        private final Step step;
+        private final List<Node> dependencies = new ArrayList<>();
+        private final List<Node> dependents = new ArrayList<>();
+        private int connections = 1;
+
+        private Node(Step step) {
+            this.step = step;
+        }
+
+        private String name() {
+            return step.getName();
+        }
+
+        @Override
+        public String toString() {
+            return name();
+        }
+    }
+
+    private static final class Completion {
+        private final Node node;
+        private final int connections;
+        private final FlowExecutionStatus status;
+        private final Throwable failure;
+
+        private Completion(Node node, int connections, FlowExecutionStatus status, Throwable failure) {
+            this.node = node;
+            this.connections = connections;
+            this.status = status;
+            this.failure = failure;
+        }
+    }
+
+    // step()으로 step을 추가하고, 바로 뒤의 after(), connections()는 마지막에 추가한 step에 적용된다.
+    // after()에는 먼저 추가한 step만 적을 수 있으므로 순환이 생기지 않는다.
+    public static class Builder {
+        private final String name;
+        private final Map<Step, Node> nodes = new LinkedHashMap<>();
+        private int maxConcurrency = Runtime.getRuntime().availableProcessors();
+        private DataSource dataSource;
+        private TaskExecutor taskExecutor;
+        private Node last;
+
+        private Builder(String name) {
+            this.name = name;
+        }
+
+        public Builder step(Step step) {
+            Assert.state(!nodes.containsKey(step), "Step already added to flow " + name);
+            last = new Node(step);
+            nodes.put(step, last);
+            return this;
+        }
+
+        public Builder after(Step... steps) {
+            Assert.state(last != null, "after() must follow step()");
+            for (Step step : steps) {
+                Node dependency = nodes.get(step);
+                Assert.state(dependency != null && dependency != last, "Dependency must be added before the dependent step");
+                last.dependencies.add(dependency);
+                dependency.dependents.add(last);
+            }
+            return this;
+        }
+
+        // 이 step이 실행 중에 잡는 커넥션 수. 청크 트랜잭션이 1개, cursor reader는 별도로 1개를 더 잡는다.
+        public Builder connections(int connections) {
+            Assert.state(last != null, "connections() must follow step()");
+            last.connections = connections;
+            return this;
+        }
+
+        public Builder maxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        // 커넥션 수를 제한할 pool. HikariDataSource가 아니면 제한하지 않는다.
+        public Builder dataSource(DataSource dataSource) {
+            this.dataSource = dataSource;
+            return this;
+        }
+
+        public Builder taskExecutor(TaskExecutor taskExecutor) {
+            this.taskExecutor = taskExecutor;
+            return this;
+        }
+
+        public DagFlow build() {
+            Assert.state(!nodes.isEmpty(), "Flow " + name + " has no steps");
+            Assert.state(maxConcurrency > 0, "maxConcurrency must be positive");
+            return new DagFlow(this);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.springbatchexample.support;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.StepExecution;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// job이 끝나면 step 별 처리량과 청크 지연 시간 분포를 파일로 남긴다.
+// 파일 : <directory>/<jobName>-<jobExecutionId>.txt
+// 청크 지연 시간은 같은 프로세스에서 실행된 같은 이름의 step 전체(최근 10분)를 기준으로 한다.
+@Slf4j
+public class JobMetricsListener implements JobExecutionListener {
+    private static final String[] CHUNK_TIMERS = {"chunk", "chunk.read", "chunk.process", "chunk.write", "chunk.commit"};
+
+    private final MeterRegistry registry;
+    private final Path directory;
+
+    public JobMetricsListener(MeterRegistry registry, Path directory) {
+        this.registry = registry;
+        this.directory = directory;
+    }
+
+    @Override
+    public void beforeJob(JobExecution jobExecution) {
+    }
+
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        Path file = directory.resolve(jobExecution.getJobInstance().getJobName() + "-" + jobExecution.getId() + ".txt");
+        try {
+            Files.createDirectories(directory);
+            try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+                 PrintWriter out = new PrintWriter(writer)) {
+                dump(jobExecution, out);
+            }
+            log.info("step metrics written to {}", file);
+        } catch (IOException e) {
+            // 측정 값을 남기지 못해도 job 결과에는 영향을 주지 않는다.
+            log.warn("Unable to write step metrics to {}", file, e);
+        }
+    }
+
+    private void dump(JobExecution jobExecution, PrintWriter out) {
+        out.printf("job=%s executionId=%d status=%s%n", jobExecution.getJobInstance().getJobName(),
+                jobExecution.getId(), jobExecution.getStatus());
+
+        Set<String> dumped = new HashSet<>();
+        for (StepExecution stepExecution : jobExecution.getStepExecutions()) {
+            long millis = StepMetricsListener.elapsedMillis(stepExecution);
+            out.printf("%nstep=%s status=%s elapsed=%dms items/sec=%.1f%n", stepExecution.getStepName(),
+                    stepExecution.getStatus(), millis, (millis > 0) ? stepExecution.getWriteCount() * 1000.0 / millis : 0.0);
+            out.printf("  read=%d write=%d filter=%d skip=%d commit=%d rollback=%d%n",
+                    stepExecution.getReadCount(), stepExecution.getWriteCount(), stepExecution.getFilterCount(),
+                    stepExecution.getSkipCount(), stepExecution.getCommitCount(), stepExecution.getRollbackCount());
+
+            // 파티션 worker(taskWorkerStep:partition0)는 builder 이름(taskWorkerStep)으로 함께 기록되므로 한번만 남긴다.
+            String stepName = stepExecution.getStepName();
+            int partition = stepName.indexOf(':');
+            String meterStep = (partition > 0) ? stepName.substring(0, partition) : stepName;
+            if (!dumped.add(meterStep)) {
+                continue;
+            }
+            for (String name : CHUNK_TIMERS) {
+                Timer timer = registry.find(StepMetricsListener.PREFIX + name).tag(StepMetricsListener.STEP_TAG, meterStep).timer();
+                if (timer != null && timer.count() > 0) {
+                    out.println("  " + format(name, timer.takeSnapshot()));
+                }
+            }
+            Counter rollbacks = registry.find(StepMetricsListener.PREFIX + "chunk.rollbacks").tag(StepMetricsListener.STEP_TAG, meterStep).counter();
+            if (rollbacks != null && rollbacks.count() > 0) {
+                out.printf("  chunk.rollbacks=%.0f%n", rollbacks.count());
+            }
+        }
+    }
+
+    private static String format(String name, HistogramSnapshot snapshot) {
+        StringBuilder line = new StringBuilder(String.format("%-14s count=%d mean=%.3fms max=%.3fms",
+                name, snapshot.count(), snapshot.mean(TimeUnit.MILLISECONDS), snapshot.max(TimeUnit.MILLISECONDS)));
+        for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+            line.append(String.format(" p%.0f=%.3fms", percentile.percentile() * 100, percentile.value(TimeUnit.MILLISECONDS)));
+        }
+        return line.toString();
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.springbatchexample.support;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.scope.ScopedProxyUtils;
+import org.springframework.batch.core.Job;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.util.StringUtils;
+
+import java.util.Set;
+
+// job 정의가 있는 패키지(part1, part2, part3)의 bean을 모두 lazy-init으로 바꾸고,
+// spring.batch.job.names에 없는 job은 autowire 후보에서 뺀다.
+// JobLauncherApplicationRunner는 Collection<Job>을 주입받으므로 후보에서 빠진 job과 그 step, reader, writer는 만들어지지 않는다.
+// job 이름과 bean 이름이 같다고 가정한다. (이 프로젝트의 job은 모두 bean 이름으로 job을 만든다)
+@Slf4j
+public class LazyJobBeanFactoryPostProcessor implements BeanFactoryPostProcessor {
+    private static final String JOB_PACKAGE_PREFIX = "com.example.springbatchexample.part";
+    private static final String ENTITY_MANAGER_FACTORY = "entityManagerFactory";
+
+    private final Set<String> jobNames;
+
+    public LazyJobBeanFactoryPostProcessor(String jobNames) {
+        this.jobNames = StringUtils.commaDelimitedListToSet(jobNames);
+    }
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+        int lazy = 0;
+        for (String beanName : beanFactory.getBeanDefinitionNames()) {
+            BeanDefinition definition = beanFactory.getBeanDefinition(beanName);
+            if (definition.isSingleton() && isJobDefinition(beanFactory, beanName)) {
+                definition.setLazyInit(true);
+                lazy++;
+            }
+        }
+
+        int excluded = 0;
+        for (String beanName : beanFactory.getBeanNamesForType(Job.class, true, false)) {
+            if (!jobNames.contains(beanName)) {
+                beanFactory.getBeanDefinition(beanName).setAutowireCandidate(false);
+                excluded++;
+            }
+        }
+        // JobRepository의 트랜잭션 매니저(JpaTransactionManager)가 EntityManagerFactory를 쓰므로 만들지 않을 수는 없다.
+        // 대신 Hibernate 초기화를 별도 thread에서 하고, 처음 EntityManager를 쓸 때까지 기다린다.
+        if (beanFactory.containsBeanDefinition(ENTITY_MANAGER_FACTORY)) {
+            beanFactory.getBeanDefinition(ENTITY_MANAGER_FACTORY).getPropertyValues()
+                    .add("bootstrapExecutor", new SimpleAsyncTaskExecutor("jpa-bootstrap-"));
+        }
+        log.info("lazy job registry : {} beans lazy, {} jobs excluded, selected {}", lazy, excluded, jobNames);
+    }
+
+    // @Configuration 클래스 자신이거나, 그 클래스의 @Bean 메소드로 만드는 bean
+    // @JobScope, @StepScope bean의 proxy는 proxy가 감싸는 bean 정의로 판단한다.
+    private static boolean isJobDefinition(ConfigurableListableBeanFactory beanFactory, String beanName) {
+        String targetBeanName = ScopedProxyUtils.getTargetBeanName(beanName);
+        if (beanFactory.containsBeanDefinition(targetBeanName)) {
+            beanName = targetBeanName;
+        }
+        BeanDefinition definition = beanFactory.getBeanDefinition(beanName);
+        String className = definition.getBeanClassName();
+        if (definition.getFactoryBeanName() != null && beanFactory.containsBeanDefinition(definition.getFactoryBeanName())) {
+            className = beanFactory.getBeanDefinition(definition.getFactoryBeanName()).getBeanClassName();
+        }
+        return className != null && className.startsWith(JOB_PACKAGE_PREFIX);
+    }
+}
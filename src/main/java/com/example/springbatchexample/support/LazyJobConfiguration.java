@@ -0,0 +1,19 @@
+package com.example.springbatchexample.support;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+// batch.lazy-jobs.enabled=true 이면 spring.batch.job.names로 고른 job의 bean만 만든다.
+// 모든 @Configuration의 job, step, reader, writer를 만들던 시작 시간이 실행할 job 하나만큼으로 줄어든다.
+@Configuration
+@ConditionalOnProperty(name = "batch.lazy-jobs.enabled", havingValue = "true")
+public class LazyJobConfiguration {
+
+    // BeanFactoryPostProcessor는 다른 bean보다 먼저 만들어져야 하므로 static으로 등록한다.
+    @Bean
+    public static LazyJobBeanFactoryPostProcessor lazyJobBeanFactoryPostProcessor(Environment environment) {
+        return new LazyJobBeanFactoryPostProcessor(environment.getProperty("spring.batch.job.names", ""));
+    }
+}
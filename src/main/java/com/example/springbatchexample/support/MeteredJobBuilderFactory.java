@@ -0,0 +1,25 @@
+package com.example.springbatchexample.support;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.repository.JobRepository;
+
+import java.nio.file.Path;
+
+// get()으로 만드는 모든 job에 JobMetricsListener를 등록해서 job이 끝날 때 step 측정 값을 파일로 남긴다.
+public class MeteredJobBuilderFactory extends JobBuilderFactory {
+    private final MeterRegistry registry;
+    private final Path directory;
+
+    public MeteredJobBuilderFactory(JobRepository jobRepository, MeterRegistry registry, Path directory) {
+        super(jobRepository);
+        this.registry = registry;
+        this.directory = directory;
+    }
+
+    @Override
+    public JobBuilder get(String name) {
+        return super.get(name).listener(new JobMetricsListener(registry, directory));
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.springbatchexample.support;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+// get()으로 만드는 모든 step에 StepMetricsListener를 등록한다.
+// StepExecutionListener로 등록하면 chunk step에서는 chunk/item listener로도 함께 등록된다.
+public class MeteredStepBuilderFactory extends StepBuilderFactory {
+    private final MeterRegistry registry;
+
+    public MeteredStepBuilderFactory(JobRepository jobRepository, PlatformTransactionManager transactionManager, MeterRegistry registry) {
+        super(jobRepository, transactionManager);
+        this.registry = registry;
+    }
+
+    @Override
+    public StepBuilder get(String name) {
+        StepBuilder builder = super.get(name);
+        builder.listener((StepExecutionListener) new StepMetricsListener(name, registry));
+        return builder;
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.springbatchexample.support;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.batch.core.configuration.annotation.BatchConfigurer;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.nio.file.Paths;
+
+// batch.metrics.enabled=true 이면 모든 job, step이 측정 listener가 등록된 builder factory를 주입받도록 @Primary로 등록한다.
+// 측정 값은 context의 MeterRegistry bean에 기록한다. 없으면(actuator가 없는 경우) SimpleMeterRegistry를 하나 등록한다.
+// Metrics.globalRegistry는 건드리지 않으므로 Spring Batch 자체 metric(spring.batch.*)은 여기에 포함되지 않는다.
+//   batch.metrics.directory : job이 끝날 때 측정 값을 남기는 디렉토리 (기본값 output/metrics)
+@Configuration
+@ConditionalOnProperty(name = "batch.metrics.enabled", havingValue = "true")
+public class MetricsConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean(MeterRegistry.class)
+    public MeterRegistry batchMeterRegistry() {
+        return new SimpleMeterRegistry();
+    }
+
+    @Bean
+    @Primary
+    public StepBuilderFactory meteredStepBuilderFactory(BatchConfigurer batchConfigurer, MeterRegistry meterRegistry) throws Exception {
+        return new MeteredStepBuilderFactory(batchConfigurer.getJobRepository(), batchConfigurer.getTransactionManager(), meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    public JobBuilderFactory meteredJobBuilderFactory(BatchConfigurer batchConfigurer, MeterRegistry meterRegistry,
+                                                      @Value("${batch.metrics.directory:output/metrics}") String directory) throws Exception {
+        return new MeteredJobBuilderFactory(batchConfigurer.getJobRepository(), meterRegistry, Paths.get(directory));
+    }
+}
@@ -0,0 +1,323 @@
+package com.example.springbatchexample.support;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.JobInterruptedException;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.JobSynchronizationManager;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.core.step.AbstractStep;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.support.CompositeItemStream;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// 읽기/가공과 쓰기를 서로 다른 스레드에서 겹쳐서 실행하는 chunk step
+// 일반 chunk step은 한 스레드에서 read -> process -> write -> commit을 차례로 하므로 writer가 커밋하는 동안 reader가 쉬고, 그 반대도 마찬가지다.
+// 여기서는 producer 스레드가 청크 N+1을 읽고 가공하는 동안 step 스레드가 청크 N을 쓰고 커밋한다.
+//   producer : chunkSize 건을 읽어(걸러진 item 포함) 청크를 만들고, 그 시점의 reader 상태를 함께 버퍼에 넣는다.
+//   writer   : 버퍼에서 청크를 꺼내 청크 하나를 트랜잭션 하나로 쓴다.
+// 버퍼는 bufferedChunks 개의 청크만 담으므로 writer가 느리면 producer가 기다린다. (메모리에는 최대 bufferedChunks + 2 개의 청크)
+// 재시작 : reader 상태는 그 청크가 커밋될 때 ExecutionContext에 반영한다.
+//   버퍼에 있거나 쓰는 중에 롤백된 청크는 버리고, 재시작하면 마지막으로 커밋된 청크 다음부터 다시 읽는다.
+//   reader의 update()는 producer 스레드에서 호출하므로, update()가 현재 위치를 저장하는 reader(AbstractItemCountingItemStreamItemReader 등)를 사용한다.
+// skip/retry는 지원하지 않는다. 실패하면 step이 FAILED로 끝나고 재시작으로 이어서 처리한다.
+// StepExecutionListener만 호출한다. chunk/item listener는 스레드가 나뉘므로 등록하지 않는다.
+@Slf4j
+public class PipelinedStep<I, O> extends AbstractStep {
+    static final String READER_WAIT_MILLIS = "pipeline.readerWaitMillis";
+    static final String WRITER_WAIT_MILLIS = "pipeline.writerWaitMillis";
+
+    private static final long POLL_MILLIS = 100;
+
+    private final CompositeItemStream readerStream = new CompositeItemStream();
+    private final CompositeItemStream writerStream = new CompositeItemStream();
+
+    private ItemReader<? extends I> reader;
+    private ItemProcessor<? super I, ? extends O> processor;
+    private ItemWriter<? super O> writer;
+    private int chunkSize;
+    private int bufferedChunks;
+    private TransactionTemplate transactionTemplate;
+    private TaskExecutor taskExecutor;
+
+    PipelinedStep(String name) {
+        super(name);
+    }
+
+    void setReader(ItemReader<? extends I> reader) {
+        this.reader = reader;
+    }
+
+    void setProcessor(ItemProcessor<? super I, ? extends O> processor) {
+        this.processor = processor;
+    }
+
+    void setWriter(ItemWriter<? super O> writer) {
+        this.writer = writer;
+    }
+
+    void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    void setBufferedChunks(int bufferedChunks) {
+        this.bufferedChunks = bufferedChunks;
+    }
+
+    void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    void setTaskExecutor(TaskExecutor taskExecutor) {
+        this.taskExecutor = taskExecutor;
+    }
+
+    // processor의 상태는 읽은 위치와 함께 저장되어야 하므로 reader 쪽 stream으로 등록한다.
+    CompositeItemStream getReaderStream() {
+        return readerStream;
+    }
+
+    CompositeItemStream getWriterStream() {
+        return writerStream;
+    }
+
+    @Override
+    protected void open(ExecutionContext executionContext) throws Exception {
+        readerStream.open(executionContext);
+        writerStream.open(executionContext);
+    }
+
+    @Override
+    protected void close(ExecutionContext executionContext) throws Exception {
+        try {
+            readerStream.close();
+        } finally {
+            writerStream.close();
+        }
+    }
+
+    @Override
+    protected void doExecute(StepExecution stepExecution) throws Exception {
+        Producer producer = new Producer(stepExecution);
+        taskExecutor.execute(producer);
+        try {
+            while (true) {
+                checkInterrupted(stepExecution);
+                Chunk<O> chunk = producer.take();
+                if (chunk.failure != null) {
+                    throw rethrow(chunk.failure);
+                }
+                write(stepExecution, chunk);
+                if (chunk.last) {
+                    break;
+                }
+            }
+        } finally {
+            producer.stop();
+            long readerWaitMillis = TimeUnit.NANOSECONDS.toMillis(producer.readerWaitNanos);
+            long writerWaitMillis = TimeUnit.NANOSECONDS.toMillis(producer.writerWaitNanos);
+            stepExecution.getExecutionContext().putLong(READER_WAIT_MILLIS, readerWaitMillis);
+            stepExecution.getExecutionContext().putLong(WRITER_WAIT_MILLIS, writerWaitMillis);
+            log.info("{} : reader waited {} ms for the writer, writer waited {} ms for the reader",
+                    getName(), readerWaitMillis, writerWaitMillis);
+        }
+    }
+
+    // 청크의 reader 상태와 writer 상태를 새 ExecutionContext에 모아서 청크와 같은 트랜잭션으로 저장한다.
+    // 롤백되면 이전 ExecutionContext로 되돌려서, step이 끝날 때 커밋되지 않은 위치가 저장되지 않게 한다.
+    private void write(StepExecution stepExecution, Chunk<O> chunk) throws Exception {
+        ExecutionContext previous = stepExecution.getExecutionContext();
+        ExecutionContext next = new ExecutionContext(previous);
+        for (Map.Entry<String, Object> entry : chunk.readerState.entrySet()) {
+            next.put(entry.getKey(), entry.getValue());
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (!chunk.items.isEmpty()) {
+                    try {
+                        writer.write(chunk.items);
+                    } catch (Exception e) {
+                        throw new WriteFailedException(e);
+                    }
+                }
+                writerStream.update(next);
+                stepExecution.setExecutionContext(next);
+                getJobRepository().updateExecutionContext(stepExecution);
+            });
+        } catch (RuntimeException e) {
+            stepExecution.setExecutionContext(previous);
+            stepExecution.incrementRollbackCount();
+            throw (e instanceof WriteFailedException) ? (Exception) e.getCause() : e;
+        }
+
+        stepExecution.setReadCount(stepExecution.getReadCount() + chunk.readCount);
+        stepExecution.setFilterCount(stepExecution.getFilterCount() + chunk.filterCount);
+        stepExecution.setWriteCount(stepExecution.getWriteCount() + chunk.items.size());
+        stepExecution.incrementCommitCount();
+        getJobRepository().update(stepExecution);
+    }
+
+    private void checkInterrupted(StepExecution stepExecution) throws JobInterruptedException {
+        if (stepExecution.isTerminateOnly() || Thread.currentThread().isInterrupted()) {
+            throw new JobInterruptedException("Step " + getName() + " interrupted");
+        }
+    }
+
+    private static Exception rethrow(Throwable failure) {
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        return (Exception) failure;
+    }
+
+    // 읽고 가공한 청크를 버퍼에 넣는 producer. step 실행마다 새로 만든다.
+    private final class Producer implements Runnable {
+        private final StepExecution stepExecution;
+        private final BlockingQueue<Chunk<O>> buffer = new ArrayBlockingQueue<>(bufferedChunks);
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private volatile boolean stopped;
+        // producer가 버퍼 자리를 기다린 시간, writer가 청크를 기다린 시간. readerWaitNanos는 producer가 끝난 뒤에 읽는다.
+        private long readerWaitNanos;
+        private long writerWaitNanos;
+
+        private Producer(StepExecution stepExecution) {
+            this.stepExecution = stepExecution;
+        }
+
+        // job/step scope reader/processor를 찾을 수 있게 job execution과 step execution을 등록한다.
+        @Override
+        public void run() {
+            JobSynchronizationManager.register(stepExecution.getJobExecution());
+            StepSynchronizationManager.register(stepExecution);
+            try {
+                boolean last = false;
+                while (!last && !stopped) {
+                    Chunk<O> chunk = read();
+                    last = chunk.last;
+                    put(chunk);
+                }
+            } catch (Throwable e) {
+                Chunk<O> chunk = new Chunk<>(0);
+                chunk.failure = e;
+                put(chunk);
+            } finally {
+                StepSynchronizationManager.release();
+                JobSynchronizationManager.release();
+                finished.countDown();
+            }
+        }
+
+        private Chunk<O> read() throws Exception {
+            Chunk<O> chunk = new Chunk<>(chunkSize);
+            while (chunk.readCount < chunkSize && !stopped) {
+                I item = reader.read();
+                if (item == null) {
+                    chunk.last = true;
+                    break;
+                }
+                chunk.readCount++;
+                O output = process(item);
+                if (output == null) {
+                    chunk.filterCount++;
+                } else {
+                    chunk.items.add(output);
+                }
+            }
+            // 이 청크의 마지막 item까지 읽은 위치. 청크가 커밋될 때 저장된다.
+            readerStream.update(chunk.readerState);
+            return chunk;
+        }
+
+        @SuppressWarnings("unchecked")
+        private O process(I item) throws Exception {
+            return (processor != null) ? processor.process(item) : (O) item;
+        }
+
+        private void put(Chunk<O> chunk) {
+            long start = System.nanoTime();
+            try {
+                // writer가 멈추면 stopped가 설정되고 청크는 버린다.
+                while (!stopped) {
+                    if (buffer.offer(chunk, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopped = true;
+            } finally {
+                readerWaitNanos += System.nanoTime() - start;
+            }
+        }
+
+        private Chunk<O> take() throws Exception {
+            long start = System.nanoTime();
+            try {
+                while (true) {
+                    Chunk<O> chunk = buffer.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (chunk != null) {
+                        return chunk;
+                    }
+                    checkInterrupted(stepExecution);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new JobInterruptedException("Step " + getName() + " interrupted while waiting for the reader");
+            } finally {
+                writerWaitNanos += System.nanoTime() - start;
+            }
+        }
+
+        // 버퍼에 남은 청크는 커밋되지 않았으므로 버린다. reader를 닫기 전에 producer가 끝나기를 기다린다.
+        private void stop() {
+            stopped = true;
+            buffer.clear();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    finished.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static final class Chunk<O> {
+        private final List<O> items;
+        private final ExecutionContext readerState = new ExecutionContext();
+        private int readCount;
+        private int filterCount;
+        private boolean last;
+        private Throwable failure;
+
+        private Chunk(int chunkSize) {
+            this.items = new ArrayList<>(chunkSize);
+        }
+    }
+
+    private static final class WriteFailedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private WriteFailedException(Exception cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.springbatchexample.support;
+
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.core.step.builder.StepBuilderHelper;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.util.Assert;
+
+// PipelinedStep을 만드는 builder
+// stepBuilderFactory.get()이 만든 StepBuilder에서 시작하므로 job repository, transaction manager, listener(StepMetricsListener 등)를 그대로 이어받는다.
+//   new PipelinedStepBuilder<Person, Person>(stepBuilderFactory.get("name")).chunk(10).reader(..).writer(..).build()
+// reader, processor, writer가 ItemStream이나 StepExecutionListener이면 SimpleStepBuilder처럼 자동으로 등록한다.
+public class PipelinedStepBuilder<I, O> extends StepBuilderHelper<PipelinedStepBuilder<I, O>> {
+    private ItemReader<? extends I> reader;
+    private ItemProcessor<? super I, ? extends O> processor;
+    private ItemWriter<? super O> writer;
+    private int chunkSize = 10;
+    private int bufferedChunks = 2;
+    private TaskExecutor taskExecutor;
+
+    public PipelinedStepBuilder(StepBuilder parent) {
+        super(parent);
+    }
+
+    public PipelinedStepBuilder<I, O> chunk(int chunkSize) {
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    // writer가 아직 쓰지 않은 청크를 몇 개까지 쌓아 둘지. 가득 차면 reader가 기다린다.
+    public PipelinedStepBuilder<I, O> bufferedChunks(int bufferedChunks) {
+        this.bufferedChunks = bufferedChunks;
+        return this;
+    }
+
+    public PipelinedStepBuilder<I, O> reader(ItemReader<? extends I> reader) {
+        this.reader = reader;
+        return this;
+    }
+
+    public PipelinedStepBuilder<I, O> processor(ItemProcessor<? super I, ? extends O> processor) {
+        this.processor = processor;
+        return this;
+    }
+
+    public PipelinedStepBuilder<I, O> writer(ItemWriter<? super O> writer) {
+        this.writer = writer;
+        return this;
+    }
+
+    // producer 스레드를 만들 executor. 없으면 step 실행마다 "<step 이름>-reader-" 스레드를 하나 만든다.
+    public PipelinedStepBuilder<I, O> taskExecutor(TaskExecutor taskExecutor) {
+        this.taskExecutor = taskExecutor;
+        return this;
+    }
+
+    public PipelinedStep<I, O> build() {
+        Assert.state(reader != null, "ItemReader must be provided");
+        Assert.state(writer != null, "ItemWriter must be provided");
+        Assert.state(chunkSize > 0, "chunkSize must be positive");
+        Assert.state(bufferedChunks > 0, "bufferedChunks must be positive");
+        Assert.state(getTransactionManager() != null, "Transaction manager must be provided");
+
+        PipelinedStep<I, O> step = new PipelinedStep<>(getName());
+        enhance(step);
+        step.setReader(reader);
+        step.setProcessor(processor);
+        step.setWriter(writer);
+        step.setChunkSize(chunkSize);
+        step.setBufferedChunks(bufferedChunks);
+        step.setTransactionManager(getTransactionManager());
+        step.setTaskExecutor((taskExecutor != null) ? taskExecutor : new SimpleAsyncTaskExecutor(getName() + "-reader-"));
+
+        for (Object component : new Object[]{reader, processor}) {
+            if (component instanceof ItemStream) {
+                step.getReaderStream().register((ItemStream) component);
+            }
+        }
+        if (writer instanceof ItemStream) {
+            step.getWriterStream().register((ItemStream) writer);
+        }
+        for (Object component : new Object[]{reader, processor, writer}) {
+            if (component instanceof StepExecutionListener) {
+                step.registerStepExecutionListener((StepExecutionListener) component);
+            }
+        }
+        return step;
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.springbatchexample.support;
+
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+// 커밋된 시점의 StepExecution 상태(건수, 상태, 직렬화한 ExecutionContext)
+// write-ahead log의 레코드 하나이며, 나중에 DB에 반영할 때 이 값으로 StepExecution을 다시 만든다.
+class StepExecutionSnapshot {
+    final long stepExecutionId;
+    final long jobExecutionId;
+    final String stepName;
+    final int version;
+    final String status;
+    final String exitCode;
+    final String exitDescription;
+    final int readCount;
+    final int writeCount;
+    final int filterCount;
+    final int readSkipCount;
+    final int writeSkipCount;
+    final int processSkipCount;
+    final int commitCount;
+    final int rollbackCount;
+    final long startTime;
+    final long lastUpdated;
+    final String executionContext;
+
+    private StepExecutionSnapshot(long stepExecutionId, long jobExecutionId, String stepName, int version, String status,
+                                  String exitCode, String exitDescription, int readCount, int writeCount, int filterCount,
+                                  int readSkipCount, int writeSkipCount, int processSkipCount, int commitCount,
+                                  int rollbackCount, long startTime, long lastUpdated, String executionContext) {
+        this.stepExecutionId = stepExecutionId;
+        this.jobExecutionId = jobExecutionId;
+        this.stepName = stepName;
+        this.version = version;
+        this.status = status;
+        this.exitCode = exitCode;
+        this.exitDescription = exitDescription;
+        this.readCount = readCount;
+        this.writeCount = writeCount;
+        this.filterCount = filterCount;
+        this.readSkipCount = readSkipCount;
+        this.writeSkipCount = writeSkipCount;
+        this.processSkipCount = processSkipCount;
+        this.commitCount = commitCount;
+        this.rollbackCount = rollbackCount;
+        this.startTime = startTime;
+        this.lastUpdated = lastUpdated;
+        this.executionContext = executionContext;
+    }
+
+    static StepExecutionSnapshot of(StepExecution stepExecution, String executionContext) {
+        return new StepExecutionSnapshot(stepExecution.getId(), stepExecution.getJobExecutionId(), stepExecution.getStepName(),
+                stepExecution.getVersion(), stepExecution.getStatus().name(),
+                stepExecution.getExitStatus().getExitCode(), stepExecution.getExitStatus().getExitDescription(),
+                stepExecution.getReadCount(), stepExecution.getWriteCount(), stepExecution.getFilterCount(),
+                stepExecution.getReadSkipCount(), stepExecution.getWriteSkipCount(), stepExecution.getProcessSkipCount(),
+                stepExecution.getCommitCount(), stepExecution.getRollbackCount(),
+                stepExecution.getStartTime().getTime(),
+                (stepExecution.getLastUpdated() != null) ? stepExecution.getLastUpdated().getTime() : System.currentTimeMillis(),
+                executionContext);
+    }
+
+    // DAO로 update 할 수 있는 분리된 StepExecution. 실행 중인 step의 객체는 건드리지 않는다.
+    StepExecution toStepExecution(int version, ExecutionContext context) {
+        StepExecution stepExecution = new StepExecution(stepName, new JobExecution(jobExecutionId), stepExecutionId);
+        stepExecution.setVersion(version);
+        stepExecution.setStatus(BatchStatus.valueOf(status));
+        stepExecution.setExitStatus(new ExitStatus(exitCode, exitDescription));
+        stepExecution.setReadCount(readCount);
+        stepExecution.setWriteCount(writeCount);
+        stepExecution.setFilterCount(filterCount);
+        stepExecution.setReadSkipCount(readSkipCount);
+        stepExecution.setWriteSkipCount(writeSkipCount);
+        stepExecution.setProcessSkipCount(processSkipCount);
+        stepExecution.setCommitCount(commitCount);
+        stepExecution.setRollbackCount(rollbackCount);
+        stepExecution.setStartTime(new Date(startTime));
+        stepExecution.setLastUpdated(new Date(lastUpdated));
+        stepExecution.setExecutionContext(context);
+        return stepExecution;
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeLong(stepExecutionId);
+        out.writeLong(jobExecutionId);
+        out.writeUTF(stepName);
+        out.writeInt(version);
+        out.writeUTF(status);
+        out.writeUTF(exitCode);
+        writeLongString(out, exitDescription);
+        out.writeInt(readCount);
+        out.writeInt(writeCount);
+        out.writeInt(filterCount);
+        out.writeInt(readSkipCount);
+        out.writeInt(writeSkipCount);
+        out.writeInt(processSkipCount);
+        out.writeInt(commitCount);
+        out.writeInt(rollbackCount);
+        out.writeLong(startTime);
+        out.writeLong(lastUpdated);
+        writeLongString(out, executionContext);
+    }
+
+    static StepExecutionSnapshot read(DataInput in) throws IOException {
+        return new StepExecutionSnapshot(in.readLong(), in.readLong(), in.readUTF(), in.readInt(), in.readUTF(),
+                in.readUTF(), readLongString(in), in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+                in.readInt(), in.readInt(), in.readInt(), in.readLong(), in.readLong(), readLongString(in));
+    }
+
+    // writeUTF는 64KB까지만 쓸 수 있으므로 ExecutionContext처럼 긴 문자열은 길이를 int로 적는다.
+    private static void writeLongString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readLongString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,247 @@
+package com.example.springbatchexample.support;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// StepExecutionSnapshot을 segment 파일에 순서대로 덧붙이는 write-ahead log
+// 레코드 : [길이 int][내용][crc32 long]. 쓰다가 죽어서 잘린 마지막 레코드는 복구할 때 버린다.
+// DB에 반영하기 전에 rotate()로 새 segment로 넘기고, 반영이 끝나면 이전 segment를 지운다.
+// 사용 중인 segment는 파일 lock을 잡고 있으므로 다른 JVM은 lock을 잡을 수 있는(죽은 JVM이 남긴) segment만 복구한다.
+@Slf4j
+class StepExecutionWriteAheadLog implements AutoCloseable {
+    private static final String SUFFIX = ".wal";
+
+    private final Path directory;
+    private final boolean force;
+    private final String prefix;
+    private final List<Segment> closed = new ArrayList<>();
+
+    private Segment current;
+    private int sequence;
+    // rotate() 횟수. 이 값이 바뀌었으면 그 전에 쓴 레코드는 다음 deleteRotated()에서 지워진다.
+    private long rotations;
+
+    StepExecutionWriteAheadLog(Path directory, boolean force) {
+        this.directory = directory;
+        this.force = force;
+        this.prefix = String.format("%013d-%d", System.currentTimeMillis(), ProcessHandle.current().pid());
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create write-ahead log directory " + directory, e);
+        }
+    }
+
+    synchronized void append(StepExecutionSnapshot snapshot) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            snapshot.write(new DataOutputStream(bytes));
+            byte[] payload = bytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+
+            ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + payload.length + Long.BYTES);
+            buffer.putInt(payload.length).put(payload).putLong(crc.getValue()).flip();
+
+            FileChannel channel = current().channel;
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (force) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to append to write-ahead log in " + directory, e);
+        }
+    }
+
+    // 지금까지 쓴 레코드는 이전 segment에 남기고, 이후 레코드는 새 segment에 쓴다.
+    synchronized void rotate() {
+        rotations++;
+        if (current != null) {
+            closed.add(current);
+            current = null;
+        }
+    }
+
+    synchronized long rotations() {
+        return rotations;
+    }
+
+    // rotate() 이전의 레코드가 모두 DB에 반영된 뒤에 호출한다.
+    synchronized void deleteRotated() {
+        for (Segment segment : closed) {
+            segment.delete();
+        }
+        closed.clear();
+    }
+
+    // 죽은 JVM이 남긴 segment의 레코드를 쓴 순서대로 넘겨주고, 다 처리하면 지운다.
+    void recover(Consumer<List<StepExecutionSnapshot>> consumer) {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to list write-ahead log in " + directory, e);
+        }
+        Collections.sort(files);
+
+        List<Segment> orphans = new ArrayList<>();
+        List<StepExecutionSnapshot> snapshots = new ArrayList<>();
+        for (Path file : files) {
+            Segment segment = Segment.tryOpen(file);
+            if (segment == null) {
+                continue;
+            }
+            orphans.add(segment);
+            snapshots.addAll(segment.read());
+        }
+
+        try {
+            if (!snapshots.isEmpty()) {
+                consumer.accept(snapshots);
+                log.info("recovered {} step execution records from {} write-ahead log segments", snapshots.size(), orphans.size());
+            }
+            orphans.forEach(Segment::delete);
+        } finally {
+            orphans.forEach(Segment::close);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        rotate();
+        deleteRotated();
+    }
+
+    private Segment current() throws IOException {
+        if (current == null) {
+            Path file = directory.resolve(String.format("%s-%06d%s", prefix, sequence++, SUFFIX));
+            current = Segment.tryOpen(file);
+            if (current == null) {
+                throw new IOException("Write-ahead log segment is locked : " + file);
+            }
+        }
+        return current;
+    }
+
+    private static final class Segment {
+        private final Path file;
+        private final FileChannel channel;
+        private final FileLock lock;
+
+        private Segment(Path file, FileChannel channel, FileLock lock) {
+            this.file = file;
+            this.channel = channel;
+            this.lock = lock;
+        }
+
+        static Segment tryOpen(Path file) {
+            FileChannel channel = null;
+            try {
+                channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                FileLock lock = tryLock(channel);
+                if (lock == null) {
+                    channel.close();
+                    return null;
+                }
+                channel.position(channel.size());
+                return new Segment(file, channel, lock);
+            } catch (IOException e) {
+                closeQuietly(channel);
+                throw new UncheckedIOException("Unable to open write-ahead log segment " + file, e);
+            }
+        }
+
+        // 같은 JVM의 다른 repository가 잡고 있는 lock은 예외로 알려준다.
+        private static FileLock tryLock(FileChannel channel) throws IOException {
+            try {
+                return channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                return null;
+            }
+        }
+
+        List<StepExecutionSnapshot> read() {
+            List<StepExecutionSnapshot> snapshots = new ArrayList<>();
+            try {
+                channel.position(0);
+                DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+                while (true) {
+                    int length = in.readInt();
+                    if (length < 0 || length > channel.size()) {
+                        log.warn("discarding corrupted record at the end of {}", file);
+                        break;
+                    }
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    long checksum = in.readLong();
+                    CRC32 crc = new CRC32();
+                    crc.update(payload);
+                    if (crc.getValue() != checksum) {
+                        log.warn("discarding corrupted record at the end of {}", file);
+                        break;
+                    }
+                    snapshots.add(StepExecutionSnapshot.read(new DataInputStream(new ByteArrayInputStream(payload))));
+                }
+            } catch (EOFException e) {
+                // 마지막 레코드까지 읽었거나, 쓰다가 잘린 레코드
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read write-ahead log segment " + file, e);
+            }
+            return snapshots;
+        }
+
+        void delete() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Unable to delete write-ahead log segment {}", file, e);
+            }
+            close();
+        }
+
+        void close() {
+            try {
+                if (lock.isValid()) {
+                    lock.release();
+                }
+            } catch (IOException e) {
+                log.warn("Unable to release write-ahead log segment lock {}", file, e);
+            }
+            closeQuietly(channel);
+        }
+
+        private static void closeQuietly(FileChannel channel) {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Unable to close write-ahead log segment", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.springbatchexample.support;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+// step 사이에 값을 넘겨주는 저장소
+// 직렬화한 값이 inlineLimit 이하이면 job ExecutionContext에 그대로 넣고,
+// 그보다 크면 <directory>/<jobName>-<jobInstanceId>/ 아래 파일에 memory-mapped로 쓰고 ExecutionContext에는 파일 이름만 남긴다.
+// ExecutionContext는 재시작할 때 복원되므로 재시작한 execution도 같은 값을 읽는다.
+// job이 COMPLETED로 끝나면 파일을 지운다. job listener로 등록해서 사용한다.
+@Slf4j
+public class StepHandoffStore implements JobExecutionListener {
+    private static final String KEY_PREFIX = "handoff.";
+    private static final String INLINE = "inline:";
+    private static final String FILE = "file:";
+
+    private final Path directory;
+    private final int inlineLimit;
+
+    public StepHandoffStore(Path directory, int inlineLimit) {
+        this.directory = directory;
+        this.inlineLimit = inlineLimit;
+    }
+
+    public <T extends Serializable> void put(JobExecution jobExecution, String key, T value) {
+        byte[] bytes = serialize(value);
+        String reference;
+        if (bytes.length <= inlineLimit) {
+            reference = INLINE + Base64.getEncoder().encodeToString(bytes);
+        } else {
+            String fileName = key + ".bin";
+            write(getDirectory(jobExecution).resolve(fileName), bytes);
+            reference = FILE + fileName;
+            log.debug("handoff {} spilled to file : {} bytes", key, bytes.length);
+        }
+        jobExecution.getExecutionContext().putString(KEY_PREFIX + key, reference);
+    }
+
+    public <T> T get(JobExecution jobExecution, String key, Class<T> type) {
+        String reference = jobExecution.getExecutionContext().getString(KEY_PREFIX + key, null);
+        if (reference == null) {
+            return null;
+        }
+
+        Object value;
+        if (reference.startsWith(INLINE)) {
+            value = deserialize(new ByteArrayInputStream(Base64.getDecoder().decode(reference.substring(INLINE.length()))));
+        } else {
+            value = deserialize(new ByteBufferInputStream(map(getDirectory(jobExecution).resolve(reference.substring(FILE.length())))));
+        }
+        return type.cast(value);
+    }
+
+    @Override
+    public void beforeJob(JobExecution jobExecution) {
+    }
+
+    // 실패한 job은 재시작할 때 다시 읽을 수 있도록 남겨둔다.
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        Path instanceDirectory = getDirectory(jobExecution);
+        if (jobExecution.getStatus() != BatchStatus.COMPLETED || !Files.exists(instanceDirectory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(instanceDirectory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            log.warn("Unable to delete handoff files in {}", instanceDirectory, e);
+        }
+    }
+
+    private Path getDirectory(JobExecution jobExecution) {
+        return directory.resolve(jobExecution.getJobInstance().getJobName() + "-" + jobExecution.getJobInstance().getInstanceId());
+    }
+
+    // 다 쓴 뒤 이름을 바꾸므로 쓰다가 죽어도 이전 값이 깨지지 않는다.
+    private static void write(Path file, byte[] bytes) {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes.length);
+                buffer.put(bytes);
+                buffer.force();
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write handoff file " + file, e);
+        }
+    }
+
+    private static ByteBuffer map(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read handoff file " + file, e);
+        }
+    }
+
+    private static byte[] serialize(Serializable value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to serialize handoff value", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(InputStream in) {
+        try (ObjectInputStream objectIn = new ObjectInputStream(in)) {
+            return objectIn.readObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to deserialize handoff value", e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Unable to deserialize handoff value", e);
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? (buffer.get() & 0xff) : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.example.springbatchexample.support;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.LongTaskTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.ItemProcessListener;
+import org.springframework.batch.core.ItemReadListener;
+import org.springframework.batch.core.ItemWriteListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// step 하나의 처리량과 청크 단위 지연 시간을 Micrometer로 기록하는 listener
+// MeteredStepBuilderFactory가 모든 step에 등록한다. item/chunk listener는 SimpleStepBuilder가 같은 객체로 함께 등록한다.
+// 청크 안의 read/process/write 시간은 청크 별로 합산해서 histogram에 남기고, 커밋 시간은 트랜잭션 synchronization으로 잰다.
+// item 수도 청크 별로 모았다가 커밋된 뒤(afterChunk)에만 센다. 롤백된 청크의 item은 처리량에 들어가지 않는다.
+// 파티션 worker처럼 같은 builder로 만든 step이 동시에 실행되어도 스레드 별로 따로 잰다.
+public class StepMetricsListener implements StepExecutionListener, ChunkListener,
+        ItemReadListener<Object>, ItemProcessListener<Object, Object>, ItemWriteListener<Object> {
+    public static final String PREFIX = "batch.step.";
+    public static final String STEP_TAG = "step";
+
+    // SimpleMeterRegistry의 percentile은 최근 구간만 보므로, job 종료 시점의 dump에 충분한 구간을 남긴다.
+    private static final Duration STATISTIC_EXPIRY = Duration.ofMinutes(10);
+
+    private final Timer readTimer;
+    private final Timer processTimer;
+    private final Timer writeTimer;
+    private final Timer commitTimer;
+    private final Timer chunkTimer;
+    private final LongTaskTimer activeChunks;
+    private final Counter readCounter;
+    private final Counter writeCounter;
+    private final Counter filterCounter;
+    private final Counter skipCounter;
+    private final Counter rollbackCounter;
+    private final DistributionSummary throughput;
+
+    private final ThreadLocal<ChunkSample> samples = ThreadLocal.withInitial(ChunkSample::new);
+
+    public StepMetricsListener(String stepName, MeterRegistry registry) {
+        Tags tags = Tags.of(STEP_TAG, stepName);
+        this.readTimer = chunkTimer("chunk.read", "Time spent reading the items of one chunk", tags, registry);
+        this.processTimer = chunkTimer("chunk.process", "Time spent processing the items of one chunk", tags, registry);
+        this.writeTimer = chunkTimer("chunk.write", "Time spent writing one chunk", tags, registry);
+        this.commitTimer = chunkTimer("chunk.commit", "Time spent committing one chunk transaction", tags, registry);
+        this.chunkTimer = chunkTimer("chunk", "Time from the start of a chunk to its completion", tags, registry);
+        this.activeChunks = LongTaskTimer.builder(PREFIX + "chunk.active")
+                .description("Chunks currently in flight")
+                .tags(tags)
+                .register(registry);
+        this.readCounter = Counter.builder(PREFIX + "items.read").tags(tags).register(registry);
+        this.writeCounter = Counter.builder(PREFIX + "items.written").tags(tags).register(registry);
+        this.filterCounter = Counter.builder(PREFIX + "items.filtered").tags(tags).register(registry);
+        this.skipCounter = Counter.builder(PREFIX + "items.skipped").tags(tags).register(registry);
+        this.rollbackCounter = Counter.builder(PREFIX + "chunk.rollbacks").tags(tags).register(registry);
+        this.throughput = DistributionSummary.builder(PREFIX + "throughput")
+                .description("Items written per second for one step execution")
+                .baseUnit("items/s")
+                .tags(tags)
+                .register(registry);
+    }
+
+    private static Timer chunkTimer(String name, String description, Tags tags, MeterRegistry registry) {
+        return Timer.builder(PREFIX + name)
+                .description(description)
+                .tags(tags)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .distributionStatisticExpiry(STATISTIC_EXPIRY)
+                .register(registry);
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+    }
+
+    // 건너뛴 item은 fault tolerant step에서만 생기므로 step이 끝날 때 StepExecution의 값으로 센다.
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        skipCounter.increment(stepExecution.getSkipCount());
+        long millis = elapsedMillis(stepExecution);
+        if (millis > 0) {
+            throughput.record(stepExecution.getWriteCount() * 1000.0 / millis);
+        }
+        return null;
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+        ChunkSample sample = samples.get();
+        sample.start(activeChunks.start());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(sample);
+        }
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+        ChunkSample sample = samples.get();
+        if (sample.active == null) {
+            return;
+        }
+        if (sample.reads > 0) {
+            readTimer.record(sample.readNanos, TimeUnit.NANOSECONDS);
+        }
+        if (sample.processed > 0) {
+            processTimer.record(sample.processNanos, TimeUnit.NANOSECONDS);
+        }
+        if (sample.writes > 0) {
+            writeTimer.record(sample.writeNanos, TimeUnit.NANOSECONDS);
+        }
+        chunkTimer.record(System.nanoTime() - sample.chunkStart, TimeUnit.NANOSECONDS);
+        readCounter.increment(sample.reads);
+        filterCounter.increment(sample.filtered);
+        writeCounter.increment(sample.written);
+        sample.finish();
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        rollbackCounter.increment();
+        samples.get().finish();
+    }
+
+    @Override
+    public void beforeRead() {
+        samples.get().mark();
+    }
+
+    @Override
+    public void afterRead(Object item) {
+        ChunkSample sample = samples.get();
+        sample.readNanos += sample.elapsed();
+        sample.reads++;
+    }
+
+    @Override
+    public void onReadError(Exception ex) {
+    }
+
+    @Override
+    public void beforeProcess(Object item) {
+        samples.get().mark();
+    }
+
+    @Override
+    public void afterProcess(Object item, Object result) {
+        ChunkSample sample = samples.get();
+        sample.processNanos += sample.elapsed();
+        sample.processed++;
+        if (result == null) {
+            sample.filtered++;
+        }
+    }
+
+    @Override
+    public void onProcessError(Object item, Exception e) {
+    }
+
+    @Override
+    public void beforeWrite(List<?> items) {
+        samples.get().mark();
+    }
+
+    @Override
+    public void afterWrite(List<?> items) {
+        ChunkSample sample = samples.get();
+        sample.writeNanos += sample.elapsed();
+        sample.writes++;
+        sample.written += items.size();
+    }
+
+    @Override
+    public void onWriteError(Exception exception, List<?> items) {
+    }
+
+    static long elapsedMillis(StepExecution stepExecution) {
+        if (stepExecution.getStartTime() == null) {
+            return 0;
+        }
+        long end = (stepExecution.getEndTime() != null) ? stepExecution.getEndTime().getTime() : System.currentTimeMillis();
+        return end - stepExecution.getStartTime().getTime();
+    }
+
+    private class ChunkSample implements TransactionSynchronization {
+        private LongTaskTimer.Sample active;
+        private long chunkStart;
+        private long mark;
+        private long readNanos;
+        private long processNanos;
+        private long writeNanos;
+        private long commitStart;
+        private int reads;
+        private int processed;
+        private int writes;
+        private int filtered;
+        private int written;
+
+        void start(LongTaskTimer.Sample active) {
+            finish();
+            this.active = active;
+            chunkStart = System.nanoTime();
+            readNanos = 0;
+            processNanos = 0;
+            writeNanos = 0;
+            reads = 0;
+            processed = 0;
+            writes = 0;
+            filtered = 0;
+            written = 0;
+        }
+
+        void finish() {
+            if (active != null) {
+                active.stop();
+                active = null;
+            }
+        }
+
+        void mark() {
+            mark = System.nanoTime();
+        }
+
+        long elapsed() {
+            return System.nanoTime() - mark;
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            commitStart = System.nanoTime();
+        }
+
+        @Override
+        public void afterCommit() {
+            commitTimer.record(System.nanoTime() - commitStart, TimeUnit.NANOSECONDS);
+        }
+    }
+}
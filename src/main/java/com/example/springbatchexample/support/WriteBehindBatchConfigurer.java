@@ -0,0 +1,72 @@
+package com.example.springbatchexample.support;
+
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.dao.Jackson2ExecutionContextStringSerializer;
+import org.springframework.batch.core.repository.support.JobRepositoryFactoryBean;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.batch.BatchProperties;
+import org.springframework.boot.autoconfigure.batch.JpaBatchConfigurer;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.util.StringUtils;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.nio.file.Path;
+
+// Spring Boot의 JpaBatchConfigurer와 같은 설정으로 JDBC JobRepository를 만들고 WriteBehindJobRepository로 감싼다.
+// 트랜잭션 매니저와 JobExplorer는 그대로 사용한다.
+public class WriteBehindBatchConfigurer extends JpaBatchConfigurer implements DisposableBean {
+    private final BatchProperties properties;
+    private final DataSource dataSource;
+    private final Path directory;
+    private final boolean force;
+    private final long flushIntervalMillis;
+
+    private WriteBehindJobRepository jobRepository;
+
+    public WriteBehindBatchConfigurer(BatchProperties properties, DataSource dataSource,
+                                      TransactionManagerCustomizers transactionManagerCustomizers,
+                                      EntityManagerFactory entityManagerFactory,
+                                      Path directory, boolean force, long flushIntervalMillis) {
+        super(properties, dataSource, transactionManagerCustomizers, entityManagerFactory);
+        this.properties = properties;
+        this.dataSource = dataSource;
+        this.directory = directory;
+        this.force = force;
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    @Override
+    protected JobRepository createJobRepository() throws Exception {
+        WriteBehindJobRepositoryFactoryBean factory = new WriteBehindJobRepositoryFactoryBean();
+        factory.setDataSource(dataSource);
+        factory.setIsolationLevelForCreate(determineIsolationLevel());
+        String tablePrefix = properties.getJdbc().getTablePrefix();
+        if (StringUtils.hasText(tablePrefix)) {
+            factory.setTablePrefix(tablePrefix);
+        }
+        factory.setTransactionManager(getTransactionManager());
+        factory.afterPropertiesSet();
+
+        jobRepository = factory.createWriteBehindJobRepository();
+        return jobRepository;
+    }
+
+    // 종료할 때 밀린 값을 DB에 쓰고 write-ahead log를 지운다.
+    @Override
+    public void destroy() {
+        if (jobRepository != null) {
+            jobRepository.close();
+        }
+    }
+
+    // 기존 repository와 같은 DAO를 얻기 위해 JobRepositoryFactoryBean을 상속한다.
+    private class WriteBehindJobRepositoryFactoryBean extends JobRepositoryFactoryBean {
+
+        WriteBehindJobRepository createWriteBehindJobRepository() throws Exception {
+            return new WriteBehindJobRepository(getObject(), createJobExecutionDao(), createStepExecutionDao(),
+                    createExecutionContextDao(), new Jackson2ExecutionContextStringSerializer(), getTransactionManager(),
+                    directory, force, flushIntervalMillis);
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package com.example.springbatchexample.support;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.repository.ExecutionContextSerializer;
+import org.springframework.batch.core.repository.JobExecutionAlreadyRunningException;
+import org.springframework.batch.core.repository.JobInstanceAlreadyCompleteException;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.JobRestartException;
+import org.springframework.batch.core.repository.dao.ExecutionContextDao;
+import org.springframework.batch.core.repository.dao.JobExecutionDao;
+import org.springframework.batch.core.repository.dao.StepExecutionDao;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// 실행 중인 step의 메타데이터(청크 커밋마다 호출되는 update, updateExecutionContext)를 DB에 바로 쓰지 않는 JobRepository
+// 청크 트랜잭션이 커밋되기 직전(beforeCommit)에 그 시점의 StepExecution을 write-ahead log에 쓰고(fsync),
+// 커밋되면 메모리에 최신 값만 들고 있다가 flushInterval 마다 모아서 한 트랜잭션으로 DB에 쓴다.
+// 커밋이 실패해서 롤백되면 마지막으로 커밋된 값을 log에 다시 써서 롤백된 값을 덮는다.
+// step이 끝날 때, job 상태를 바꿀 때, step 실행 이력을 조회할 때는 먼저 밀린 값을 DB에 쓴 뒤 기존 repository에 맡긴다.
+// JVM이 죽으면 다음 기동 때 남은 write-ahead log를 DB에 반영하므로 재시작하면 마지막으로 커밋된 청크 다음부터 읽는다.
+// 커밋된 청크는 항상 log에 먼저 남아 있으므로 커밋 뒤에 죽어도 그 청크를 다시 쓰지 않는다.
+// 단, 업무 데이터와 메타데이터가 한 트랜잭션으로 묶이지 않으므로 DB 커밋이 진행되는 도중에 죽으면 log가 앞설 수 있다.
+@Slf4j
+public class WriteBehindJobRepository implements JobRepository, AutoCloseable {
+    private final JobRepository delegate;
+    private final JobExecutionDao jobExecutionDao;
+    private final StepExecutionDao stepExecutionDao;
+    private final ExecutionContextDao executionContextDao;
+    private final ExecutionContextSerializer serializer;
+    private final TransactionTemplate transactionTemplate;
+    private final StepExecutionWriteAheadLog writeAheadLog;
+    private final long flushIntervalMillis;
+    private final ScheduledExecutorService flusher;
+
+    // 아직 DB에 쓰지 않은 step execution 별 최신 값
+    private final Map<Long, StepExecutionSnapshot> pending = new LinkedHashMap<>();
+    // step execution 별로 마지막으로 커밋된 값. 롤백된 청크의 값을 log에서 덮을 때 쓴다.
+    private final Map<Long, StepExecutionSnapshot> committed = new ConcurrentHashMap<>();
+    // 백그라운드로 쓴 뒤의 DB version. step이 끝날 때 실행 중인 객체에 맞춰준다.
+    private final Map<Long, Integer> flushedVersions = new ConcurrentHashMap<>();
+    private final Map<Long, Long> interruptionChecks = new ConcurrentHashMap<>();
+    private final Object flushLock = new Object();
+
+    public WriteBehindJobRepository(JobRepository delegate, JobExecutionDao jobExecutionDao, StepExecutionDao stepExecutionDao,
+                                    ExecutionContextDao executionContextDao, ExecutionContextSerializer serializer,
+                                    PlatformTransactionManager transactionManager, Path directory, boolean force,
+                                    long flushIntervalMillis) {
+        this.delegate = delegate;
+        this.jobExecutionDao = jobExecutionDao;
+        this.stepExecutionDao = stepExecutionDao;
+        this.executionContextDao = executionContextDao;
+        this.serializer = serializer;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.writeAheadLog = new StepExecutionWriteAheadLog(directory, force);
+        this.flushIntervalMillis = flushIntervalMillis;
+
+        writeAheadLog.recover(this::recover);
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "job-repository-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean isJobInstanceExists(String jobName, JobParameters jobParameters) {
+        return delegate.isJobInstanceExists(jobName, jobParameters);
+    }
+
+    @Override
+    public JobInstance createJobInstance(String jobName, JobParameters jobParameters) {
+        return delegate.createJobInstance(jobName, jobParameters);
+    }
+
+    @Override
+    public JobExecution createJobExecution(JobInstance jobInstance, JobParameters jobParameters, String jobConfigurationLocation) {
+        return delegate.createJobExecution(jobInstance, jobParameters, jobConfigurationLocation);
+    }
+
+    @Override
+    public JobExecution createJobExecution(String jobName, JobParameters jobParameters)
+            throws JobExecutionAlreadyRunningException, JobRestartException, JobInstanceAlreadyCompleteException {
+        return delegate.createJobExecution(jobName, jobParameters);
+    }
+
+    @Override
+    public JobExecution getLastJobExecution(String jobName, JobParameters jobParameters) {
+        return delegate.getLastJobExecution(jobName, jobParameters);
+    }
+
+    @Override
+    public void update(JobExecution jobExecution) {
+        flush();
+        if (!jobExecution.isRunning()) {
+            interruptionChecks.remove(jobExecution.getId());
+        }
+        delegate.update(jobExecution);
+    }
+
+    @Override
+    public void updateExecutionContext(JobExecution jobExecution) {
+        delegate.updateExecutionContext(jobExecution);
+    }
+
+    @Override
+    public void add(StepExecution stepExecution) {
+        delegate.add(stepExecution);
+    }
+
+    @Override
+    public void addAll(Collection<StepExecution> stepExecutions) {
+        delegate.addAll(stepExecutions);
+    }
+
+    @Override
+    public void update(StepExecution stepExecution) {
+        if (!isRunning(stepExecution)) {
+            flush();
+            committed.remove(stepExecution.getId());
+            synchronizeVersion(stepExecution);
+            delegate.update(stepExecution);
+            return;
+        }
+
+        // SimpleJobRepository와 같이 마지막 갱신 시각을 남기고, 중지 요청은 flushInterval 마다 한번만 확인한다.
+        stepExecution.setLastUpdated(new Date());
+        checkForInterruption(stepExecution);
+        appendBeforeCommit(stepExecution);
+    }
+
+    @Override
+    public void updateExecutionContext(StepExecution stepExecution) {
+        if (!isRunning(stepExecution)) {
+            flush();
+            delegate.updateExecutionContext(stepExecution);
+            return;
+        }
+        appendBeforeCommit(stepExecution);
+    }
+
+    @Override
+    public StepExecution getLastStepExecution(JobInstance jobInstance, String stepName) {
+        flush();
+        return delegate.getLastStepExecution(jobInstance, stepName);
+    }
+
+    @Override
+    public int getStepExecutionCount(JobInstance jobInstance, String stepName) {
+        flush();
+        return delegate.getStepExecutionCount(jobInstance, stepName);
+    }
+
+    // 밀린 값을 모두 DB에 쓴다. 실패하면 값은 다음 flush로 남겨두고 예외를 던진다.
+    public void flush() {
+        synchronized (flushLock) {
+            List<StepExecutionSnapshot> batch;
+            synchronized (pending) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                writeAheadLog.rotate();
+                batch = new ArrayList<>(pending.values());
+                pending.clear();
+            }
+
+            try {
+                transactionTemplate.executeWithoutResult(status -> batch.forEach(this::write));
+            } catch (RuntimeException e) {
+                synchronized (pending) {
+                    for (StepExecutionSnapshot snapshot : batch) {
+                        pending.putIfAbsent(snapshot.stepExecutionId, snapshot);
+                    }
+                }
+                throw e;
+            }
+            writeAheadLog.deleteRotated();
+            log.debug("flushed {} step executions", batch.size());
+        }
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        flush();
+        writeAheadLog.close();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Unable to flush step executions, retrying in {}ms", flushIntervalMillis, e);
+        }
+    }
+
+    private static boolean isRunning(StepExecution stepExecution) {
+        return stepExecution.getEndTime() == null && stepExecution.getStatus().isRunning();
+    }
+
+    private void synchronizeVersion(StepExecution stepExecution) {
+        Integer version = flushedVersions.remove(stepExecution.getId());
+        if (version != null) {
+            stepExecution.setVersion(version);
+        }
+    }
+
+    private void checkForInterruption(StepExecution stepExecution) {
+        JobExecution jobExecution = stepExecution.getJobExecution();
+        long now = System.currentTimeMillis();
+        Long checked = interruptionChecks.get(jobExecution.getId());
+        if (checked == null || now - checked >= flushIntervalMillis) {
+            interruptionChecks.put(jobExecution.getId(), now);
+            jobExecutionDao.synchronizeStatus(jobExecution);
+        }
+        if (jobExecution.isStopping()) {
+            log.info("Parent JobExecution is stopped, so passing message on to StepExecution");
+            stepExecution.setTerminateOnly();
+        }
+    }
+
+    // 청크 트랜잭션 안에서 호출되면 커밋 직전에 한번만 기록한다. 트랜잭션 밖이면 바로 커밋된 값으로 기록한다.
+    private void appendBeforeCommit(StepExecution stepExecution) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            StepExecutionSnapshot snapshot = snapshot(stepExecution);
+            synchronized (pending) {
+                writeAheadLog.append(snapshot);
+                commit(snapshot);
+            }
+            return;
+        }
+        PendingAppends appends = (PendingAppends) TransactionSynchronizationManager.getResource(this);
+        if (appends == null) {
+            appends = new PendingAppends();
+            TransactionSynchronizationManager.bindResource(this, appends);
+            TransactionSynchronizationManager.registerSynchronization(appends);
+        }
+        appends.stepExecutions.add(stepExecution);
+    }
+
+    private StepExecutionSnapshot snapshot(StepExecution stepExecution) {
+        return StepExecutionSnapshot.of(stepExecution, serialize(stepExecution.getExecutionContext()));
+    }
+
+    // pending lock 안에서 호출한다. rotate()와 같은 lock 안에서 기록해야 지울 segment의 레코드가 이번 flush에서 빠지지 않는다.
+    private void commit(StepExecutionSnapshot snapshot) {
+        pending.put(snapshot.stepExecutionId, snapshot);
+        committed.put(snapshot.stepExecutionId, snapshot);
+    }
+
+    private void write(StepExecutionSnapshot snapshot) {
+        int version = flushedVersions.getOrDefault(snapshot.stepExecutionId, snapshot.version);
+        StepExecution stepExecution = snapshot.toStepExecution(version, deserialize(snapshot.executionContext));
+        stepExecutionDao.updateStepExecution(stepExecution);
+        executionContextDao.updateExecutionContext(stepExecution);
+        flushedVersions.put(snapshot.stepExecutionId, stepExecution.getVersion());
+    }
+
+    // 죽은 JVM이 남긴 값 중 step execution 별 마지막 값을, DB에 더 최신 값이 없을 때만 반영한다.
+    private void recover(List<StepExecutionSnapshot> snapshots) {
+        Map<Long, StepExecutionSnapshot> latest = new LinkedHashMap<>();
+        for (StepExecutionSnapshot snapshot : snapshots) {
+            latest.put(snapshot.stepExecutionId, snapshot);
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            for (StepExecutionSnapshot snapshot : latest.values()) {
+                StepExecution stored = stepExecutionDao.getStepExecution(new JobExecution(snapshot.jobExecutionId), snapshot.stepExecutionId);
+                if (stored == null || !stored.getStatus().isRunning()
+                        || (stored.getLastUpdated() != null && stored.getLastUpdated().getTime() > snapshot.lastUpdated)) {
+                    continue;
+                }
+                StepExecution stepExecution = snapshot.toStepExecution(stored.getVersion(), deserialize(snapshot.executionContext));
+                stepExecutionDao.updateStepExecution(stepExecution);
+                executionContextDao.updateExecutionContext(stepExecution);
+                log.info("recovered step execution {} ({}) : read={} write={} commit={}", snapshot.stepExecutionId,
+                        snapshot.stepName, snapshot.readCount, snapshot.writeCount, snapshot.commitCount);
+            }
+        });
+    }
+
+    private String serialize(ExecutionContext context) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : context.entrySet()) {
+            values.put(entry.getKey(), entry.getValue());
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            serializer.serialize(values, out);
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to serialize execution context", e);
+        }
+    }
+
+    private ExecutionContext deserialize(String context) {
+        try {
+            return new ExecutionContext(serializer.deserialize(new ByteArrayInputStream(context.getBytes(StandardCharsets.UTF_8))));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to deserialize execution context", e);
+        }
+    }
+
+    private class PendingAppends implements TransactionSynchronization {
+        private final Set<StepExecution> stepExecutions = new LinkedHashSet<>();
+        private final List<StepExecutionSnapshot> prepared = new ArrayList<>();
+        private long rotations;
+
+        // 이 뒤의 beforeCommit이나 DB 커밋이 실패하면 afterCompletion에서 덮는다.
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            for (StepExecution stepExecution : stepExecutions) {
+                prepared.add(snapshot(stepExecution));
+            }
+            synchronized (pending) {
+                prepared.forEach(writeAheadLog::append);
+                rotations = writeAheadLog.rotations();
+            }
+        }
+
+        // 커밋 전에 쓴 레코드가 그 사이의 flush로 지워질 segment에 들어갔으면 다시 써서 다음 flush까지 남긴다.
+        @Override
+        public void afterCommit() {
+            synchronized (pending) {
+                boolean rotated = writeAheadLog.rotations() != rotations;
+                for (StepExecutionSnapshot snapshot : prepared) {
+                    if (rotated) {
+                        writeAheadLog.append(snapshot);
+                    }
+                    commit(snapshot);
+                }
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResource(WriteBehindJobRepository.this);
+            if (status == STATUS_COMMITTED || prepared.isEmpty()) {
+                return;
+            }
+            // 롤백된 값은 마지막으로 커밋된 값으로 덮는다. 복구할 때는 step execution 별 마지막 레코드만 반영한다.
+            synchronized (pending) {
+                for (StepExecutionSnapshot snapshot : prepared) {
+                    StepExecutionSnapshot last = committed.get(snapshot.stepExecutionId);
+                    if (last != null) {
+                        writeAheadLog.append(last);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -8,6 +8,10 @@
 --     address varchar(255)
 -- );
 
+-- PersonBulkInsertItemWriter가 id를 increment 개씩 받아가는 시퀀스. 처음 실행할 때 한번만 만들어진다.
+-- IDENTITY로 insert 하는 writer와 id가 겹치지 않도록 IDENTITY가 쓰지 않는 범위(10억)부터 시작한다.
+create sequence if not exists person_id_seq start with 1000000000 increment by 1000;
+
 insert into person(name, age, address)
 values ('이경원', '32', '인천');
 insert into person(name, age, address)
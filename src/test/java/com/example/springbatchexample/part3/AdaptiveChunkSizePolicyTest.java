@@ -0,0 +1,78 @@
+package com.example.springbatchexample.part3;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.step.builder.StepBuilder;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveChunkSizePolicyTest {
+    private static final int ITEMS = 1500;
+    // item 하나를 쓰는 데 1ms가 걸리므로 50ms 안에 커밋하려면 청크는 50건 정도여야 한다.
+    private static final long ITEM_MILLIS = 1;
+    private static final long TARGET_MILLIS = 50;
+
+    // 작은 chunk size에서 시작하면 목표 시간에 맞는 크기까지 늘어난다.
+    @Test
+    void growsTowardsTargetCommitTime() throws Exception {
+        List<Integer> chunkSizes = run(5);
+
+        assertThat(chunkSizes.get(0)).isEqualTo(5);
+        assertConverged(chunkSizes);
+    }
+
+    // 큰 chunk size에서 시작하면 한번에 절반씩 줄어든다.
+    @Test
+    void shrinksTowardsTargetCommitTime() throws Exception {
+        List<Integer> chunkSizes = run(500);
+
+        assertThat(chunkSizes.get(0)).isEqualTo(500);
+        assertThat(chunkSizes.get(1)).isEqualTo(250);
+        assertConverged(chunkSizes);
+    }
+
+    // 마지막 청크는 남은 item만 담으므로 빼고, 그 앞의 청크들이 목표 크기 근처에 머무는지 본다.
+    // 청크마다 고정으로 드는 시간(job repository 갱신 등)이 있으므로 50보다 조금 작은 값에 머문다.
+    private static void assertConverged(List<Integer> chunkSizes) {
+        List<Integer> settled = chunkSizes.subList(chunkSizes.size() - 6, chunkSizes.size() - 1);
+        assertThat(settled).allSatisfy(size -> assertThat(size).isBetween(25, 60));
+    }
+
+    private static List<Integer> run(int initialChunkSize) throws Exception {
+        try (EmbeddedJobRepository repository = new EmbeddedJobRepository()) {
+            List<Integer> items = IntStream.range(0, ITEMS).boxed().collect(Collectors.toList());
+            List<Integer> chunkSizes = new CopyOnWriteArrayList<>();
+            AdaptiveChunkSizePolicy policy = new AdaptiveChunkSizePolicy(initialChunkSize, 1, 1000, TARGET_MILLIS);
+
+            JobExecution jobExecution = repository.launcher().run(new JobBuilder("adaptiveChunkJob")
+                    .repository(repository.jobRepository())
+                    .start(policy.apply(new StepBuilder("adaptiveChunkStep")
+                                    .repository(repository.jobRepository())
+                                    .transactionManager(repository.transactionManager())
+                                    .<Integer, Integer>chunk(policy))
+                            .reader(new CustomItemReader<>(items))
+                            .writer(chunk -> {
+                                chunkSizes.add(chunk.size());
+                                Thread.sleep(chunk.size() * ITEM_MILLIS);
+                            })
+                            .build())
+                    .build(), new JobParameters());
+
+            assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+            StepExecution stepExecution = jobExecution.getStepExecutions().iterator().next();
+            assertThat(chunkSizes.stream().mapToInt(Integer::intValue).sum()).isEqualTo(ITEMS);
+            // 재시작하면 이어서 쓸 수 있도록 마지막으로 정한 크기가 ExecutionContext에 남는다.
+            assertThat(stepExecution.getExecutionContext().getInt(AdaptiveChunkSizePolicy.CHUNK_SIZE)).isEqualTo(policy.getChunkSize());
+            return chunkSizes;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.springbatchexample.part3;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.SkipListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.core.step.skip.LimitCheckingItemSkipPolicy;
+import org.springframework.batch.item.database.JdbcBatchItemWriter;
+import org.springframework.batch.item.database.builder.JdbcBatchItemWriterBuilder;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BisectingChunkProcessorTest {
+    private static final int ITEMS = 1000;
+
+    // 1000건 중 bad item 5건만 건너뛰고 나머지는 쓴다. 건너뛴 건수는 writeSkipCount로 남고 listener는 item마다 호출된다.
+    @Test
+    void bisectionIsolatesBadRows() throws Exception {
+        List<Integer> bad = List.of(3, 250, 251, 700, 999);
+        try (EmbeddedJobRepository repository = new EmbeddedJobRepository()) {
+            List<Person> skipped = new CopyOnWriteArrayList<>();
+            JobExecution jobExecution = run(repository, items(bad), 10, skipped);
+
+            assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+            StepExecution stepExecution = jobExecution.getStepExecutions().iterator().next();
+            assertThat(stepExecution.getWriteSkipCount()).isEqualTo(bad.size());
+            assertThat(stepExecution.getWriteCount()).isEqualTo(ITEMS - bad.size());
+            // 마지막으로 빈 청크도 커밋된다.
+            assertThat(stepExecution.getCommitCount()).isEqualTo(3);
+            assertThat(skipped).extracting(Person::getId).containsExactlyInAnyOrderElementsOf(bad);
+            assertThat(count(repository)).isEqualTo(ITEMS - bad.size());
+        }
+    }
+
+    // skip 한도를 넘으면 청크가 롤백되고 step은 실패한다. 롤백된 청크의 skip은 남지 않는다.
+    @Test
+    void skipLimitRollsBackTheChunk() throws Exception {
+        List<Integer> bad = List.of(10, 20, 30);
+        try (EmbeddedJobRepository repository = new EmbeddedJobRepository()) {
+            List<Person> skipped = new CopyOnWriteArrayList<>();
+            JobExecution jobExecution = run(repository, items(bad), 2, skipped);
+
+            assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.FAILED);
+            StepExecution stepExecution = jobExecution.getStepExecutions().iterator().next();
+            assertThat(stepExecution.getWriteSkipCount()).isZero();
+            assertThat(stepExecution.getWriteCount()).isZero();
+            assertThat(skipped).isEmpty();
+            assertThat(count(repository)).isZero();
+        }
+    }
+
+    private JobExecution run(EmbeddedJobRepository repository, List<Person> items, int skipLimit, List<Person> skipped) throws Exception {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(repository.dataSource());
+        jdbcTemplate.execute("create table person (id int primary key, name varchar(255), age varchar(255), address varchar(255))");
+        JdbcBatchItemWriter<Person> writer = new JdbcBatchItemWriterBuilder<Person>()
+                .dataSource(repository.dataSource())
+                .beanMapped()
+                .sql("insert into person(id, name, age, address) values(:id, :name, :age, :address)")
+                .build();
+        writer.afterPropertiesSet();
+
+        LimitCheckingItemSkipPolicy skipPolicy = new LimitCheckingItemSkipPolicy(skipLimit,
+                Collections.singletonMap(DataIntegrityViolationException.class, true));
+        // step의 listener()로 등록한다.
+        Object listener = new SkipListener<Person, Person>() {
+            @Override
+            public void onSkipInRead(Throwable t) {
+            }
+
+            @Override
+            public void onSkipInWrite(Person item, Throwable t) {
+                assertThat(t).isInstanceOf(DataIntegrityViolationException.class);
+                skipped.add(item);
+            }
+
+            @Override
+            public void onSkipInProcess(Person item, Throwable t) {
+            }
+        };
+
+        return repository.launcher().run(new JobBuilder("bisectingJob")
+                .repository(repository.jobRepository())
+                .start(new BisectingStepBuilder<Person, Person>(new StepBuilder("bisectingStep")
+                        .repository(repository.jobRepository())
+                        .transactionManager(repository.transactionManager())
+                        .chunk(ITEMS / 2))
+                        .dataSource(repository.dataSource())
+                        .skipPolicy(skipPolicy)
+                        .reader(new CustomItemReader<>(items))
+                        .writer(writer)
+                        .listener(listener)
+                        .build())
+                .build(), new JobParameters());
+    }
+
+    private static List<Person> items(List<Integer> bad) {
+        List<Person> items = new ArrayList<>();
+        for (int id = 0; id < ITEMS; id++) {
+            // 컬럼 길이(255)를 넘는 이름은 insert가 실패한다.
+            String name = bad.contains(id) ? "x".repeat(300) : "멤버" + id;
+            items.add(new Person(id, name, "test age", "test address"));
+        }
+        return items;
+    }
+
+    private static int count(EmbeddedJobRepository repository) {
+        return new JdbcTemplate(repository.dataSource()).queryForObject("select count(*) from person", Integer.class);
+    }
+}
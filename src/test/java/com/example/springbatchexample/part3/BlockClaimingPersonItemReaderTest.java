@@ -0,0 +1,92 @@
+package com.example.springbatchexample.part3;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BlockClaimingPersonItemReaderTest {
+    private static final int ROWS = 3000;
+
+    @TempDir
+    Path directory;
+
+    // 여러 스레드가 읽다가 한 청크가 실패한 뒤 재시작해도, 커밋된 item은 모든 id가 정확히 한번씩이다.
+    @Test
+    void restartAfterRollbackReadsEveryLineOnce() throws Exception {
+        Path input = directory.resolve("input.csv");
+        StringBuilder csv = new StringBuilder("id,이름,나이,거주지\n");
+        for (int id = 1; id <= ROWS; id++) {
+            csv.append(id).append(",멤버").append(id).append(",test age,test address\n");
+        }
+        csv.append("---------------\n");
+        Files.write(input, csv.toString().getBytes(StandardCharsets.UTF_8));
+
+        try (EmbeddedJobRepository repository = new EmbeddedJobRepository()) {
+            Map<Integer, Integer> committed = new ConcurrentHashMap<>();
+            List<Integer> order = new CopyOnWriteArrayList<>();
+            AtomicBoolean fail = new AtomicBoolean(true);
+
+            BlockClaimingPersonItemReader reader = new BlockClaimingPersonItemReader();
+            reader.setResource(new FileSystemResource(input));
+            reader.setLinesToSkip(1);
+            reader.setComments("---");
+            reader.setBlockSize(512);
+
+            Job job = new JobBuilder("blockClaimingJob")
+                    .repository(repository.jobRepository())
+                    .start(new StepBuilder("blockClaimingStep")
+                            .repository(repository.jobRepository())
+                            .transactionManager(repository.transactionManager())
+                            .<Person, Person>chunk(7)
+                            .reader(reader)
+                            .writer(items -> {
+                                if (order.size() > ROWS / 3 && fail.compareAndSet(true, false)) {
+                                    throw new IllegalStateException("write failed");
+                                }
+                                List<Integer> ids = items.stream().map(Person::getId).collect(Collectors.toList());
+                                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                                    @Override
+                                    public void afterCommit() {
+                                        ids.forEach(id -> committed.merge(id, 1, Integer::sum));
+                                        order.addAll(ids);
+                                    }
+                                });
+                            })
+                            .taskExecutor(new SimpleAsyncTaskExecutor("block-"))
+                            .throttleLimit(4)
+                            .build())
+                    .build();
+
+            JobExecution failed = repository.launcher().run(job, new JobParameters());
+            int beforeRestart = committed.size();
+            JobExecution restarted = repository.launcher().run(job, new JobParameters());
+
+            assertThat(failed.getStatus()).isEqualTo(BatchStatus.FAILED);
+            assertThat(beforeRestart).isLessThan(ROWS);
+            assertThat(restarted.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+            assertThat(committed).hasSize(ROWS);
+            assertThat(committed.values()).containsOnly(1);
+        }
+    }
+}
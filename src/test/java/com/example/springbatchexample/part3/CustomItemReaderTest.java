@@ -0,0 +1,87 @@
+package com.example.springbatchexample.part3;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomItemReaderTest {
+    private static final int ITEMS = 2000;
+
+    // multi-threaded step에서 한 청크가 실패한 뒤 재시작해도, 커밋된 항목은 모두 정확히 한번씩이다.
+    @Test
+    void restartUnderMultiThreadedStepReadsEveryItemOnce() throws Exception {
+        try (EmbeddedJobRepository repository = new EmbeddedJobRepository()) {
+            List<Integer> items = IntStream.range(0, ITEMS).boxed().collect(Collectors.toList());
+            Map<Integer, Integer> committed = new ConcurrentHashMap<>();
+            AtomicInteger writes = new AtomicInteger();
+
+            Job job = new JobBuilder("customItemReaderJob")
+                    .repository(repository.jobRepository())
+                    .start(new StepBuilder("customItemReaderStep")
+                            .repository(repository.jobRepository())
+                            .transactionManager(repository.transactionManager())
+                            .<Integer, Integer>chunk(7)
+                            .reader(new CustomItemReader<>(items))
+                            .writer(chunk -> {
+                                // 다른 스레드들이 청크를 읽고 있는 중간에 한번 실패시킨다.
+                                if (writes.incrementAndGet() == 60) {
+                                    throw new IllegalStateException("write failed");
+                                }
+                                List<Integer> written = List.copyOf(chunk);
+                                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                                    @Override
+                                    public void afterCommit() {
+                                        written.forEach(item -> committed.merge(item, 1, Integer::sum));
+                                    }
+                                });
+                            })
+                            .taskExecutor(new SimpleAsyncTaskExecutor("custom-"))
+                            .throttleLimit(4)
+                            .build())
+                    .build();
+
+            JobExecution failed = repository.launcher().run(job, new JobParameters());
+            int beforeRestart = committed.size();
+            JobExecution restarted = repository.launcher().run(job, new JobParameters());
+
+            assertThat(failed.getStatus()).isEqualTo(BatchStatus.FAILED);
+            assertThat(beforeRestart).isLessThan(ITEMS);
+            assertThat(restarted.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+            assertThat(committed).hasSize(ITEMS);
+            assertThat(committed.values()).containsOnly(1);
+        }
+    }
+
+    // 트랜잭션 밖에서 읽으면 읽은 즉시 커밋된 것으로 보고, 재시작하면 그 다음부터 읽는다.
+    @Test
+    void restartWithoutTransactionContinuesAfterLastRead() throws Exception {
+        CustomItemReader<Integer> reader = new CustomItemReader<>(List.of(1, 2, 3, 4, 5));
+        ExecutionContext executionContext = new ExecutionContext();
+        reader.open(executionContext);
+        reader.read();
+        reader.read();
+        reader.update(executionContext);
+        reader.close();
+
+        CustomItemReader<Integer> restarted = new CustomItemReader<>(List.of(1, 2, 3, 4, 5));
+        restarted.open(executionContext);
+        assertThat(restarted.read()).isEqualTo(3);
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.springbatchexample.part3;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DuplicateKeyIndexTest {
+    private static final int ITEMS = 20_000;
+
+    @TempDir
+    Path directory;
+
+    // 색인 종류와 관계없이 같은 입력에서 같은 item이 남아야 한다.
+    @Test
+    void allBackendsKeepTheSameItems() {
+        List<String> names = names(ITEMS, ITEMS / 4);
+        List<String> expected = dedup(names, new HashSet<>());
+
+        assertThat(dedup(names, new HashedKeyIndex(ITEMS))).isEqualTo(expected);
+        // 메모리를 작게 잡아서 spill과 run 병합이 일어나게 한다.
+        assertThat(dedup(names, new SpillableKeyIndex(256, directory, 2))).isEqualTo(expected);
+        // 예상 건수를 작게 잡아서 오탐이 자주 나게 한다.
+        assertThat(dedup(names, new BloomFilterKeyIndex(100, 0.01, new SpillableKeyIndex(256, directory, 2)))).isEqualTo(expected);
+    }
+
+    // journal로 복구한 key는 다시 받아들이지 않는다.
+    @Test
+    void restoredKeysAreDuplicates() {
+        List<String> names = names(2_000, 1_000);
+        List<String> committed = names.subList(0, 1_000);
+        Set<String> restored = new HashSet<>(committed);
+        List<String> expected = dedup(names.subList(1_000, names.size()), restored);
+
+        List<DuplicateKeyIndex> indexes = List.of(
+                new HashedKeyIndex(ITEMS),
+                new SpillableKeyIndex(64, directory, 2),
+                new BloomFilterKeyIndex(100, 0.01, new SpillableKeyIndex(64, directory, 2)));
+        for (DuplicateKeyIndex index : indexes) {
+            committed.forEach(name -> index.restore(DuplicateKeyIndex.hash(name)));
+            assertThat(dedup(names.subList(1_000, names.size()), index)).isEqualTo(expected);
+        }
+    }
+
+    // 롤백으로 지운 key는 모든 색인에서 다시 받아들인다. spill된 run 파일에 있는 key와 병합 뒤의 key도 마찬가지다.
+    @Test
+    void removedKeysAreAcceptedAgain() {
+        List<String> names = names(2_000, 2_000).stream().distinct().collect(Collectors.toList());
+        List<String> rolledBack = names.subList(0, names.size() / 2);
+
+        List<DuplicateKeyIndex> indexes = List.of(
+                new HashedKeyIndex(ITEMS),
+                new SpillableKeyIndex(64, directory, 2),
+                new BloomFilterKeyIndex(100, 0.01, new SpillableKeyIndex(64, directory, 2)));
+        for (DuplicateKeyIndex index : indexes) {
+            try {
+                names.forEach(name -> assertThat(index.add(DuplicateKeyIndex.hash(name), name)).isTrue());
+                rolledBack.forEach(name -> assertThat(index.remove(DuplicateKeyIndex.hash(name))).isTrue());
+                rolledBack.forEach(name -> assertThat(index.remove(DuplicateKeyIndex.hash(name))).isFalse());
+
+                names.forEach(name -> assertThat(index.add(DuplicateKeyIndex.hash(name), name))
+                        .as("%s %s", index.getClass().getSimpleName(), name)
+                        .isEqualTo(rolledBack.contains(name)));
+                names.forEach(name -> assertThat(index.add(DuplicateKeyIndex.hash(name), name)).isFalse());
+            } finally {
+                index.close();
+            }
+        }
+    }
+
+    // 같은 key를 지우고 다시 등록하는 것을 반복해도 tombstone 슬롯을 재사용하므로 가득 차지 않는다.
+    @Test
+    void hashedIndexReusesTombstones() {
+        HashedKeyIndex index = new HashedKeyIndex(100);
+        for (int round = 0; round < 1_000; round++) {
+            for (int i = 0; i < 100; i++) {
+                assertThat(index.add(DuplicateKeyIndex.hash("name-" + i), null)).isTrue();
+            }
+            for (int i = 0; i < 100; i++) {
+                index.remove(DuplicateKeyIndex.hash("name-" + i));
+            }
+        }
+        assertThat(index.size()).isZero();
+        assertThat(index.isFull()).isFalse();
+    }
+
+    private static List<String> dedup(List<String> names, DuplicateKeyIndex index) {
+        try {
+            List<String> kept = new ArrayList<>();
+            for (String name : names) {
+                if (index.add(DuplicateKeyIndex.hash(name), name)) {
+                    kept.add(name);
+                }
+            }
+            return kept;
+        } finally {
+            index.close();
+        }
+    }
+
+    private static List<String> dedup(List<String> names, Set<String> seen) {
+        List<String> kept = new ArrayList<>();
+        for (String name : names) {
+            if (seen.add(name)) {
+                kept.add(name);
+            }
+        }
+        return kept;
+    }
+
+    private static List<String> names(int count, int distinct) {
+        Random random = new Random(42);
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add("name-" + random.nextInt(distinct));
+        }
+        return names;
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.springbatchexample.part3;
+
+import org.springframework.batch.core.launch.support.SimpleJobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.support.JobRepositoryFactoryBean;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+// 테스트마다 새 in-memory H2에 batch 메타 테이블을 만들고 그 위의 JobRepository와 JobLauncher를 만든다.
+// 재시작 테스트는 ExecutionContext가 실제로 직렬화되어 저장되어야 하므로 Map 저장소 대신 쓴다.
+class EmbeddedJobRepository implements AutoCloseable {
+    private final EmbeddedDatabase dataSource;
+    private final DataSourceTransactionManager transactionManager;
+    private final JobRepository jobRepository;
+    private final SimpleJobLauncher launcher;
+
+    EmbeddedJobRepository() throws Exception {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScript("classpath:org/springframework/batch/core/schema-h2.sql")
+                .build();
+        transactionManager = new DataSourceTransactionManager(dataSource);
+
+        JobRepositoryFactoryBean factory = new JobRepositoryFactoryBean();
+        factory.setDataSource(dataSource);
+        factory.setTransactionManager(transactionManager);
+        factory.afterPropertiesSet();
+        jobRepository = factory.getObject();
+
+        launcher = new SimpleJobLauncher();
+        launcher.setJobRepository(jobRepository);
+        launcher.afterPropertiesSet();
+    }
+
+    // 메타 테이블과 같은 DB. 업무 테이블을 만들어 같은 트랜잭션으로 쓸 수 있다.
+    EmbeddedDatabase dataSource() {
+        return dataSource;
+    }
+
+    DataSourceTransactionManager transactionManager() {
+        return transactionManager;
+    }
+
+    JobRepository jobRepository() {
+        return jobRepository;
+    }
+
+    SimpleJobLauncher launcher() {
+        return launcher;
+    }
+
+    @Override
+    public void close() {
+        dataSource.shutdown();
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.springbatchexample.part3;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.core.io.FileSystemResource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ExternalSortDedupTaskletTest {
+
+    @TempDir
+    Path directory;
+
+    // run이 여러 번 합쳐지도록 runSize와 fanIn을 작게 잡아도 이름마다 첫 줄만 원래 순서대로 남는다.
+    @Test
+    void keepsFirstLineOfEachName() throws Exception {
+        Path input = directory.resolve("input.csv");
+        StringBuilder csv = new StringBuilder("id,이름,나이,거주지\n");
+        for (int id = 1; id <= 50; id++) {
+            csv.append(id).append(",멤버").append(id % 7).append(",test age,test address\n");
+        }
+        csv.append("---------------\n");
+        Files.write(input, csv.toString().getBytes(StandardCharsets.UTF_8));
+
+        Path output = directory.resolve("output.csv");
+        ExternalSortDedupTasklet tasklet = new ExternalSortDedupTasklet(new FileSystemResource(input), output, directory.resolve("work"));
+        tasklet.setRunSize(3);
+        tasklet.setFanIn(2);
+        tasklet.setLinesToSkip(1);
+        tasklet.setComments("---");
+
+        StepExecution stepExecution = new StepExecution("dedupStep", new JobExecution(new JobInstance(1L, "dedupJob"), 1L, null, null));
+        StepContribution contribution = stepExecution.createStepContribution();
+        tasklet.execute(contribution, new ChunkContext(new StepContext(stepExecution)));
+        stepExecution.apply(contribution);
+
+        assertThat(Files.readAllLines(output)).containsExactly(
+                "id,이름,나이,거주지",
+                "1,멤버1,test age,test address",
+                "2,멤버2,test age,test address",
+                "3,멤버3,test age,test address",
+                "4,멤버4,test age,test address",
+                "5,멤버5,test age,test address",
+                "6,멤버6,test age,test address",
+                "7,멤버0,test age,test address",
+                "---------------");
+        assertThat(stepExecution.getReadCount()).isEqualTo(50);
+        assertThat(stepExecution.getWriteCount()).isEqualTo(7);
+        assertThat(stepExecution.getFilterCount()).isEqualTo(43);
+    }
+
+    @Test
+    void rejectsFanInThatCannotMerge() {
+        ExternalSortDedupTasklet tasklet = new ExternalSortDedupTasklet(new FileSystemResource(directory.resolve("input.csv")),
+                directory.resolve("output.csv"), directory);
+
+        assertThatThrownBy(() -> tasklet.setFanIn(1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> tasklet.setRunSize(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
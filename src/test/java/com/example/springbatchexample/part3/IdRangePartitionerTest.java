@@ -0,0 +1,90 @@
+package com.example.springbatchexample.part3;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdRangePartitionerTest {
+    private EmbeddedDatabase dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .build();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table person (id bigint primary key, name varchar(255))");
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.shutdown();
+    }
+
+    // id가 1~100, 100만~100만+99 두 덩어리로 떨어져 있어도 파티션마다 같은 수의 행을 받는다.
+    // 구간은 빈틈 없이 이어지므로 모든 행이 정확히 한 파티션에 들어간다.
+    @Test
+    void splitsByRowCountNotByIdRange() {
+        insert(1, 100);
+        insert(1_000_000, 100);
+
+        Map<String, ExecutionContext> partitions = new IdRangePartitioner(dataSource, "person", "id").partition(4);
+
+        assertThat(partitions).hasSize(4);
+        long previous = 0;
+        for (ExecutionContext context : partitions.values()) {
+            assertThat(context.getLong(IdRangePartitioner.MIN_ID)).isEqualTo(previous);
+            previous = context.getLong(IdRangePartitioner.MAX_ID);
+            assertThat(rowsIn(context)).isEqualTo(50);
+        }
+        assertThat(previous).isEqualTo(1_000_099);
+    }
+
+    // 행이 gridSize보다 적으면 빈 구간을 만들지 않는다.
+    @Test
+    void skipsEmptyRangesWhenRowsAreFewerThanGridSize() {
+        insert(10, 3);
+
+        Map<String, ExecutionContext> partitions = new IdRangePartitioner(dataSource, "person", "id").partition(8);
+
+        assertThat(partitions).containsOnlyKeys("partition0", "partition1", "partition2");
+        List<Integer> rows = new ArrayList<>();
+        partitions.values().forEach(context -> rows.add(rowsIn(context)));
+        assertThat(rows).containsExactly(1, 1, 1);
+    }
+
+    // 빈 테이블이면 아무것도 읽지 않는 파티션 하나만 만든다.
+    @Test
+    void emptyTableHasSinglePartition() {
+        Map<String, ExecutionContext> partitions = new IdRangePartitioner(dataSource, "person", "id").partition(4);
+
+        assertThat(partitions).hasSize(1);
+        assertThat(rowsIn(partitions.get("partition0"))).isZero();
+    }
+
+    private void insert(long from, int count) {
+        List<Object[]> rows = new ArrayList<>();
+        for (long id = from; id < from + count; id++) {
+            rows.add(new Object[]{id, "멤버" + id});
+        }
+        jdbcTemplate.batchUpdate("insert into person(id, name) values (?, ?)", rows);
+    }
+
+    private int rowsIn(ExecutionContext context) {
+        return jdbcTemplate.queryForObject("select count(*) from person where id > ? and id <= ?", Integer.class,
+                context.getLong(IdRangePartitioner.MIN_ID), context.getLong(IdRangePartitioner.MAX_ID));
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.springbatchexample.part3;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.file.FlatFileItemReader;
+import org.springframework.batch.item.file.builder.FlatFileItemReaderBuilder;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MappedPersonItemReaderTest {
+    private static final String INPUT = "id,이름,나이,거주지\n"
+            + "1,멤버1,20,서울\n"
+            + "2, 멤버2 , 21 ,\"경기, 성남\"\n"
+            + " 3 ,\" 멤버3\",22,부산\r\n";
+
+    // jar 안의 resource처럼 파일이 아닌 resource도 FlatFileItemReader와 같은 값으로 읽는다.
+    @Test
+    void readsNonFileResourceLikeFlatFileItemReader() throws Exception {
+        Resource resource = new ByteArrayResource(INPUT.getBytes(StandardCharsets.UTF_8));
+
+        MappedPersonItemReader mapped = new MappedPersonItemReader();
+        mapped.setResource(resource);
+        mapped.setLinesToSkip(1);
+
+        FlatFileItemReader<Person> flat = new FlatFileItemReaderBuilder<Person>()
+                .name("flat")
+                .resource(resource)
+                .encoding("UTF-8")
+                .linesToSkip(1)
+                .delimited().names("id", "name", "age", "address")
+                .fieldSetMapper(fieldSet -> new Person(fieldSet.readInt(0), fieldSet.readString(1), fieldSet.readString(2), fieldSet.readString(3)))
+                .build();
+
+        assertThat(fields(readAll(mapped))).isEqualTo(fields(readAll(flat)))
+                .containsExactly("1|멤버1|20|서울", "2|멤버2|21|경기, 성남", "3|멤버3|22|부산");
+    }
+
+    private static List<Person> readAll(ItemStreamReader<Person> reader) throws Exception {
+        reader.open(new ExecutionContext());
+        try {
+            List<Person> persons = new ArrayList<>();
+            Person person;
+            while ((person = reader.read()) != null) {
+                persons.add(person);
+            }
+            return persons;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static List<String> fields(List<Person> persons) {
+        List<String> fields = new ArrayList<>();
+        persons.forEach(person -> fields.add(person.getId() + "|" + person.getName() + "|" + person.getAge() + "|" + person.getAddress()));
+        return fields;
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.springbatchexample.part3;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PersonBinaryItemWriterTest {
+    private final TransactionTemplate transactionTemplate = new TransactionTemplate(new ResourcelessTransactionManager());
+
+    @TempDir
+    Path directory;
+
+    // 블록 경계, 사전 참조, null, 버퍼보다 긴 문자열을 지나도 쓴 그대로 읽힌다.
+    @Test
+    void readsBackWhatWasWritten() throws Exception {
+        Path file = directory.resolve("person.bin");
+        List<Person> people = people(1, 40);
+        people.add(new Person(41, null, "나이", "x".repeat(300)));
+
+        PersonBinaryItemWriter writer = writer(file);
+        ExecutionContext executionContext = new ExecutionContext();
+        writer.open(executionContext);
+        for (int from = 0; from < people.size(); from += 7) {
+            commit(writer, people.subList(from, Math.min(from + 7, people.size())), executionContext);
+        }
+        writer.close();
+
+        assertThat(lines(readAll(file, new ExecutionContext()))).isEqualTo(lines(people));
+    }
+
+    // 롤백된 청크는 잘라내고, 커밋되지 않은 채 남은 바이트는 재시작할 때 잘라낸 뒤 이어 쓴다.
+    @Test
+    void restartAfterRollbackKeepsOnlyCommittedChunks() throws Exception {
+        Path file = directory.resolve("person.bin");
+        ExecutionContext executionContext = new ExecutionContext();
+
+        PersonBinaryItemWriter writer = writer(file);
+        writer.open(executionContext);
+        commit(writer, people(1, 10), executionContext);
+        assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(status -> {
+            write(writer, people(11, 20));
+            throw new IllegalStateException("chunk failed");
+        })).isInstanceOf(IllegalStateException.class);
+        commit(writer, people(21, 25), executionContext);
+        ExecutionContext lastCommit = new ExecutionContext(executionContext);
+        // 커밋되지 않은 청크를 쓴 채로 멈춘다. close()가 버퍼를 내보내므로 파일에는 남는다.
+        write(writer, people(26, 30));
+        writer.close();
+
+        PersonBinaryItemWriter restarted = writer(file);
+        restarted.open(lastCommit);
+        commit(restarted, people(26, 30), lastCommit);
+        restarted.close();
+
+        List<Person> expected = people(1, 10);
+        expected.addAll(people(21, 30));
+        assertThat(lines(readAll(file, new ExecutionContext()))).isEqualTo(lines(expected));
+    }
+
+    // reader는 블록 중간에서 재시작해도 사전을 복원해서 이어 읽는다.
+    @Test
+    void readerRestartsInsideBlock() throws Exception {
+        Path file = directory.resolve("person.bin");
+        List<Person> people = people(1, 30);
+        PersonBinaryItemWriter writer = writer(file);
+        ExecutionContext writerContext = new ExecutionContext();
+        writer.open(writerContext);
+        commit(writer, people, writerContext);
+        writer.close();
+
+        ExecutionContext executionContext = new ExecutionContext();
+        PersonBinaryItemReader reader = reader(file);
+        reader.open(executionContext);
+        List<Person> read = new ArrayList<>();
+        for (int i = 0; i < 13; i++) {
+            read.add(reader.read());
+        }
+        reader.update(executionContext);
+        reader.read();
+        reader.close();
+
+        read.addAll(readAll(file, executionContext));
+        assertThat(lines(read)).isEqualTo(lines(people));
+    }
+
+    private void commit(PersonBinaryItemWriter writer, List<Person> items, ExecutionContext executionContext) {
+        transactionTemplate.executeWithoutResult(status -> {
+            write(writer, items);
+            writer.update(executionContext);
+        });
+    }
+
+    private static void write(PersonBinaryItemWriter writer, List<Person> items) {
+        try {
+            writer.write(items);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static PersonBinaryItemWriter writer(Path file) {
+        PersonBinaryItemWriter writer = new PersonBinaryItemWriter();
+        writer.setResource(new FileSystemResource(file));
+        writer.setBlockSize(8);
+        writer.setDictionarySize(4);
+        writer.setBufferSize(64);
+        return writer;
+    }
+
+    private static PersonBinaryItemReader reader(Path file) {
+        PersonBinaryItemReader reader = new PersonBinaryItemReader();
+        reader.setResource(new FileSystemResource(file));
+        reader.setWindowSize(512);
+        return reader;
+    }
+
+    private static List<Person> readAll(Path file, ExecutionContext executionContext) throws Exception {
+        PersonBinaryItemReader reader = reader(file);
+        reader.open(executionContext);
+        List<Person> people = new ArrayList<>();
+        for (Person person = reader.read(); person != null; person = reader.read()) {
+            people.add(person);
+        }
+        reader.close();
+        return people;
+    }
+
+    private static List<Person> people(int from, int to) {
+        return IntStream.rangeClosed(from, to)
+                .mapToObj(id -> new Person(id, "멤버" + (id % 5), (id % 3 == 0) ? null : "test age", "address " + (id % 2)))
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    private static List<String> lines(List<Person> people) {
+        return people.stream()
+                .map(person -> person.getId() + "," + person.getName() + "," + person.getAge() + "," + person.getAddress())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.springbatchexample.part3;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// 같은 조건을 processor, CSV 토큰, SQL where 절, JPQL where 절로 적용해도 같은 Person만 남는다.
+class PersonPredicateTest {
+    private static final String[] ADDRESSES = {"서울", "경기, 성남", "부산"};
+
+    private final List<Person> persons = new ArrayList<>();
+    private final Map<String, PersonPredicate> predicates = new LinkedHashMap<>();
+    private EmbeddedDatabase dataSource;
+    private EntityManagerFactory entityManagerFactory;
+
+    @BeforeEach
+    void setUp() {
+        for (int id = 1; id <= 40; id++) {
+            persons.add(new Person(id, "멤버" + (id % 5), String.valueOf(20 + id), ADDRESSES[id % ADDRESSES.length]));
+        }
+        predicates.put("idModulo", PersonPredicate.idModulo(2, 0));
+        predicates.put("idBetween", PersonPredicate.idBetween(5, 17));
+        predicates.put("nameEquals", PersonPredicate.nameEquals("멤버3"));
+        // CSV에서는 따옴표로 감싼 필드다.
+        predicates.put("quotedAddressEquals", PersonPredicate.addressEquals("경기, 성남"));
+        predicates.put("and", PersonPredicate.addressEquals("서울").and(PersonPredicate.idModulo(2, 0)));
+
+        dataSource = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .build();
+        entityManagerFactory = entityManagerFactory(dataSource);
+        new JdbcTemplate(dataSource).batchUpdate("insert into person(id, name, age, address) values (?, ?, ?, ?)",
+                persons.stream()
+                        .map(person -> new Object[]{person.getId(), person.getName(), person.getAge(), person.getAddress()})
+                        .collect(Collectors.toList()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        entityManagerFactory.close();
+        dataSource.shutdown();
+    }
+
+    // CSV reader는 Person을 만들기 전에 거르고, 걸러낸 줄 수를 센다.
+    @Test
+    void csvTokensMatchProcessor() throws Exception {
+        for (Map.Entry<String, PersonPredicate> entry : predicates.entrySet()) {
+            List<Integer> expected = expected(entry.getValue());
+
+            MappedPersonItemReader reader = new MappedPersonItemReader();
+            reader.setResource(new ByteArrayResource(csv().getBytes(StandardCharsets.UTF_8)));
+            reader.setLinesToSkip(1);
+            reader.setFilter(entry.getValue());
+            List<Integer> actual = new ArrayList<>();
+            reader.open(new ExecutionContext());
+            try {
+                Person person;
+                while ((person = reader.read()) != null) {
+                    actual.add(person.getId());
+                }
+            } finally {
+                reader.close();
+            }
+
+            assertThat(actual).as(entry.getKey()).isEqualTo(expected);
+            assertThat(reader.getFilteredCount()).as(entry.getKey()).isEqualTo(persons.size() - expected.size());
+        }
+    }
+
+    // JDBC reader의 where 절과 SourceFilterListener가 다시 세는 걸러낸 행 수
+    @Test
+    void sqlMatchesProcessor() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        for (Map.Entry<String, PersonPredicate> entry : predicates.entrySet()) {
+            PersonPredicate predicate = entry.getValue();
+            List<Integer> expected = expected(predicate);
+
+            List<Integer> actual = jdbcTemplate.queryForList("select id from person where " + predicate.sql() + " order by id",
+                    Integer.class, predicate.sqlParameters().toArray());
+            StepExecution stepExecution = new StepExecution("jdbcStep", null);
+            SourceFilterListener.of(dataSource, "person", predicate).afterStep(stepExecution);
+
+            assertThat(actual).as(entry.getKey()).isEqualTo(expected);
+            assertThat(stepExecution.getExecutionContext().getLong(SourceFilterListener.SOURCE_FILTERED_COUNT))
+                    .as(entry.getKey()).isEqualTo(persons.size() - expected.size());
+        }
+    }
+
+    // JPA reader의 where 절
+    @Test
+    void jpqlMatchesProcessor() {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            for (Map.Entry<String, PersonPredicate> entry : predicates.entrySet()) {
+                Map<String, Object> parameters = new HashMap<>();
+                String where = entry.getValue().jpql("p", parameters);
+                TypedQuery<Person> query = entityManager.createQuery("select p from Person p where " + where + " order by p.id", Person.class);
+                parameters.forEach(query::setParameter);
+
+                List<Integer> actual = query.getResultList().stream().map(Person::getId).collect(Collectors.toList());
+
+                assertThat(actual).as(entry.getKey()).isEqualTo(expected(entry.getValue()));
+            }
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    // processor로 적용한 결과. 조건마다 일부만 남아야 비교가 의미 있다.
+    private List<Integer> expected(PersonPredicate predicate) {
+        List<Integer> ids = new ArrayList<>();
+        for (Person person : persons) {
+            try {
+                if (predicate.asProcessor().process(person) != null) {
+                    ids.add(person.getId());
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        assertThat(ids).isNotEmpty().hasSizeLessThan(persons.size());
+        return ids;
+    }
+
+    private String csv() {
+        StringBuilder csv = new StringBuilder("id,이름,나이,거주지\n");
+        for (Person person : persons) {
+            String address = person.getAddress().contains(",") ? "\"" + person.getAddress() + "\"" : person.getAddress();
+            csv.append(person.getId()).append(',').append(person.getName()).append(',')
+                    .append(person.getAge()).append(',').append(address).append('\n');
+        }
+        return csv.toString();
+    }
+
+    private static EntityManagerFactory entityManagerFactory(EmbeddedDatabase dataSource) {
+        LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+        factory.setDataSource(dataSource);
+        factory.setPackagesToScan(Person.class.getPackageName());
+        factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        Properties properties = new Properties();
+        properties.setProperty("hibernate.hbm2ddl.auto", "create");
+        factory.setJpaProperties(properties);
+        factory.afterPropertiesSet();
+        return factory.getObject();
+    }
+}
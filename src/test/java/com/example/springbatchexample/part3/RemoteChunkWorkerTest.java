@@ -0,0 +1,54 @@
+package com.example.springbatchexample.part3;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.integration.chunk.ChunkRequest;
+import org.springframework.batch.integration.chunk.ChunkResponse;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RemoteChunkWorkerTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void resentChunkIsWrittenAfterRollback() {
+        List<String> written = new ArrayList<>();
+        boolean[] fail = {true};
+        RemoteChunkWorker worker = new RemoteChunkWorker(new DuplicateKeyIndexRegistry(directory), path -> new HashedKeyIndex(100),
+                items -> {
+                    if (fail[0]) {
+                        throw new IllegalStateException("write failed");
+                    }
+                    items.forEach(person -> written.add(person.getName()));
+                }, new ResourcelessTransactionManager());
+
+        ChunkResponse failed = worker.handle(request(0, "a", "b", "a"));
+        fail[0] = false;
+        ChunkResponse resent = worker.handle(request(1, "a", "b", "a"));
+        ChunkResponse next = worker.handle(request(2, "b", "c"));
+
+        assertThat(failed.isSuccessful()).isFalse();
+        assertThat(resent.isSuccessful()).isTrue();
+        assertThat(next.isSuccessful()).isTrue();
+        assertThat(written).containsExactly("a", "b", "c");
+    }
+
+    private static ChunkRequest<Person> request(int sequence, String... names) {
+        List<Person> items = new ArrayList<>();
+        Arrays.stream(names).forEach(name -> items.add(new Person(name, "1", "seoul")));
+        StepContribution contribution = new StepExecution("remoteChunkStep", new JobExecution(new JobInstance(1L, "remoteChunkJob"), 1L, null, null)).createStepContribution();
+        return new ChunkRequest<>(sequence, items, 1L, contribution);
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.springbatchexample.part3;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SegmentedFileItemWriterTest {
+    private static final JobInstance JOB_INSTANCE = new JobInstance(1L, "segmentedJob");
+
+    private final TransactionTemplate transactionTemplate = new TransactionTemplate(new ResourcelessTransactionManager());
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void releaseStepContext() {
+        StepSynchronizationManager.close();
+    }
+
+    // 파티션이 실패한 뒤 재시작하면 롤백된 청크와 커밋되지 않은 줄은 버리고 마지막 커밋 위치부터 이어 쓴다.
+    @Test
+    void partitionRestartAfterRollbackKeepsCommittedLines() throws Exception {
+        Path output = directory.resolve("output.csv");
+        SegmentedFileItemWriter<Person> writer = writer(output, false);
+
+        ExecutionContext partition0 = new ExecutionContext();
+        ExecutionContext partition1 = new ExecutionContext();
+        inStep("workerStep:partition1", 1L, partition1, () -> {
+            writer.open(partition1);
+            commit(writer, people(6, 8), partition1);
+            writer.close();
+        });
+        ExecutionContext lastCommit = new ExecutionContext();
+        inStep("workerStep:partition0", 2L, partition0, () -> {
+            writer.open(partition0);
+            commit(writer, people(1, 2), partition0);
+            assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(status -> {
+                write(writer, people(3, 4));
+                throw new IllegalStateException("chunk failed");
+            })).isInstanceOf(IllegalStateException.class);
+            commit(writer, people(3, 3), partition0);
+            partition0.entrySet().forEach(entry -> lastCommit.put(entry.getKey(), entry.getValue()));
+            // 커밋되지 않은 청크를 쓴 채로 멈춘다.
+            write(writer, people(4, 5));
+            writer.close();
+        });
+        StepExecution failed = new StepExecution("managerStep", new JobExecution(JOB_INSTANCE, 1L, null, null), 3L);
+        failed.setStatus(BatchStatus.FAILED);
+        writer.mergeListener().afterStep(failed);
+        assertThat(output).doesNotExist();
+
+        SegmentedFileItemWriter<Person> restarted = writer(output, false);
+        inStep("workerStep:partition0", 4L, lastCommit, () -> {
+            restarted.open(lastCommit);
+            commit(restarted, people(4, 5), lastCommit);
+            restarted.close();
+        });
+        StepExecution completed = new StepExecution("managerStep", new JobExecution(JOB_INSTANCE, 2L, null, null), 5L);
+        completed.setStatus(BatchStatus.COMPLETED);
+        restarted.mergeListener().afterStep(completed);
+
+        assertThat(Files.readAllLines(output)).isEqualTo(expected(people(1, 8)));
+        assertThat(output.resolveSibling("output.csv.segments")).doesNotExist();
+    }
+
+    // 청크마다 다른 스레드가 써도 slot을 돌려받아 segment 하나에 이어 쓰고, 이전 실행의 segment는 합치지 않는다.
+    @Test
+    void slotsAreReusedAcrossThreadsAndStaleSegmentsAreDropped() throws Exception {
+        Path output = directory.resolve("output.csv");
+        Path segments = output.resolveSibling("output.csv.segments").resolve(String.valueOf(JOB_INSTANCE.getInstanceId()));
+        Files.createDirectories(segments);
+        Files.write(segments.resolve("parallelStep-3.seg"), "99,stale,test age,seoul\n".getBytes());
+
+        SegmentedFileItemWriter<Person> writer = writer(output, true);
+        StepExecution stepExecution = new StepExecution("parallelStep", new JobExecution(JOB_INSTANCE, 1L, null, null), 1L);
+        StepExecutionListener mergeListener = writer.mergeListener();
+        mergeListener.beforeStep(stepExecution);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int from = 1; from <= 10; from += 2) {
+            int start = from;
+            boolean fail = (from == 5);
+            Thread thread = new Thread(() -> {
+                StepSynchronizationManager.register(stepExecution);
+                try {
+                    if (fail) {
+                        assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(status -> {
+                            write(writer, people(start, start + 1));
+                            throw new IllegalStateException("chunk failed");
+                        })).isInstanceOf(IllegalStateException.class);
+                    }
+                    commit(writer, people(start, start + 1), new ExecutionContext());
+                } finally {
+                    StepSynchronizationManager.close();
+                }
+            });
+            thread.start();
+            thread.join();
+            threads.add(thread);
+        }
+
+        try (Stream<Path> files = Files.list(segments)) {
+            assertThat(files.map(file -> file.getFileName().toString())).containsExactly("parallelStep-0.seg");
+        }
+        stepExecution.setStatus(BatchStatus.COMPLETED);
+        mergeListener.afterStep(stepExecution);
+
+        assertThat(threads).hasSize(5);
+        assertThat(Files.readAllLines(output)).isEqualTo(expected(people(1, 10)));
+    }
+
+    private void inStep(String stepName, long stepExecutionId, ExecutionContext executionContext, Runnable work) {
+        StepExecution stepExecution = new StepExecution(stepName, new JobExecution(JOB_INSTANCE, stepExecutionId, null, null), stepExecutionId);
+        stepExecution.setExecutionContext(executionContext);
+        StepSynchronizationManager.register(stepExecution);
+        try {
+            work.run();
+        } finally {
+            StepSynchronizationManager.close();
+        }
+    }
+
+    private void commit(SegmentedFileItemWriter<Person> writer, List<Person> items, ExecutionContext executionContext) {
+        transactionTemplate.executeWithoutResult(status -> {
+            write(writer, items);
+            writer.update(executionContext);
+        });
+    }
+
+    private static void write(SegmentedFileItemWriter<Person> writer, List<Person> items) {
+        try {
+            writer.write(items);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static SegmentedFileItemWriter<Person> writer(Path output, boolean segmentPerThread) {
+        SegmentedFileItemWriter<Person> writer = new SegmentedFileItemWriter<>();
+        writer.setResource(new FileSystemResource(output));
+        writer.setFieldExtractor(new CompiledFieldExtractor<>(Person.class, "id", "name", "age", "address"));
+        writer.setLineSeparator("\n");
+        writer.setHeaderCallback(header -> header.write("id,이름,나이,거주지"));
+        writer.setFooterCallback(footer -> footer.write("---------------\n"));
+        writer.setSegmentPerThread(segmentPerThread);
+        return writer;
+    }
+
+    private static List<Person> people(int from, int to) {
+        return IntStream.rangeClosed(from, to)
+                .mapToObj(id -> new Person(id, "멤버" + id, "test age", "seoul"))
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> expected(List<Person> people) {
+        List<String> lines = new ArrayList<>();
+        lines.add("id,이름,나이,거주지");
+        people.forEach(person -> lines.add(person.getId() + "," + person.getName() + "," + person.getAge() + "," + person.getAddress()));
+        lines.add("---------------");
+        return lines;
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.springbatchexample.part3;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StatelessJpaReadModeTest {
+    private static final int ROWS = 200;
+
+    // managed 모드는 읽은 행마다 Person 엔티티를 영속성 컨텍스트에 올린다.
+    @Test
+    void managedModeLoadsEntities() throws Exception {
+        Statistics statistics = runJpaStep("managed");
+
+        assertThat(statistics.getEntityLoadCount()).isEqualTo(ROWS);
+    }
+
+    // stateless 모드는 같은 행을 모두 읽지만 생성자 projection이므로 엔티티를 하나도 올리지 않고,
+    // 영속성 컨텍스트를 가진 Session도 열지 않는다. (StatelessSession은 세지 않는다)
+    @Test
+    void statelessModeReadsProjectionsWithoutEntities() throws Exception {
+        Statistics statistics = runJpaStep("stateless");
+
+        assertThat(statistics.getEntityLoadCount()).isZero();
+        assertThat(statistics.getSessionOpenCount()).isZero();
+    }
+
+    private static Statistics runJpaStep(String readMode) throws Exception {
+        try (EmbeddedJobRepository repository = new EmbeddedJobRepository()) {
+            EntityManagerFactory entityManagerFactory = entityManagerFactory(repository);
+            try {
+                insertPersons(repository);
+                Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+                statistics.clear();
+
+                ItemReaderConfiguration configuration = new ItemReaderConfiguration(
+                        new JobBuilderFactory(repository.jobRepository()),
+                        new StepBuilderFactory(repository.jobRepository(), repository.transactionManager()),
+                        repository.dataSource(), entityManagerFactory, null);
+                JobExecution jobExecution = repository.launcher().run(new JobBuilderFactory(repository.jobRepository())
+                        .get("jpaReadModeJob")
+                        .start(configuration.jpaStep(readMode, 50))
+                        .build(), new JobParameters());
+
+                assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+                StepExecution stepExecution = jobExecution.getStepExecutions().iterator().next();
+                assertThat(stepExecution.getReadCount()).isEqualTo(ROWS);
+                return statistics;
+            } finally {
+                entityManagerFactory.close();
+            }
+        }
+    }
+
+    private static EntityManagerFactory entityManagerFactory(EmbeddedJobRepository repository) {
+        LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+        factory.setDataSource(repository.dataSource());
+        factory.setPackagesToScan(Person.class.getPackageName());
+        factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        Properties properties = new Properties();
+        properties.setProperty("hibernate.hbm2ddl.auto", "create");
+        properties.setProperty("hibernate.generate_statistics", "true");
+        factory.setJpaProperties(properties);
+        factory.afterPropertiesSet();
+        return factory.getObject();
+    }
+
+    private static void insertPersons(EmbeddedJobRepository repository) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            rows.add(new Object[]{"멤버" + i, "30", "서울"});
+        }
+        new JdbcTemplate(repository.dataSource()).batchUpdate("insert into person(name, age, address) values (?, ?, ?)", rows);
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.springbatchexample.part3;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.file.FlatFileItemWriter;
+import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class Utf8DelimitedItemWriterTest {
+    private final TransactionTemplate transactionTemplate = new TransactionTemplate(new ResourcelessTransactionManager());
+
+    @TempDir
+    Path directory;
+
+    // BeanWrapperFieldExtractor + DelimitedLineAggregator를 쓰는 FlatFileItemWriter와 같은 바이트를 쓴다.
+    @Test
+    void writesSameBytesAsFlatFileItemWriter() throws Exception {
+        List<Person> people = people(1, 20);
+        people.add(new Person(-7, null, "나이", "😀 " + "x".repeat(100)));
+
+        Path expected = directory.resolve("expected.csv");
+        FlatFileItemWriter<Person> flatFileItemWriter = new FlatFileItemWriterBuilder<Person>()
+                .name("flatFileItemWriter")
+                .resource(new FileSystemResource(expected))
+                .delimited().delimiter("|")
+                .names("id", "name", "age", "address")
+                .headerCallback(writer -> writer.write("id|이름|나이|거주지"))
+                .footerCallback(writer -> writer.write("---------------"))
+                .lineSeparator("\n")
+                .build();
+        flatFileItemWriter.afterPropertiesSet();
+        flatFileItemWriter.open(new ExecutionContext());
+        flatFileItemWriter.write(people);
+        flatFileItemWriter.close();
+
+        Path actual = directory.resolve("actual.csv");
+        Utf8DelimitedItemWriter<Person> writer = writer(actual);
+        writer.setDelimiter("|");
+        writer.setHeaderCallback(header -> header.write("id|이름|나이|거주지"));
+        writer.open(new ExecutionContext());
+        writer.write(people);
+        writer.close();
+
+        assertThat(Files.readAllBytes(actual)).isEqualTo(Files.readAllBytes(expected));
+    }
+
+    // 롤백된 청크와 커밋되지 않은 채 남은 줄은 재시작할 때 잘라내고 footer는 한번만 쓴다.
+    @Test
+    void restartAfterRollbackKeepsOnlyCommittedLines() throws Exception {
+        Path file = directory.resolve("output.csv");
+        ExecutionContext executionContext = new ExecutionContext();
+
+        Utf8DelimitedItemWriter<Person> writer = writer(file);
+        writer.open(executionContext);
+        commit(writer, people(1, 5), executionContext);
+        assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(status -> {
+            write(writer, people(6, 40));
+            throw new IllegalStateException("chunk failed");
+        })).isInstanceOf(IllegalStateException.class);
+        commit(writer, people(6, 8), executionContext);
+        ExecutionContext lastCommit = new ExecutionContext(executionContext);
+        write(writer, people(9, 12));
+        writer.close();
+
+        Utf8DelimitedItemWriter<Person> restarted = writer(file);
+        restarted.open(lastCommit);
+        commit(restarted, people(9, 12), lastCommit);
+        restarted.close();
+
+        List<String> expected = people(1, 12).stream()
+                .map(person -> person.getId() + "," + person.getName() + "," + person.getAge() + "," + person.getAddress())
+                .collect(Collectors.toCollection(ArrayList::new));
+        expected.add("---------------");
+        assertThat(Files.readAllLines(file)).isEqualTo(expected);
+    }
+
+    // CompiledFieldExtractor는 getter를 호출한 결과를 BeanWrapper와 같은 순서로 꺼낸다.
+    @Test
+    void extractsFieldsInOrder() {
+        CompiledFieldExtractor<Person> extractor = new CompiledFieldExtractor<>(Person.class, "address", "id", "name");
+
+        assertThat(Arrays.asList(extractor.extract(new Person(3, "멤버3", "age", "seoul")))).containsExactly("seoul", 3, "멤버3");
+        assertThat(extractor.getName(1)).isEqualTo("id");
+    }
+
+    private void commit(Utf8DelimitedItemWriter<Person> writer, List<Person> items, ExecutionContext executionContext) {
+        transactionTemplate.executeWithoutResult(status -> {
+            write(writer, items);
+            writer.update(executionContext);
+        });
+    }
+
+    private static void write(Utf8DelimitedItemWriter<Person> writer, List<Person> items) {
+        try {
+            writer.write(items);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Utf8DelimitedItemWriter<Person> writer(Path file) {
+        Utf8DelimitedItemWriter<Person> writer = new Utf8DelimitedItemWriter<>();
+        writer.setResource(new FileSystemResource(file));
+        writer.setFieldExtractor(new CompiledFieldExtractor<>(Person.class, "id", "name", "age", "address"));
+        writer.setLineSeparator("\n");
+        writer.setFooterCallback(footer -> footer.write("---------------"));
+        writer.setBufferSize(64);
+        return writer;
+    }
+
+    private static List<Person> people(int from, int to) {
+        return IntStream.rangeClosed(from, to)
+                .mapToObj(id -> new Person(id, "멤버" + id, "test age", "seoul"))
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+}
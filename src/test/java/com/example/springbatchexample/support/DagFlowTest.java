@@ -0,0 +1,185 @@
+package com.example.springbatchexample.support;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.launch.support.SimpleJobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.support.JobRepositoryFactoryBean;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DagFlowTest {
+    private EmbeddedDatabase dataSource;
+    private DataSourceTransactionManager transactionManager;
+    private JobRepository jobRepository;
+
+    // step 시작/종료 순서. "start:a", "end:a" 처럼 남긴다.
+    private final List<String> events = new CopyOnWriteArrayList<>();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScript("classpath:org/springframework/batch/core/schema-h2.sql")
+                .build();
+        transactionManager = new DataSourceTransactionManager(dataSource);
+        JobRepositoryFactoryBean factory = new JobRepositoryFactoryBean();
+        factory.setDataSource(dataSource);
+        factory.setTransactionManager(transactionManager);
+        factory.afterPropertiesSet();
+        jobRepository = factory.getObject();
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.shutdown();
+    }
+
+    // a -> (b, c) -> d : b와 c는 a가 끝난 뒤 동시에 실행되고, d는 둘 다 끝난 뒤에 시작한다.
+    @Test
+    void startsStepsAfterTheirDependencies() throws Exception {
+        // b와 c가 동시에 실행 중이 아니면 barrier에서 타임아웃 난다.
+        CyclicBarrier together = new CyclicBarrier(2);
+        Step a = step("a", () -> {
+        });
+        Step b = step("b", () -> together.await(5, TimeUnit.SECONDS));
+        Step c = step("c", () -> together.await(5, TimeUnit.SECONDS));
+        Step d = step("d", () -> {
+        });
+
+        JobExecution jobExecution = run(DagFlow.builder("dagFlow")
+                .maxConcurrency(4)
+                .step(a)
+                .step(b).after(a)
+                .step(c).after(a)
+                .step(d).after(b, c)
+                .build());
+
+        assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        assertThat(events).hasSize(8);
+        assertThat(events.indexOf("end:a")).isLessThan(events.indexOf("start:b")).isLessThan(events.indexOf("start:c"));
+        assertThat(events.indexOf("start:d")).isGreaterThan(events.indexOf("end:b")).isGreaterThan(events.indexOf("end:c"));
+    }
+
+    // 서로 의존하지 않는 step이 많아도 maxConcurrency 개까지만 동시에 실행한다.
+    @Test
+    void limitsConcurrentSteps() throws Exception {
+        DagFlow.Builder builder = DagFlow.builder("dagFlow").maxConcurrency(2);
+        for (int i = 0; i < 6; i++) {
+            builder.step(step("step" + i, () -> Thread.sleep(50)));
+        }
+
+        JobExecution jobExecution = run(builder.build());
+
+        assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        assertThat(jobExecution.getStepExecutions()).hasSize(6);
+        assertThat(maxRunning).hasValue(2);
+    }
+
+    // pool이 3이면 job repository 몫 1개를 빼고 2개의 커넥션만 나눠 준다.
+    // 커넥션 2개를 잡는 step은 한번에 하나씩, 1개를 잡는 step은 두개씩 실행된다.
+    @Test
+    void limitsConnectionsToThePoolSize() throws Exception {
+        try (HikariDataSource pool = new HikariDataSource()) {
+            pool.setMaximumPoolSize(3);
+
+            JobExecution cursorSteps = run(DagFlow.builder("cursorFlow")
+                    .maxConcurrency(10)
+                    .dataSource(pool)
+                    .step(step("cursor0", () -> Thread.sleep(50))).connections(2)
+                    .step(step("cursor1", () -> Thread.sleep(50))).connections(2)
+                    .step(step("cursor2", () -> Thread.sleep(50))).connections(2)
+                    .build());
+            assertThat(cursorSteps.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+            assertThat(maxRunning).hasValue(1);
+
+            maxRunning.set(0);
+            JobExecution pagingSteps = run(DagFlow.builder("pagingFlow")
+                    .maxConcurrency(10)
+                    .dataSource(pool)
+                    .step(step("paging0", () -> Thread.sleep(50)))
+                    .step(step("paging1", () -> Thread.sleep(50)))
+                    .step(step("paging2", () -> Thread.sleep(50)))
+                    .step(step("paging3", () -> Thread.sleep(50)))
+                    .build());
+            assertThat(pagingSteps.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+            assertThat(maxRunning).hasValue(2);
+        }
+    }
+
+    // 실패한 step 뒤의 step은 시작하지 않고, 다른 가지에서 이미 실행 중인 step은 끝까지 실행한다.
+    @Test
+    void stopsStartingStepsAfterAFailure() throws Exception {
+        Step failing = step("failing", () -> {
+            throw new IllegalStateException("failed");
+        });
+        Step slow = step("slow", () -> Thread.sleep(100));
+        Step dependent = step("dependent", () -> {
+        });
+
+        JobExecution jobExecution = run(DagFlow.builder("dagFlow")
+                .maxConcurrency(2)
+                .step(failing)
+                .step(slow)
+                .step(dependent).after(failing)
+                .build());
+
+        assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.FAILED);
+        assertThat(events).contains("end:slow").doesNotContain("start:dependent");
+    }
+
+    private JobExecution run(DagFlow flow) throws Exception {
+        SimpleJobLauncher launcher = new SimpleJobLauncher();
+        launcher.setJobRepository(jobRepository);
+        launcher.afterPropertiesSet();
+        return launcher.run(new JobBuilder(flow.getName() + "Job")
+                .repository(jobRepository)
+                .start(flow)
+                .end()
+                .build(), new JobParameters());
+    }
+
+    private Step step(String name, Body body) {
+        return new StepBuilder(name)
+                .repository(jobRepository)
+                .transactionManager(transactionManager)
+                .tasklet((contribution, chunkContext) -> {
+                    events.add("start:" + name);
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        body.run();
+                    } finally {
+                        running.decrementAndGet();
+                        events.add("end:" + name);
+                    }
+                    return RepeatStatus.FINISHED;
+                })
+                .build();
+    }
+
+    private interface Body {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.springbatchexample.support;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// 실행할 job으로 helloJob만 고르면 다른 job과 그 설정 클래스, step은 만들어지지 않는다.
+// in-memory H2에는 person 테이블이 없으므로(Hibernate가 별도 thread에서 만든다) person.sql은 실행하지 않는다.
+@SpringBootTest(properties = {
+        "batch.lazy-jobs.enabled=true",
+        "spring.batch.job.names=helloJob",
+        "spring.datasource.hikari.jdbc-url=jdbc:h2:mem:lazyJobs;DB_CLOSE_DELAY=-1",
+        "spring.sql.init.mode=never"
+})
+class LazyJobConfigurationTest {
+
+    @Autowired
+    private ConfigurableListableBeanFactory beanFactory;
+
+    // 고른 job은 실행되므로 만들어진다.
+    @Test
+    void buildsOnlyTheSelectedJob() {
+        assertThat(beanFactory.containsSingleton("helloJob")).isTrue();
+        assertThat(beanFactory.containsSingleton("itemReaderJob")).isFalse();
+        assertThat(beanFactory.containsSingleton("taskJob")).isFalse();
+    }
+
+    // 고르지 않은 job의 설정 클래스도, 그 안의 step도 만들지 않는다.
+    @Test
+    void leavesOtherJobConfigurationsUnbuilt() {
+        assertThat(beanFactory.containsSingleton("itemReaderConfiguration")).isFalse();
+        assertThat(beanFactory.containsSingleton("taskConfiguration")).isFalse();
+        assertThat(beanFactory.containsSingleton("customItemReaderStep")).isFalse();
+        assertThat(beanFactory.getBeanDefinition("itemReaderJob").isLazyInit()).isTrue();
+        assertThat(beanFactory.getBeanDefinition("itemReaderJob").isAutowireCandidate()).isFalse();
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.springbatchexample.support;
+
+import com.example.springbatchexample.part3.CustomItemReader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.launch.support.SimpleJobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.support.JobRepositoryFactoryBean;
+import org.springframework.batch.core.scope.context.JobSynchronizationManager;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PipelinedStepTest {
+    private static final int ITEMS = 100;
+    private static final int CHUNK_SIZE = 10;
+
+    private EmbeddedDatabase dataSource;
+    private DataSourceTransactionManager transactionManager;
+    private JobRepository jobRepository;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScript("classpath:org/springframework/batch/core/schema-h2.sql")
+                .build();
+        transactionManager = new DataSourceTransactionManager(dataSource);
+        JobRepositoryFactoryBean factory = new JobRepositoryFactoryBean();
+        factory.setDataSource(dataSource);
+        factory.setTransactionManager(transactionManager);
+        factory.afterPropertiesSet();
+        jobRepository = factory.getObject();
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table item (id int primary key)");
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.shutdown();
+    }
+
+    // 5번째 청크를 쓰다 실패하면 producer가 앞서 읽어 둔 청크는 버려지고 4개의 청크만 남는다.
+    // 재시작하면 마지막으로 커밋된 청크 다음(41번째 item)부터 읽어서 모든 item이 한번씩만 쓰인다.
+    @Test
+    void restartFromLastCommittedChunkAfterWriteFailure() throws Exception {
+        AtomicInteger writes = new AtomicInteger();
+        JobExecution failed = run(job(() -> writes.incrementAndGet() == 5));
+
+        assertThat(failed.getStatus()).isEqualTo(BatchStatus.FAILED);
+        assertThat(failed.getAllFailureExceptions()).extracting(Throwable::getMessage).contains("write failed");
+        StepExecution failedStep = failed.getStepExecutions().iterator().next();
+        assertThat(failedStep.getCommitCount()).isEqualTo(4);
+        assertThat(failedStep.getRollbackCount()).isEqualTo(1);
+        assertThat(failedStep.getWriteCount()).isEqualTo(40);
+        assertThat(count()).isEqualTo(40);
+
+        JobExecution restarted = run(job(() -> false));
+
+        assertThat(restarted.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        StepExecution restartedStep = restarted.getStepExecutions().iterator().next();
+        assertThat(restartedStep.getReadCount()).isEqualTo(ITEMS - 40);
+        assertThat(restartedStep.getWriteCount()).isEqualTo(ITEMS - 40);
+        // 중복 id는 primary key로 실패하므로 건수만 확인하면 된다.
+        assertThat(count()).isEqualTo(ITEMS);
+    }
+
+    private Job job(FailureCondition failure) {
+        List<Integer> items = IntStream.range(0, ITEMS).boxed().collect(Collectors.toList());
+        return new JobBuilder("pipelinedJob")
+                .repository(jobRepository)
+                .start(new PipelinedStepBuilder<Integer, Integer>(new StepBuilder("pipelinedStep")
+                        .repository(jobRepository)
+                        .transactionManager(transactionManager))
+                        .chunk(CHUNK_SIZE)
+                        .bufferedChunks(2)
+                        .reader(new CustomItemReader<>(items))
+                        // producer 스레드에서도 job scope bean이 찾는 job execution이 등록되어 있어야 한다.
+                        .processor(item -> {
+                            assertThat(JobSynchronizationManager.getContext()).isNotNull();
+                            return item;
+                        })
+                        .writer(chunk -> {
+                            if (failure.failNow()) {
+                                throw new IllegalStateException("write failed");
+                            }
+                            jdbcTemplate.batchUpdate("insert into item(id) values (?)",
+                                    chunk.stream().map(id -> new Object[]{id}).collect(Collectors.toList()));
+                        })
+                        .build())
+                .build();
+    }
+
+    private JobExecution run(Job job) throws Exception {
+        SimpleJobLauncher launcher = new SimpleJobLauncher();
+        launcher.setJobRepository(jobRepository);
+        launcher.afterPropertiesSet();
+        return launcher.run(job, new JobParameters());
+    }
+
+    private int count() {
+        return jdbcTemplate.queryForObject("select count(*) from item", Integer.class);
+    }
+
+    private interface FailureCondition {
+        boolean failNow();
+    }
+}
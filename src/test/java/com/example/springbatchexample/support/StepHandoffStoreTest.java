@@ -0,0 +1,87 @@
+package com.example.springbatchexample.support;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StepHandoffStoreTest {
+    private static final int INLINE_LIMIT = 1024;
+
+    @TempDir
+    Path directory;
+
+    // 작은 값은 ExecutionContext에 그대로 들어가고 파일은 만들지 않는다.
+    @Test
+    void smallValueStaysInExecutionContext() throws Exception {
+        StepHandoffStore store = new StepHandoffStore(directory, INLINE_LIMIT);
+        JobExecution jobExecution = jobExecution(1L);
+
+        store.put(jobExecution, "total", 42L);
+
+        assertThat(store.get(jobExecution, "total", Long.class)).isEqualTo(42L);
+        assertThat(jobExecution.getExecutionContext().getString("handoff.total")).startsWith("inline:");
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    // 큰 값은 파일로 내보내고 ExecutionContext에는 파일 이름만 남긴다.
+    // 재시작한 execution은 복원된 ExecutionContext로 같은 값을 읽는다.
+    @Test
+    void largeValueSpillsToFileAndSurvivesRestart() {
+        StepHandoffStore store = new StepHandoffStore(directory, INLINE_LIMIT);
+        ArrayList<Integer> numbers = IntStream.range(0, 10_000).boxed().collect(Collectors.toCollection(ArrayList::new));
+        JobExecution failed = jobExecution(1L);
+
+        store.put(failed, "numbers", numbers);
+        failed.setStatus(BatchStatus.FAILED);
+        store.afterJob(failed);
+
+        assertThat(failed.getExecutionContext().getString("handoff.numbers")).isEqualTo("file:numbers.bin");
+        assertThat(directory.resolve("handoffJob-1").resolve("numbers.bin")).exists();
+
+        JobExecution restarted = jobExecution(2L);
+        restarted.setExecutionContext(new ExecutionContext(failed.getExecutionContext()));
+        assertThat(store.get(restarted, "numbers", List.class)).isEqualTo(numbers);
+    }
+
+    // job이 COMPLETED로 끝나면 job instance의 디렉토리를 지운다.
+    @Test
+    void completedJobDeletesItsFiles() {
+        StepHandoffStore store = new StepHandoffStore(directory, INLINE_LIMIT);
+        JobExecution jobExecution = jobExecution(1L);
+        store.put(jobExecution, "payload", new byte[INLINE_LIMIT * 4]);
+        assertThat(directory.resolve("handoffJob-1")).exists();
+
+        jobExecution.setStatus(BatchStatus.COMPLETED);
+        store.afterJob(jobExecution);
+
+        assertThat(directory.resolve("handoffJob-1")).doesNotExist();
+    }
+
+    // 없는 key는 null을 돌려준다.
+    @Test
+    void missingKeyReturnsNull() {
+        StepHandoffStore store = new StepHandoffStore(directory, INLINE_LIMIT);
+
+        assertThat(store.get(jobExecution(1L), "missing", String.class)).isNull();
+    }
+
+    private static JobExecution jobExecution(long executionId) {
+        return new JobExecution(new JobInstance(1L, "handoffJob"), executionId, new JobParameters(), null);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.springbatchexample.support;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StepMetricsListenerTest {
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final StepMetricsListener listener = new StepMetricsListener("step", registry);
+
+    // 커밋된 청크의 item만 센다. 롤백된 청크(afterChunkError)에서 읽고 쓴 item은 버린다.
+    @Test
+    void countsItemsOfCommittedChunksOnly() {
+        chunk("a", "b", null);
+        listener.afterChunk(null);
+
+        chunk("c", "d", "e");
+        listener.afterChunkError(null);
+
+        chunk("c", "d", "e");
+        listener.afterChunk(null);
+
+        assertThat(count("items.read")).isEqualTo(6);
+        assertThat(count("items.filtered")).isEqualTo(1);
+        assertThat(count("items.written")).isEqualTo(5);
+        assertThat(count("chunk.rollbacks")).isEqualTo(1);
+        assertThat(registry.get(StepMetricsListener.PREFIX + "chunk").timer().count()).isEqualTo(2);
+    }
+
+    // null은 processor가 걸러낸 item이다.
+    private void chunk(String... results) {
+        listener.beforeChunk(null);
+        for (String result : results) {
+            listener.beforeRead();
+            listener.afterRead("item");
+            listener.beforeProcess("item");
+            listener.afterProcess("item", result);
+        }
+        String[] written = Arrays.stream(results).filter(result -> result != null).toArray(String[]::new);
+        listener.beforeWrite(Arrays.asList(written));
+        listener.afterWrite(Arrays.asList(written));
+    }
+
+    private double count(String name) {
+        return registry.get(StepMetricsListener.PREFIX + name).counter().count();
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.springbatchexample.support;
+
+import com.example.springbatchexample.part3.CustomItemReader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.launch.support.SimpleJobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.dao.Jackson2ExecutionContextStringSerializer;
+import org.springframework.batch.core.repository.support.JobRepositoryFactoryBean;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WriteBehindJobRepositoryTest {
+    private static final int ITEMS = 100;
+    private static final int CHUNK_SIZE = 10;
+    // 테스트 중에는 백그라운드 flush가 일어나지 않게 한다.
+    private static final long NEVER = TimeUnit.HOURS.toMillis(1);
+
+    @TempDir
+    Path directory;
+
+    private EmbeddedDatabase dataSource;
+    private DataSourceTransactionManager transactionManager;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScript("classpath:org/springframework/batch/core/schema-h2.sql")
+                .build();
+        transactionManager = new DataSourceTransactionManager(dataSource);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.shutdown();
+    }
+
+    // 청크 4개를 커밋한 뒤 JVM이 죽으면 DB에는 아무것도 없지만, 남은 log를 반영해서 재시작하면 41번째 item부터 읽는다.
+    @Test
+    void restartFromReplayedWriteAheadLog() throws Exception {
+        Path crashedLog = directory.resolve("crashed");
+        Path replayedLog = directory.resolve("replayed");
+        WriteBehindJobRepository crashed = repository(crashedLog);
+
+        Map<Integer, Integer> committed = new ConcurrentHashMap<>();
+        AtomicInteger writes = new AtomicInteger();
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // 5번째 청크를 쓰는 도중에 멈춰 있는 동안을 JVM이 죽은 시점으로 본다.
+        CompletableFuture<JobExecution> first = CompletableFuture.supplyAsync(() -> run(job(crashed, committed, () -> {
+            if (writes.incrementAndGet() == 5) {
+                writing.countDown();
+                awaitQuietly(release);
+                throw new IllegalStateException("crashed");
+            }
+        }), crashed));
+        assertThat(writing.await(10, TimeUnit.SECONDS)).isTrue();
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        assertThat(jdbcTemplate.queryForObject("select READ_COUNT from BATCH_STEP_EXECUTION", Integer.class)).isZero();
+        copyLog(crashedLog, replayedLog);
+
+        // 죽은 JVM의 log를 반영한 뒤, 운영자가 하듯이 실행 중으로 남은 execution을 실패로 바꾼다.
+        WriteBehindJobRepository replayed = repository(replayedLog);
+        assertThat(jdbcTemplate.queryForObject("select READ_COUNT from BATCH_STEP_EXECUTION", Integer.class)).isEqualTo(40);
+        assertThat(jdbcTemplate.queryForObject("select COMMIT_COUNT from BATCH_STEP_EXECUTION", Integer.class)).isEqualTo(4);
+        jdbcTemplate.update("update BATCH_STEP_EXECUTION set STATUS = 'FAILED', END_TIME = current_timestamp");
+        jdbcTemplate.update("update BATCH_JOB_EXECUTION set STATUS = 'FAILED', END_TIME = current_timestamp");
+
+        JobExecution restarted = run(job(replayed, committed, () -> {
+        }), replayed);
+        replayed.close();
+
+        assertThat(restarted.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        StepExecution stepExecution = restarted.getStepExecutions().iterator().next();
+        assertThat(stepExecution.getReadCount()).isEqualTo(ITEMS - 40);
+        assertThat(committed).hasSize(ITEMS);
+        assertThat(committed.values()).containsOnly(1);
+
+        release.countDown();
+        first.handle((execution, e) -> execution).get(10, TimeUnit.SECONDS);
+    }
+
+    // log를 쓴 뒤에 커밋이 실패하면 그 값은 마지막으로 커밋된 값으로 덮여서 복구되지 않는다.
+    @Test
+    void rolledBackSnapshotIsNotReplayed() throws Exception {
+        Path crashedLog = directory.resolve("crashed");
+        WriteBehindJobRepository crashed = repository(crashedLog);
+        JobExecution jobExecution = crashed.createJobExecution("rollbackJob", new JobParameters());
+        StepExecution stepExecution = jobExecution.createStepExecution("rollbackStep");
+        crashed.add(stepExecution);
+        stepExecution.setStatus(BatchStatus.STARTED);
+        crashed.update(stepExecution);
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.executeWithoutResult(status -> {
+            stepExecution.setReadCount(10);
+            stepExecution.setCommitCount(1);
+            crashed.update(stepExecution);
+        });
+        assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(status -> {
+            stepExecution.setReadCount(20);
+            stepExecution.setCommitCount(2);
+            crashed.update(stepExecution);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    throw new IllegalStateException("commit failed");
+                }
+            });
+        })).hasMessage("commit failed");
+
+        Path replayedLog = directory.resolve("replayed");
+        copyLog(crashedLog, replayedLog);
+        repository(replayedLog).close();
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        assertThat(jdbcTemplate.queryForObject("select READ_COUNT from BATCH_STEP_EXECUTION", Integer.class)).isEqualTo(10);
+        assertThat(jdbcTemplate.queryForObject("select COMMIT_COUNT from BATCH_STEP_EXECUTION", Integer.class)).isEqualTo(1);
+    }
+
+    private Job job(JobRepository jobRepository, Map<Integer, Integer> committed, Runnable beforeWrite) {
+        List<Integer> items = IntStream.range(0, ITEMS).boxed().collect(Collectors.toList());
+        return new JobBuilder("writeBehindJob")
+                .repository(jobRepository)
+                .start(new StepBuilder("writeBehindStep")
+                        .repository(jobRepository)
+                        .transactionManager(transactionManager)
+                        .<Integer, Integer>chunk(CHUNK_SIZE)
+                        .reader(new CustomItemReader<>(items))
+                        .writer(chunk -> {
+                            beforeWrite.run();
+                            List<Integer> written = List.copyOf(chunk);
+                            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                                @Override
+                                public void afterCommit() {
+                                    written.forEach(item -> committed.merge(item, 1, Integer::sum));
+                                }
+                            });
+                        })
+                        .build())
+                .build();
+    }
+
+    private static JobExecution run(Job job, JobRepository jobRepository) {
+        try {
+            SimpleJobLauncher launcher = new SimpleJobLauncher();
+            launcher.setJobRepository(jobRepository);
+            launcher.afterPropertiesSet();
+            return launcher.run(job, new JobParameters());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private WriteBehindJobRepository repository(Path logDirectory) throws Exception {
+        DaoFactoryBean factory = new DaoFactoryBean();
+        factory.setDataSource(dataSource);
+        factory.setTransactionManager(transactionManager);
+        factory.afterPropertiesSet();
+        return factory.create(logDirectory);
+    }
+
+    // 파일 lock은 같은 JVM 안에서 풀 수 없으므로, 죽은 JVM이 남긴 log 대신 복사본을 다른 디렉토리에서 복구한다.
+    private static void copyLog(Path from, Path to) throws Exception {
+        Files.createDirectories(to);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(from)) {
+            for (Path file : files) {
+                Files.copy(file, to.resolve(file.getFileName()));
+            }
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private class DaoFactoryBean extends JobRepositoryFactoryBean {
+
+        WriteBehindJobRepository create(Path logDirectory) throws Exception {
+            return new WriteBehindJobRepository(getObject(), createJobExecutionDao(), createStepExecutionDao(),
+                    createExecutionContextDao(), new Jackson2ExecutionContextStringSerializer(), transactionManager,
+                    logDirectory, true, NEVER);
+        }
+    }
+}